@@ -0,0 +1,486 @@
+package org.pogonin;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import org.pogonin.buffer.BufferAllocator;
+import org.pogonin.buffer.ReceiveSizePredictor;
+import org.pogonin.codec.FrameDecoder;
+import org.pogonin.model.PooledMessage;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connected client together with the event loop that owns its channel.
+ * <p>
+ * All reads and writes of the channel happen on the thread of {@link #loop}, so the mutable state
+ * of the connection is only accessed by that thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Getter
+@RequiredArgsConstructor
+final class Connection {
+    /**
+     * Id of the connection, unique for the lifetime of the server.
+     */
+    private final long id;
+
+    /**
+     * Remote address of the client.
+     */
+    private final SocketAddress address;
+
+    /**
+     * Channel of the client.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Event loop serving the channel.
+     */
+    private final EventLoop loop;
+
+    /**
+     * Selection key of the channel, {@code null} until the loop registers the channel.
+     */
+    private SelectionKey key;
+
+    /**
+     * Buffers waiting to be written, in the order they were queued.
+     * Only the head may be partially written; its position marks where the next write resumes.
+     * Direct buffers come from the allocator or are views of pooled messages, heap buffers wrap arrays of the caller.
+     */
+    private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+
+    /**
+     * Views of pooled messages queued in {@link #outbound}, in the same order, so the message
+     * can be released instead of returning the view to the allocator once it was written.
+     */
+    private final Deque<PooledWrite> pooledWrites = new ArrayDeque<>();
+
+    /**
+     * Number of bytes queued in {@link #outbound} and not yet accepted by the socket.
+     */
+    private long pendingOutboundBytes;
+
+    /**
+     * Number of bytes queued on the connection since it was opened.
+     */
+    private long queuedBytes;
+
+    /**
+     * Number of bytes written to the socket since the connection was opened.
+     */
+    private long writtenBytes;
+
+    /**
+     * Futures of sends waiting for their bytes to be written, in the order they were queued.
+     */
+    private final Deque<WritePromise> promises = new ArrayDeque<>();
+
+    /**
+     * Whether the outbound queue is below its high-water mark. Read by other threads through {@code Server.isWritable()}.
+     */
+    private volatile boolean writable = true;
+
+    /**
+     * Whether the key is currently registered for {@link SelectionKey#OP_WRITE}.
+     */
+    private boolean writeInterest;
+
+    /**
+     * Whether reading is paused by removing {@link SelectionKey#OP_READ} from the interest set of the key.
+     */
+    private boolean readPaused;
+
+    /**
+     * Number of bytes read from the channel since the event loop last compared the load of its connections.
+     */
+    private long receivedBytes;
+
+    /**
+     * Serial queue running the handler callbacks of the connection on the handler threads,
+     * {@code null} if they run on the loop or until the loop registers the channel.
+     */
+    private HandlerQueue handlerQueue;
+
+    /**
+     * Decoder splitting the received bytes into frames, {@code null} to hand them over as they were read.
+     */
+    private FrameDecoder frameDecoder;
+
+    /**
+     * Object the handler attached to the connection, {@code null} if there is none.
+     */
+    private volatile Object attachment;
+
+    /**
+     * Whether the connection is closed as soon as its outbound queue is drained.
+     */
+    private boolean closeWhenFlushed;
+
+    /**
+     * Predictor of the receive buffer capacity, {@code null} until the loop registers the channel.
+     */
+    private ReceiveSizePredictor receiveSizePredictor;
+
+    /**
+     * Allocator of the read and write buffers, {@code null} until the connection needs its first buffer.
+     */
+    private BufferAllocator allocator;
+
+    /**
+     * Buffer accumulating bytes read from the channel, {@code null} while nothing is accumulated.
+     * Between reads it is in write mode: the bytes not consumed yet lie before its position.
+     */
+    private ByteBuffer inbound;
+
+    /**
+     * Remembers the selection key once the loop registered the channel with its selector.
+     * A send routed to the connection before it was registered may have left bytes that the socket didn't accept,
+     * so write interest is applied to the new key for whatever is still pending.
+     *
+     * @param key                  selection key of the registered channel
+     * @param receiveSizePredictor predictor of the receive buffer capacity
+     * @param handlerQueue         queue running the handler callbacks, {@code null} to run them on the loop
+     * @param frameDecoder         decoder of the received bytes, {@code null} to hand them over as they were read
+     */
+    void registered(SelectionKey key, ReceiveSizePredictor receiveSizePredictor, HandlerQueue handlerQueue,
+                    FrameDecoder frameDecoder) {
+        this.key = key;
+        this.receiveSizePredictor = receiveSizePredictor;
+        this.handlerQueue = handlerQueue;
+        this.frameDecoder = frameDecoder;
+        setWriteInterest(hasPendingWrites());
+    }
+
+    /**
+     * Attaches an object of the handler to the connection.
+     *
+     * @param attachment object to attach, {@code null} to remove the attached one
+     */
+    void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Marks the connection to be closed as soon as every queued byte was written.
+     */
+    void closeWhenFlushed() {
+        closeWhenFlushed = true;
+    }
+
+    /**
+     * Checks whether the handler queue of the connection is full, so no more messages should be handed to it.
+     *
+     * @return {@code true} if callbacks run on the handler threads and the queue reached its depth
+     */
+    boolean isHandlerQueueFull() {
+        return handlerQueue != null && handlerQueue.isFull();
+    }
+
+    /**
+     * Counts bytes read from the channel.
+     *
+     * @param bytes number of bytes read
+     */
+    void received(int bytes) {
+        receivedBytes += bytes;
+    }
+
+    /**
+     * Starts a new period for counting the bytes read from the channel.
+     */
+    void resetReceivedBytes() {
+        receivedBytes = 0;
+    }
+
+    /**
+     * Stops reading from the channel by removing {@link SelectionKey#OP_READ} from the interest set of the key,
+     * so unread bytes stay in the socket and TCP flow control pushes back on the client.
+     */
+    void pauseReading() {
+        if (readPaused || key == null || !key.isValid()) return;
+        readPaused = true;
+        key.interestOpsAnd(~SelectionKey.OP_READ);
+    }
+
+    /**
+     * Resumes reading from the channel paused with {@link #pauseReading()}.
+     */
+    void resumeReading() {
+        if (!readPaused) return;
+        readPaused = false;
+        if (key.isValid()) key.interestOpsOr(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Returns the allocator of the connection, creating it on the loop thread on the first call.
+     *
+     * @return allocator of the read and write buffers
+     */
+    BufferAllocator allocator() {
+        if (allocator == null) allocator = loop.newAllocator();
+        return allocator;
+    }
+
+    /**
+     * Returns the inbound buffer, acquiring it from the allocator if the connection has none.
+     *
+     * @param initialSize capacity of the buffer if it has to be acquired
+     * @return inbound buffer in write mode
+     */
+    ByteBuffer inbound(int initialSize) {
+        if (inbound == null) inbound = allocator().acquire(initialSize);
+        return inbound;
+    }
+
+    /**
+     * Replaces the inbound buffer with one twice as large, keeping the accumulated bytes.
+     *
+     * @param maxSize capacity the buffer may not grow beyond
+     * @return {@code true} if the buffer was grown, {@code false} if it already has the maximum capacity
+     */
+    boolean growInbound(int maxSize) {
+        if (inbound.capacity() >= maxSize) return false;
+        var grown = allocator.acquire((int) Math.min(2L * inbound.capacity(), maxSize));
+        grown.put(inbound.flip());
+        allocator.release(inbound);
+        inbound = grown;
+        return true;
+    }
+
+    /**
+     * Checks whether the inbound buffer is full and can't grow anymore, so nothing more can be read into it
+     * until some of its bytes are consumed.
+     *
+     * @param maxSize capacity the buffer may not grow beyond
+     * @return {@code true} if the buffer has no room left at its maximum capacity
+     */
+    boolean isInboundFull(int maxSize) {
+        return inbound != null && !inbound.hasRemaining() && inbound.capacity() >= maxSize;
+    }
+
+    /**
+     * Returns the inbound buffer to the allocator once every byte of it was consumed,
+     * so idle connections don't hold on to buffers.
+     */
+    void releaseInboundIfEmpty() {
+        if (inbound == null || inbound.position() > 0) return;
+        allocator.release(inbound);
+        inbound = null;
+    }
+
+    /**
+     * Hands the inbound buffer over to the caller, which becomes responsible for releasing it.
+     * The connection acquires a new buffer on the next read.
+     *
+     * @return inbound buffer, {@code null} if the connection has none
+     */
+    ByteBuffer detachInbound() {
+        var buffer = inbound;
+        inbound = null;
+        return buffer;
+    }
+
+    /**
+     * Returns the inbound buffer and all direct outbound buffers of the connection to the allocator,
+     * releases queued pooled messages and closes the allocator. Futures of sends not written yet fail.
+     * Called once the connection is closed.
+     */
+    void releaseBuffers() {
+        WritePromise promise;
+        while ((promise = promises.poll()) != null)
+            promise.future().completeExceptionally(new ClosedChannelException());
+        ByteBuffer buffer;
+        while ((buffer = outbound.poll()) != null)
+            release(buffer);
+        pendingOutboundBytes = 0;
+        if (allocator == null) return;
+        if (inbound != null) allocator.release(inbound);
+        inbound = null;
+        allocator.close();
+        allocator = null;
+    }
+
+    /**
+     * Checks whether the connection has buffers waiting for the socket.
+     *
+     * @return {@code true} if the outbound queue is not empty
+     */
+    boolean hasPendingWrites() {
+        return !outbound.isEmpty();
+    }
+
+    /**
+     * Queues the remaining bytes of the buffer behind the already pending ones.
+     * The buffer is queued as is, without copying, and must not be modified afterwards.
+     * Direct buffers must come from {@link #allocator()}; they are released once written.
+     *
+     * @param data buffer to write
+     */
+    void queue(ByteBuffer data) {
+        outbound.add(data);
+        pendingOutboundBytes += data.remaining();
+        queuedBytes += data.remaining();
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer behind the already pending ones.
+     * <p>
+     * The bytes go into the free space behind the last queued buffer if that buffer belongs to the allocator
+     * and has enough room left, so small writes queued in a row share one buffer and one slot of a gathering
+     * write. Otherwise they go into a new buffer of the allocator of at least {@code minCapacity} bytes.
+     * </p>
+     *
+     * @param data        buffer to copy, its position is moved to its limit
+     * @param minCapacity minimum capacity of a new buffer
+     */
+    void append(ByteBuffer data, int minCapacity) {
+        int length = data.remaining();
+        var tail = outbound.peekLast();
+        if (tail == null || !tail.isDirect() || tail.capacity() - tail.limit() < length
+                || !pooledWrites.isEmpty() && pooledWrites.peekLast().view() == tail) {
+            tail = allocator().acquire(Math.max(length, minCapacity)).flip();
+            outbound.add(tail);
+        }
+        int end = tail.limit();
+        tail.limit(end + length).put(end, data, data.position(), length);
+        data.position(data.limit());
+        pendingOutboundBytes += length;
+        queuedBytes += length;
+    }
+
+    /**
+     * Queues the payload of a pooled message behind the already pending bytes without copying it.
+     * The connection takes over one reference of the message and releases it once the payload was written.
+     *
+     * @param message message to write
+     */
+    void queue(PooledMessage message) {
+        var view = message.getPayload();
+        pooledWrites.add(new PooledWrite(view, message));
+        queue(view);
+    }
+
+    /**
+     * Registers a future to be completed once every byte queued so far was written to the socket.
+     *
+     * @param future future of a send
+     */
+    void whenWritten(CompletableFuture<Void> future) {
+        if (writtenBytes == queuedBytes) future.complete(null);
+        else promises.add(new WritePromise(queuedBytes, future));
+    }
+
+    /**
+     * Updates the writability of the connection from the number of pending bytes.
+     *
+     * @param highWaterMark number of pending bytes above which the connection becomes not writable
+     * @param lowWaterMark  number of pending bytes at or below which the connection becomes writable again
+     * @return {@code true} if the writability changed
+     */
+    boolean updateWritability(long highWaterMark, long lowWaterMark) {
+        if (writable && pendingOutboundBytes > highWaterMark) writable = false;
+        else if (!writable && pendingOutboundBytes <= lowWaterMark) writable = true;
+        else return false;
+        return true;
+    }
+
+    /**
+     * Writes queued buffers until the queue is empty or the socket stops accepting bytes.
+     * <p>
+     * Every round gathers the head buffers into {@code gather}, up to its length and {@code maxBytes},
+     * and hands them to the socket in a single gathering write. A partially written buffer stays
+     * at the head of the queue and the next flush resumes from its position.
+     * Write interest is kept while anything is left and dropped once the queue is drained.
+     * Futures of sends whose bytes were all written are completed on the way.
+     * </p>
+     *
+     * @param gather   scratch array of the loop, its length caps the number of buffers per write
+     * @param maxBytes maximum number of bytes gathered per write, at least one buffer is always gathered
+     * @return number of gathering writes issued
+     * @throws IOException if the channel can't be written
+     */
+    int flush(ByteBuffer[] gather, long maxBytes) throws IOException {
+        int writes = 0;
+        while (!outbound.isEmpty()) {
+            int count = 0;
+            long bytes = 0;
+            for (var buffer : outbound) {
+                if (count == gather.length || count > 0 && bytes + buffer.remaining() > maxBytes) break;
+                gather[count++] = buffer;
+                bytes += buffer.remaining();
+            }
+
+            long written = channel.write(gather, 0, count);
+            writes++;
+            Arrays.fill(gather, 0, count, null);
+            pendingOutboundBytes -= written;
+            writtenBytes += written;
+            while (!promises.isEmpty() && promises.peek().end() <= writtenBytes)
+                promises.poll().future().complete(null);
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining())
+                release(outbound.poll());
+
+            if (written < bytes) {
+                setWriteInterest(true);
+                return writes;
+            }
+        }
+        setWriteInterest(false);
+        return writes;
+    }
+
+    /**
+     * Releases a buffer taken off the outbound queue: the message of a pooled view is released,
+     * a direct buffer goes back to the allocator and a heap buffer is left to the garbage collector.
+     *
+     * @param buffer written or dropped buffer
+     */
+    private void release(ByteBuffer buffer) {
+        if (!pooledWrites.isEmpty() && pooledWrites.peek().view() == buffer) pooledWrites.poll().message().release();
+        else if (buffer.isDirect()) allocator.release(buffer);
+    }
+
+    /**
+     * Adds or removes {@link SelectionKey#OP_WRITE} from the interest set of the key.
+     *
+     * @param enabled whether the loop should be notified when the channel becomes writable
+     */
+    private void setWriteInterest(boolean enabled) {
+        if (writeInterest == enabled || key == null || !key.isValid()) return;
+        writeInterest = enabled;
+        if (enabled) key.interestOpsOr(SelectionKey.OP_WRITE);
+        else key.interestOpsAnd(~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Future of a send together with the position in the outbound stream its bytes end at.
+     *
+     * @param end    value of {@link #writtenBytes} at which all bytes of the send are written
+     * @param future future completed once the bytes are written
+     */
+    private record WritePromise(long end, CompletableFuture<Void> future) {
+    }
+
+    /**
+     * View of a pooled message queued for writing together with the message it belongs to.
+     *
+     * @param view    view queued in the outbound queue
+     * @param message message released once the view was written
+     */
+    private record PooledWrite(ByteBuffer view, PooledMessage message) {
+    }
+}
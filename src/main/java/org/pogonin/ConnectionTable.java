@@ -0,0 +1,171 @@
+package org.pogonin;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Table of open connections indexed by their {@code long} id.
+ * <p>
+ * Every connection occupies a slot of an array. Its id combines a sequence number incremented for every
+ * connection in the high bits with the index of its slot in the low {@link #SLOT_BITS} bits, so ids
+ * grow monotonically in the order connections are added, are never reused, and a lookup is a single
+ * array access followed by an id comparison, which rejects ids of closed connections whose slot was reused.
+ * Lookups take no locks and allocate nothing; adding and removing connections is synchronized.
+ * Freed slots are reused before the array grows, keeping the table dense.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+final class ConnectionTable {
+    /**
+     * Number of low id bits holding the slot index.
+     */
+    static final int SLOT_BITS = 24;
+
+    /**
+     * Maximum number of connections open at the same time.
+     */
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * Mask extracting the slot index from an id.
+     */
+    private static final long SLOT_MASK = MAX_SLOTS - 1;
+
+    /**
+     * Connections by slot, replaced by a larger copy when every slot is taken.
+     */
+    private volatile AtomicReferenceArray<Connection> slots;
+
+    /**
+     * Stack of freed slot indexes.
+     */
+    private int[] freeSlots = new int[16];
+
+    /**
+     * Number of indexes on the {@link #freeSlots} stack.
+     */
+    private int freeCount;
+
+    /**
+     * Number of slots handed out at least once.
+     */
+    private int usedSlots;
+
+    /**
+     * Sequence number of the last added connection.
+     */
+    private long sequence;
+
+    /**
+     * Number of connections in the table.
+     */
+    private int size;
+
+    /**
+     * Creates a table with room for 1024 connections before it grows.
+     */
+    ConnectionTable() {
+        this(1024);
+    }
+
+    /**
+     * Creates a table with room for the given number of connections before it grows.
+     *
+     * @param initialCapacity initial number of slots
+     */
+    ConnectionTable(int initialCapacity) {
+        this.slots = new AtomicReferenceArray<>(Math.clamp(initialCapacity, 1, MAX_SLOTS));
+    }
+
+    /**
+     * Assigns a new id and a slot to a connection created by the factory.
+     *
+     * @param factory creates the connection with the id assigned to it
+     * @return the added connection
+     * @throws IllegalStateException if {@value #MAX_SLOTS} connections are already open
+     */
+    synchronized Connection add(LongFunction<Connection> factory) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (usedSlots == MAX_SLOTS) throw new IllegalStateException("connection table is full");
+            slot = usedSlots++;
+            if (slot == slots.length()) grow();
+        }
+
+        Connection connection;
+        try {
+            connection = factory.apply(++sequence << SLOT_BITS | slot);
+        } catch (RuntimeException ex) {
+            free(slot);
+            throw ex;
+        }
+        slots.set(slot, connection);
+        size++;
+        return connection;
+    }
+
+    /**
+     * Removes a connection from the table and frees its slot.
+     *
+     * @param connection connection to remove
+     * @return {@code true} if the connection was in the table, {@code false} if it was already removed
+     */
+    synchronized boolean remove(Connection connection) {
+        int slot = (int) (connection.getId() & SLOT_MASK);
+        if (slots.get(slot) != connection) return false;
+        slots.set(slot, null);
+        free(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the open connection with the given id. May be called by any thread.
+     *
+     * @param id id of the connection
+     * @return the connection, {@code null} if no open connection has the id
+     */
+    Connection get(long id) {
+        if (id <= 0) return null;
+        int slot = (int) (id & SLOT_MASK);
+        var current = slots;
+        if (slot >= current.length()) return null;
+        var connection = current.get(slot);
+        return connection != null && connection.getId() == id ? connection : null;
+    }
+
+    /**
+     * Returns the number of connections in the table.
+     *
+     * @return number of open connections
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Pushes a slot index on the free stack.
+     *
+     * @param slot index of the freed slot
+     */
+    private void free(int slot) {
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Replaces the slot array by one twice as large. Lookups still using the old array
+     * see the connections that were in it at the time.
+     */
+    private void grow() {
+        var current = slots;
+        var grown = new AtomicReferenceArray<Connection>((int) Math.min(2L * current.length(), MAX_SLOTS));
+        for (int i = 0; i < current.length(); i++)
+            grown.set(i, current.get(i));
+        slots = grown;
+    }
+}
@@ -0,0 +1,1135 @@
+package org.pogonin;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.buffer.BufferAllocator;
+import org.pogonin.buffer.BufferCache;
+import org.pogonin.buffer.ConnectionArena;
+import org.pogonin.buffer.ReceiveSizePredictor;
+import org.pogonin.codec.FrameEncoder;
+import org.pogonin.config.MemoryMode;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.exception.ClientCommunicationException;
+import org.pogonin.exception.CorruptedFrameException;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.model.Message;
+import org.pogonin.model.PooledMessage;
+import org.pogonin.queue.MpscRingBuffer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Single-threaded selector loop serving a subset of the server connections.
+ * <p>
+ * Every loop owns its own {@link Selector}. The acceptor loop additionally listens on the server channel
+ * and hands every accepted connection to a loop picked by the {@link EventLoopGroup}; in single-selector mode
+ * the acceptor keeps the connections for itself. A worker listening on its own {@code SO_REUSEPORT}
+ * channel keeps the connections it accepts.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+final class EventLoop implements Runnable {
+    /**
+     * Timeout for the {@link Selector#select()} method in milliseconds.
+     */
+    private static final long TIME_OUT_MS = 5000;
+
+    /**
+     * Timeout for the {@link Selector#select()} method in milliseconds while reading from connections is paused,
+     * bounding how late paused connections are resumed once the inbound ring has drained.
+     */
+    private static final long RESUME_CHECK_MS = 1;
+
+    /**
+     * Minimum capacity of a buffer started by {@link #reply}, so the replies to pipelined requests share it.
+     */
+    private static final int REPLY_BUFFER_SIZE = 4096;
+
+    /**
+     * Server this loop belongs to.
+     */
+    private final Server server;
+
+    /**
+     * Group used by the acceptor to pick a loop for a new connection.
+     */
+    private final EventLoopGroup group;
+
+    /**
+     * Name of the loop, also used as the name of its thread.
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Whether this is the acceptor loop, which distributes accepted connections
+     * and routes messages of clients that were not yet resolved.
+     */
+    private final boolean acceptor;
+
+    /**
+     * Selector of the loop.
+     */
+    @Getter
+    private final Selector selector;
+
+    /**
+     * Cache of pooled buffers used by the connections of this loop in {@link MemoryMode#POOLED} mode.
+     */
+    private final BufferCache bufferCache;
+
+    /**
+     * Connections handed over to this loop that are not yet registered with its selector.
+     */
+    private final Queue<Connection> pendingConnections = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Connections of this loop whose handler callback failed on a handler thread and that must be closed.
+     */
+    private final Queue<Connection> pendingCloses = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Message queue to send to clients of this loop. Any thread may offer, only the loop drains.
+     */
+    private final MpscRingBuffer<OutboundMessage> messageForClients;
+
+    /**
+     * Handler of drained messages, kept in a field so draining doesn't allocate a new lambda every iteration.
+     */
+    private final Consumer<OutboundMessage> outboundHandler = this::queueOutbound;
+
+    /**
+     * Connections that got messages in the current iteration and are not waiting for {@code OP_WRITE}.
+     */
+    private final List<Connection> dirtyConnections = new ArrayList<>();
+
+    /**
+     * Connections whose reading is paused until the inbound ring drops to its low-water mark.
+     */
+    private final List<Connection> pausedConnections = new ArrayList<>();
+
+    /**
+     * Scratch array for gathering writes, its length caps the number of buffers per write.
+     */
+    private final ByteBuffer[] gather;
+
+    /**
+     * Whether a wakeup of the selector was already requested in the current loop iteration.
+     * Coalesces wakeups of concurrent producers into at most one {@link Selector#wakeup()} per iteration.
+     */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /**
+     * Thread running the loop, {@code null} until the loop is started.
+     */
+    private volatile Thread thread;
+
+    /**
+     * Number of connections served by this loop.
+     */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /**
+     * Creates a new event loop with its own selector.
+     *
+     * @param server   server this loop belongs to
+     * @param group    group used to pick a loop for accepted connections
+     * @param name     name of the loop
+     * @param acceptor whether the loop accepts connections
+     * @throws IOException if the selector can't be opened
+     */
+    EventLoop(Server server, EventLoopGroup group, String name, boolean acceptor) throws IOException {
+        this.server = server;
+        this.group = group;
+        this.name = name;
+        this.acceptor = acceptor;
+        this.selector = Selector.open();
+        this.gather = new ByteBuffer[server.getConfig().getMaxGatheringBuffers()];
+        this.messageForClients = new MpscRingBuffer<>(server.getConfig().getOutboundQueueCapacity());
+        this.bufferCache = server.getBufferPool().newCache();
+    }
+
+    /**
+     * Processes selector events until the current thread is interrupted, then closes the loop.
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        log.debug("event loop {} started", name);
+        while (!Thread.currentThread().isInterrupted())
+            handleSelector();
+        close();
+    }
+
+    /**
+     * Hands a connection over to this loop.
+     *
+     * @param connection connection accepted for this loop
+     */
+    void register(Connection connection) {
+        connectionCount.incrementAndGet();
+        pendingConnections.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Hands a connection of this loop over to be closed by the loop and wakes the loop up.
+     * May be called by any thread.
+     *
+     * @param connection connection to close
+     */
+    void closeLater(Connection connection) {
+        pendingCloses.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Schedules a message to be written by this loop and wakes the loop up.
+     *
+     * @param message message for a client of this loop
+     * @return {@code true} if the message was added to the queue, {@code false} otherwise
+     */
+    boolean enqueue(Message message) {
+        return enqueue(message, (CompletableFuture<Void>) null);
+    }
+
+    /**
+     * Schedules a message to be written by this loop and wakes the loop up.
+     *
+     * @param message message for a client of this loop
+     * @param promise future completed once the message was written to the socket, may be {@code null}
+     * @return {@code true} if the message was added to the queue, {@code false} otherwise
+     */
+    boolean enqueue(Message message, CompletableFuture<Void> promise) {
+        var result = messageForClients.offer(new OutboundMessage(message, null, null, System.nanoTime(), promise));
+        if (result) wakeup();
+        return result;
+    }
+
+    /**
+     * Schedules the payload of a pooled message to be written by this loop and wakes the loop up.
+     * The loop takes over one reference of the payload only if it was added to the queue.
+     *
+     * @param message message for a client of this loop, without bytes
+     * @param payload payload to write
+     * @return {@code true} if the message was added to the queue, {@code false} otherwise
+     */
+    boolean enqueue(Message message, PooledMessage payload) {
+        var result = messageForClients.offer(new OutboundMessage(message, payload, null, System.nanoTime(), null));
+        if (result) wakeup();
+        return result;
+    }
+
+    /**
+     * Schedules the payload of a pooled message to be written to several connections of this loop
+     * and wakes the loop up. The loop takes over one reference of the payload in any case,
+     * releasing it right away if the queue is full.
+     *
+     * @param payload    payload shared by all recipients
+     * @param recipients ids of the connections of this loop to write to, {@code null} for all of them
+     * @return {@code true} if the broadcast was added to the queue, {@code false} otherwise
+     */
+    boolean enqueueBroadcast(PooledMessage payload, long[] recipients) {
+        var result = messageForClients.offer(new OutboundMessage(null, payload, recipients, System.nanoTime(), null));
+        if (result) wakeup();
+        else payload.release();
+        return result;
+    }
+
+    /**
+     * Takes the readable bytes handed to the handler of the server out of the connection as a pooled message.
+     * <p>
+     * If the bytes are the inbound buffer of the connection and it comes from the buffer pool, the whole buffer
+     * is detached from the connection and becomes the message without copying anything; the connection acquires
+     * a new buffer on its next read. Otherwise, e.g. for buffers of a connection arena, which can't leave
+     * the loop thread, the bytes are copied into a buffer acquired from the pool.
+     * Either way the bytes count as consumed.
+     * </p>
+     *
+     * @param connection connection the bytes were read from
+     * @param data       buffer handed to {@link org.pogonin.handler.ServerHandler#onMessage}
+     * @return message owning the bytes, with one reference
+     * @throws IllegalStateException if not called on the loop thread
+     */
+    PooledMessage takeMessage(Connection connection, ByteBuffer data) {
+        if (Thread.currentThread() != thread) throw new IllegalStateException("must be called on the event loop thread");
+        var pool = server.getBufferPool();
+        int offset = data.position();
+        int length = data.remaining();
+        data.position(data.limit());
+        if (data == connection.getInbound() && connection.getAllocator() == bufferCache)
+            return new PooledMessage(connection.getId(), connection.getAddress(), connection.detachInbound(), offset, length, pool);
+        var copy = pool.acquire(length);
+        copy.put(data.slice(offset, length)).flip();
+        return new PooledMessage(connection.getId(), connection.getAddress(), copy, 0, length, pool);
+    }
+
+    /**
+     * Copies bytes into the outbound queue of the connection right away, without passing through the queue
+     * of the loop and without the frame encoder.
+     * <p>
+     * Consecutive replies share the buffer of the previous one while it has room, and the connection is flushed
+     * at the end of the iteration, so the replies to all requests consumed from one read leave in a single
+     * gathering write. Nothing is allocated unless a new buffer is needed. A client whose queue would exceed
+     * {@link ServerConfig#getMaxOutboundBytes()} is closed after the current callback.
+     * </p>
+     *
+     * @param connection connection to write to
+     * @param data       bytes between the position and the limit, the position is moved to the limit
+     * @return {@code true} if the bytes were queued, {@code false} if the connection is closed or over its limit
+     * @throws IllegalStateException if not called on the loop thread
+     */
+    boolean reply(Connection connection, ByteBuffer data) {
+        if (Thread.currentThread() != thread) throw new IllegalStateException("must be called on the event loop thread");
+        if (!connection.getChannel().isOpen()) return false;
+        if (connection.getPendingOutboundBytes() + data.remaining() > server.getConfig().getMaxOutboundBytes()) {
+            log.error("outbound queue limit exceeded, client:{}, pending:{}",
+                    connection.getAddress(), connection.getPendingOutboundBytes());
+            closeLater(connection);
+            return false;
+        }
+        if (!connection.hasPendingWrites()) dirtyConnections.add(connection);
+        connection.append(data, REPLY_BUFFER_SIZE);
+        updateWritability(connection);
+        return true;
+    }
+
+    /**
+     * Closes the connection once every byte queued so far was written, e.g. after the last reply of a protocol
+     * that ends the connection.
+     *
+     * @param connection connection to close
+     * @throws IllegalStateException if not called on the loop thread
+     */
+    void closeWhenFlushed(Connection connection) {
+        if (Thread.currentThread() != thread) throw new IllegalStateException("must be called on the event loop thread");
+        connection.closeWhenFlushed();
+        if (!connection.hasPendingWrites()) closeLater(connection);
+    }
+
+    /**
+     * Wakes up the selector of this loop unless the caller is the loop itself
+     * or a wakeup was already requested in the current iteration.
+     */
+    void wakeup() {
+        if (Thread.currentThread() == thread) return;
+        if (wakeupPending.compareAndSet(false, true)) {
+            server.getMetrics().getWakeups().increment();
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Creates the buffer allocator for a connection of this loop according to {@link ServerConfig#getMemoryMode()}.
+     * Must be called on the loop thread.
+     *
+     * @return the loop cache, or a new connection arena
+     */
+    BufferAllocator newAllocator() {
+        return switch (server.getConfig().getMemoryMode()) {
+            case POOLED -> bufferCache;
+            case CONNECTION_ARENA -> new ConnectionArena();
+        };
+    }
+
+    /**
+     * Returns the number of connections served by this loop.
+     *
+     * @return number of connections
+     */
+    int connectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Closes all connections of this loop and its selector. Must not be called while the loop is running.
+     */
+    void close() {
+        if (!selector.isOpen()) return;
+
+        for (var key : selector.keys())
+            if (key.attachment() instanceof Connection connection) disconnect(connection);
+        Connection connection;
+        while ((connection = pendingConnections.poll()) != null)
+            disconnect(connection);
+
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            log.error("can't close selector of:{}", name, ex);
+        }
+    }
+
+    /**
+     * Processes selector events and sends messages to clients.
+     * <p>
+     * The method waits for selector events to occur for {@link #TIME_OUT_MS} milliseconds,
+     * or until another thread hands work over to the loop, then calls the I/O handler for each key,
+     * registers connections handed over to the loop and sends messages to clients.
+     * The wakeup flag is reset before the pending work is checked, so work added after the check
+     * always wakes the next {@code select}. While connections are paused, the selector is checked every
+     * {@link #RESUME_CHECK_MS} milliseconds to resume them as soon as the inbound ring has drained.
+     * </p>
+     */
+    private void handleSelector() {
+        try {
+            wakeupPending.set(false);
+            if (hasPendingWork()) selector.selectNow(this::performIO);
+            else selector.select(this::performIO, pausedConnections.isEmpty() ? TIME_OUT_MS : RESUME_CHECK_MS);
+            server.getMetrics().getSelectIterations().increment();
+            registerPendingConnections();
+            closePendingConnections();
+            resumePausedConnections();
+            if (acceptor) routeMessageForClients();
+            sendMessageForClients();
+        } catch (IOException ex) {
+            log.error("Unexpected error:{}", ex.getMessage(), ex);
+        } catch (ClientCommunicationException ex) {
+            var key = ex.getSocketChannel().keyFor(selector);
+            log.error("error in client communication:{}", ex.getSocketChannel(), ex);
+            if (key != null && key.attachment() instanceof Connection connection) disconnect(connection);
+        } catch (RuntimeException ex) {
+            log.error("Unexpected error in event loop:{}", name, ex);
+        }
+    }
+
+    /**
+     * Checks whether work was handed over to the loop since its last iteration.
+     *
+     * @return {@code true} if there are connections to register or close, or messages to send
+     */
+    private boolean hasPendingWork() {
+        return !pendingConnections.isEmpty()
+                || !pendingCloses.isEmpty()
+                || !messageForClients.isEmpty()
+                || acceptor && !server.getMessageForClients().isEmpty();
+    }
+
+    /**
+     * Performs I/O operations for the given selector key.
+     *
+     * @param key key of the selector on which to perform the operations
+     */
+    private void performIO(SelectionKey key) {
+        if (key.isAcceptable()) {
+            acceptConnection(key);
+            return;
+        }
+        if (key.isWritable()) writeToClient(key);
+        if (key.isValid() && key.isReadable()) readFromClient(key);
+    }
+
+    /**
+     * Accepts a new client connection.
+     * <p>
+     * The method accepts a new connection, switches it to non-blocking mode,
+     * assigns it an id in the connection table, adds it to the clients map and hands it over to the loop
+     * picked by the group. Connections accepted by a worker stay on that worker.
+     * </p>
+     *
+     * @param key selector key corresponding to the server channel
+     */
+    private void acceptConnection(SelectionKey key) {
+        var serverSocketChannel = (ServerSocketChannel) key.channel();
+        try {
+            var clientSocketChannel = serverSocketChannel.accept();
+            if (clientSocketChannel == null) return;
+            var loop = acceptor ? group.next() : this;
+            log.debug(
+                    "accept client connection, key:{}, loop:{}, clientSocketChannel:{}",
+                    key,
+                    loop.getName(),
+                    clientSocketChannel);
+
+            clientSocketChannel.configureBlocking(false);
+
+            var remoteAddress = clientSocketChannel.getRemoteAddress();
+            Connection connection;
+            try {
+                connection = server.getConnections().add(id -> new Connection(id, remoteAddress, clientSocketChannel, loop));
+            } catch (IllegalStateException ex) {
+                log.error("can't accept client:{}, {}", remoteAddress, ex.getMessage());
+                clientSocketChannel.close();
+                return;
+            }
+            server.getClients().put(remoteAddress, connection);
+            loop.register(connection);
+        } catch (IOException ex) {
+            log.error("can't accept new client on:{}", key);
+        }
+    }
+
+    /**
+     * Registers connections handed over to this loop for reading and reports them to the handler.
+     * Writing is only of interest while a connection has unflushed bytes.
+     * With handler threads, every connection gets its own handler queue.
+     */
+    private void registerPendingConnections() {
+        Connection connection;
+        while ((connection = pendingConnections.poll()) != null) {
+            try {
+                var config = server.getConfig();
+                var handlerExecutor = group.getHandlerExecutor();
+                connection.registered(
+                        connection.getChannel().register(selector, SelectionKey.OP_READ, connection),
+                        new ReceiveSizePredictor(
+                                config.getMinReadBufferSize(),
+                                config.getReadBufferSize(),
+                                config.getMaxReadBufferSize()),
+                        handlerExecutor == null ? null : new HandlerQueue(connection, handlerExecutor,
+                                config.getHandlerQueueDepth(), server.getMetrics().getHandlerQueueTime()),
+                        config.getFrameDecoder() == null ? null : config.getFrameDecoder().get());
+            } catch (IOException ex) {
+                log.error("can't register client:{}", connection.getAddress());
+                disconnect(connection);
+                continue;
+            }
+            if (queueCallback(connection, ServerHandler::onConnect)) continue;
+            try {
+                server.getHandler().onConnect(connection.getId(), connection.getAddress());
+            } catch (RuntimeException ex) {
+                log.error("handler failed on connect of client:{}", connection.getAddress(), ex);
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections handed over with {@link #closeLater}.
+     */
+    private void closePendingConnections() {
+        Connection connection;
+        while ((connection = pendingCloses.poll()) != null)
+            disconnect(connection);
+    }
+
+    /**
+     * Reads data from the client.
+     * <p>
+     * The method reads data from the client channel into the inbound buffer of the connection.
+     * At the end of the stream the client is disconnected. Otherwise, the accumulated bytes are consumed
+     * and backpressure is applied if the inbound ring has filled up.
+     * </p>
+     * <p>
+     * Bytes left unconsumed stay in the inbound buffer; see {@link #checkInboundRoom} for a buffer they fill up.
+     * </p>
+     *
+     * @param key selector key corresponding to the client channel
+     * @throws ClientCommunicationException if the inbound buffer is full of unconsumed bytes
+     */
+    private void readFromClient(SelectionKey key) {
+        var connection = (Connection) key.attachment();
+        var socketChannel = connection.getChannel();
+        log.debug("read from client:{}", socketChannel);
+
+        int read = readRequest(connection);
+        if (read < 0) {
+            disconnect(connection);
+            return;
+        }
+        if (read > 0) {
+            connection.received(read);
+            consumeInbound(connection);
+            applyBackpressure(connection);
+        } else {
+            connection.releaseInboundIfEmpty();
+        }
+        checkInboundRoom(connection);
+    }
+
+    /**
+     * Fails a connection that is read from while unconsumed bytes fill its inbound buffer at its maximum capacity:
+     * no more bytes can be read, so the bytes kept will never be completed to a frame the handler takes.
+     * A paused connection is left alone, its bytes are consumed once it is resumed.
+     *
+     * @param connection client connection whose bytes were just consumed
+     * @throws ClientCommunicationException if the inbound buffer of the connection is full
+     */
+    private void checkInboundRoom(Connection connection) {
+        int maxReadBufferSize = server.getConfig().getMaxReadBufferSize();
+        if (connection.isReadPaused() || !connection.getChannel().isOpen() || !connection.isInboundFull(maxReadBufferSize))
+            return;
+        throw new ClientCommunicationException("Decoding error", new CorruptedFrameException(
+                "unconsumed bytes fill the max read buffer size of " + maxReadBufferSize), connection.getChannel());
+    }
+
+    /**
+     * Hands the readable region of the inbound buffer of the connection to {@link #consume}.
+     * Whatever it leaves unconsumed is kept for the next read; a fully consumed buffer goes back to the allocator.
+     * A buffer the handler took over with {@link #takeMessage} is left alone.
+     *
+     * @param connection client connection with accumulated bytes
+     */
+    private void consumeInbound(Connection connection) {
+        var readable = connection.getInbound().flip();
+        consume(connection, readable);
+        if (connection.getInbound() != readable) return;
+        readable.compact();
+        connection.releaseInboundIfEmpty();
+    }
+
+    /**
+     * Stops reading from a connection whose handler queue is full, and from connections while the inbound ring
+     * is at or above {@link ServerConfig#getInboundHighWaterMark()}.
+     * <p>
+     * When the ring first passes the mark, the loop pauses every connection that received at least the average
+     * number of bytes since the previous time, which are the heaviest senders, and starts a new period.
+     * Until the ring drains, any connection whose read still finds the ring above the mark is paused as well.
+     * Paused connections no longer get {@link SelectionKey#OP_READ}, so their bytes stay in the socket
+     * and TCP flow control pushes back on the clients.
+     * </p>
+     *
+     * @param connection client connection that was just read from
+     */
+    private void applyBackpressure(Connection connection) {
+        if (connection.isHandlerQueueFull() && !connection.isReadPaused() && connection.getChannel().isOpen())
+            pause(connection);
+        var messages = server.getMessages();
+        if (messages.size() < Math.min(server.getConfig().getInboundHighWaterMark(), messages.capacity())) return;
+        if (pausedConnections.isEmpty()) pauseHeaviestConnections();
+        if (!connection.isReadPaused() && connection.getChannel().isOpen()) pause(connection);
+    }
+
+    /**
+     * Pauses reading from the connections of this loop that received at least the average number of bytes
+     * in the current period and starts a new period for all of them.
+     */
+    private void pauseHeaviestConnections() {
+        long total = 0;
+        int count = 0;
+        for (var key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection connection)) continue;
+            total += connection.getReceivedBytes();
+            count++;
+        }
+        if (count == 0) return;
+        long average = total / count;
+        for (var key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection connection)) continue;
+            if (connection.getReceivedBytes() > 0 && connection.getReceivedBytes() >= average) pause(connection);
+            connection.resetReceivedBytes();
+        }
+    }
+
+    /**
+     * Pauses reading from the connection and remembers it to be resumed.
+     *
+     * @param connection client connection to pause
+     */
+    private void pause(Connection connection) {
+        connection.pauseReading();
+        if (!connection.isReadPaused()) return;
+        pausedConnections.add(connection);
+        server.getMetrics().getReadPauses().increment();
+        log.debug("pause reading from client:{}", connection.getAddress());
+    }
+
+    /**
+     * Resumes reading from paused connections once the inbound ring dropped to
+     * {@link ServerConfig#getInboundLowWaterMark()} and their handler queue has room again.
+     * Bytes a connection kept unconsumed while paused are consumed right away, which may pause it again.
+     */
+    private void resumePausedConnections() {
+        if (pausedConnections.isEmpty()) return;
+        boolean ringDrained = server.getMessages().size() <= server.getConfig().getInboundLowWaterMark();
+
+        int count = pausedConnections.size();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            var connection = pausedConnections.get(i);
+            if (!connection.getChannel().isOpen()) continue;
+            if (!ringDrained || connection.isHandlerQueueFull()) {
+                pausedConnections.set(kept++, connection);
+                continue;
+            }
+            connection.resumeReading();
+            server.getMetrics().getReadResumes().increment();
+            log.debug("resume reading from client:{}", connection.getAddress());
+            if (connection.getInbound() == null) continue;
+            try {
+                consumeInbound(connection);
+                applyBackpressure(connection);
+                checkInboundRoom(connection);
+            } catch (ClientCommunicationException ex) {
+                log.error("error in client communication:{}", connection.getAddress(), ex);
+                disconnect(connection);
+            }
+        }
+        pausedConnections.subList(kept, count).clear();
+    }
+
+    /**
+     * Reads a request from a client into the inbound buffer of its connection.
+     * <p>
+     * A connection without accumulated bytes gets a buffer of the capacity predicted from its recent read bursts.
+     * Reads until the channel has no more bytes, growing the buffer whenever it fills up,
+     * up to {@link ServerConfig#getMaxReadBufferSize()}. Bytes that don't fit are read on the next select.
+     * The size of a burst that read anything then updates the prediction.
+     * </p>
+     *
+     * @param connection client connection for reading data
+     * @return the number of bytes read, {@code 0} if the buffer had no room left,
+     * {@code -1} at the end of stream if nothing was read before it
+     * @throws ClientCommunicationException if an error occurs while reading data
+     */
+    private int readRequest(Connection connection) {
+        var socketChannel = connection.getChannel();
+        var config = server.getConfig();
+        try {
+            var predictor = connection.getReceiveSizePredictor();
+            var inbound = connection.inbound(predictor.nextSize());
+            int total = 0;
+            int read;
+            while ((read = socketChannel.read(inbound)) > 0) {
+                total += read;
+                if (inbound.hasRemaining()) continue;
+                if (!connection.growInbound(config.getMaxReadBufferSize())) break;
+                inbound = connection.getInbound();
+            }
+
+            if (read < 0 && total == 0) return -1;
+            if (total > 0) predictor.record(total);
+            log.debug("Bytes read: {}, next receive size: {}", total, predictor.nextSize());
+            return total;
+
+        } catch (Exception ex) {
+            throw new ClientCommunicationException("Reading error", ex, socketChannel);
+        }
+    }
+
+    /**
+     * Consumes the readable region of the inbound buffer of the connection.
+     * <p>
+     * Without a frame decoder the bytes are handed to the handler as they are. Otherwise the decoder splits
+     * them into frames and every complete frame is handed to the handler on its own. A frame the handler
+     * doesn't consume a single byte of is kept, together with everything behind it, and decoded again
+     * after the next read; bytes of an incomplete frame are kept as well.
+     * </p>
+     *
+     * @param connection client connection the bytes were read from
+     * @param readable   view of the readable bytes, its position is advanced past the consumed bytes
+     * @throws ClientCommunicationException if the bytes can't be decoded or the handler fails
+     */
+    private void consume(Connection connection, ByteBuffer readable) {
+        var decoder = connection.getFrameDecoder();
+        if (decoder == null) {
+            deliver(connection, readable);
+            return;
+        }
+        while (readable.hasRemaining()) {
+            int start = readable.position();
+            ByteBuffer frame;
+            try {
+                frame = decoder.decode(readable);
+            } catch (RuntimeException ex) {
+                throw new ClientCommunicationException("Decoding error", ex, connection.getChannel());
+            }
+            if (frame == null) return;
+            int payloadStart = frame.position();
+            deliver(connection, frame);
+            if (frame.position() == payloadStart && frame.hasRemaining()) {
+                readable.position(start);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands received bytes to the handler of the server, which consumes as many of them as it wants.
+     * <p>
+     * With handler threads, all bytes are copied and queued as one callback instead, unless the handler
+     * queue of the connection is full, in which case they are left unconsumed until it has room again.
+     * </p>
+     *
+     * @param connection client connection the bytes were read from
+     * @param data       received bytes or a decoded frame, its position is advanced past the consumed bytes
+     * @throws ClientCommunicationException if the handler fails
+     */
+    private void deliver(Connection connection, ByteBuffer data) {
+        var handlerQueue = connection.getHandlerQueue();
+        if (handlerQueue != null) {
+            if (handlerQueue.isFull()) return;
+            var bytes = new byte[data.remaining()];
+            data.get(bytes);
+            queueCallback(connection, (handler, id, address) -> handler.onMessage(id, address, ByteBuffer.wrap(bytes)));
+            return;
+        }
+        try {
+            server.getHandler().onMessage(connection.getId(), connection.getAddress(), data);
+        } catch (RuntimeException ex) {
+            throw new ClientCommunicationException("Handler error", ex, connection.getChannel());
+        }
+    }
+
+    /**
+     * Queues a callback of the handler on the handler queue of the connection if callbacks run on handler threads.
+     *
+     * @param connection connection the callback is about
+     * @param callback   callback invoked on a handler thread with the handler, the id and the address of the client
+     * @return {@code true} if the callback was queued, {@code false} if it must be invoked on the loop
+     */
+    private boolean queueCallback(Connection connection, HandlerCallback callback) {
+        var handlerQueue = connection.getHandlerQueue();
+        if (handlerQueue == null) return false;
+        var handler = server.getHandler();
+        long id = connection.getId();
+        var address = connection.getAddress();
+        handlerQueue.execute(() -> callback.invoke(handler, id, address));
+        return true;
+    }
+
+    /**
+     * Routes messages sent to clients that were not yet known when {@link Server#send} was called
+     * to the loops serving these clients.
+     */
+    private void routeMessageForClients() {
+        Message msg;
+        while ((msg = server.getMessageForClients().poll()) != null) {
+            var connection = server.getClients().get(msg.getClientAddress());
+            if (connection == null) log.error("client {} not found", msg.getClientAddress());
+            else if (!connection.getLoop().enqueue(msg)) log.error("queue of {} is full", connection.getLoop().getName());
+        }
+    }
+
+    /**
+     * Sends messages from the {@link #messageForClients} queue to clients.
+     * <p>
+     * The queue is drained in one batch of at most its capacity, so producers that keep sending
+     * can't starve the I/O of the loop. All messages are queued on their connections first, then every
+     * connection that got messages is flushed once, so messages for the same client share gathering writes.
+     * </p>
+     */
+    private void sendMessageForClients() {
+        messageForClients.drain(outboundHandler, messageForClients.capacity());
+
+        for (var connection : dirtyConnections) {
+            if (!connection.getChannel().isOpen()) continue;
+            try {
+                flush(connection);
+            } catch (ClientCommunicationException ex) {
+                log.error("error in client communication:{}", connection.getAddress(), ex);
+                disconnect(connection);
+            }
+        }
+        dirtyConnections.clear();
+    }
+
+    /**
+     * Queues a message drained from {@link #messageForClients} on the connection of its client.
+     * The connection is found by its id; only messages routed by the acceptor are looked up by address.
+     * A message that can't be queued fails on its own: its promise completes exceptionally and its client
+     * is disconnected, while the loop goes on with the other messages.
+     *
+     * @param outbound message to queue
+     */
+    private void queueOutbound(OutboundMessage outbound) {
+        try {
+            queueMessage(outbound);
+        } catch (RuntimeException ex) {
+            failOutbound(outbound, ex);
+        }
+    }
+
+    /**
+     * Queues a message drained from {@link #messageForClients} on the connection of its client.
+     *
+     * @param outbound message to queue
+     */
+    private void queueMessage(OutboundMessage outbound) {
+        server.getMetrics().getOutboundDelay().record(System.nanoTime() - outbound.enqueuedAt());
+        var msg = outbound.message();
+        if (msg == null) {
+            queueBroadcast(outbound.pooled(), outbound.recipients());
+            return;
+        }
+        log.debug("Try send message {}", msg);
+        var connection = msg.getConnectionId() != 0
+                ? server.getConnections().get(msg.getConnectionId())
+                : server.getClients().get(msg.getClientAddress());
+        if (connection != null && outbound.pooled() != null) {
+            queue(connection, outbound.pooled());
+            return;
+        }
+        if (connection != null) {
+            queue(connection, msg.getMessage(), outbound.promise());
+            return;
+        }
+        log.error("client {} not found", msg.getClientAddress());
+        if (outbound.pooled() != null) outbound.pooled().release();
+        if (outbound.promise() != null)
+            outbound.promise().completeExceptionally(new IllegalStateException("client not connected: " + msg.getClientAddress()));
+    }
+
+    /**
+     * Fails a message whose queueing threw, completing its promise exceptionally and disconnecting its client.
+     *
+     * @param outbound message that couldn't be queued
+     * @param ex       cause of the failure
+     */
+    private void failOutbound(OutboundMessage outbound, RuntimeException ex) {
+        var msg = outbound.message();
+        if (outbound.promise() != null) outbound.promise().completeExceptionally(ex);
+        if (msg == null) {
+            log.error("can't queue broadcast", ex);
+            return;
+        }
+        log.error("can't queue message for client:{}", msg.getClientAddress(), ex);
+        var connection = msg.getConnectionId() != 0
+                ? server.getConnections().get(msg.getConnectionId())
+                : server.getClients().get(msg.getClientAddress());
+        if (connection != null && connection.getLoop() == this) disconnect(connection);
+    }
+
+    /**
+     * Queues a byte array on the connection.
+     * <p>
+     * Arrays that fit the largest pooled size class are copied into a direct buffer of the connection allocator,
+     * together with the header and trailer of the {@link ServerConfig#getFrameEncoder() frame encoder}, which
+     * the socket writes without an intermediate copy; larger ones are queued as is between their header and trailer.
+     * A connection that had nothing queued is remembered to be flushed at the end of the iteration.
+     * A connection that already waits for {@code OP_WRITE} is flushed when it becomes writable.
+     * A client whose queue would exceed {@link ServerConfig#getMaxOutboundBytes()} is disconnected.
+     * The writability of the connection is updated afterward.
+     * </p>
+     *
+     * @param connection client connection for writing data
+     * @param data       data to write
+     * @param promise    future completed once the data was written to the socket, may be {@code null}
+     */
+    private void queue(Connection connection, byte[] data, CompletableFuture<Void> promise) {
+        log.debug("queue for client:{}, data.length:{}", connection.getAddress(), data.length);
+        var encoder = server.getConfig().getFrameEncoder();
+        int framed = encoder == null ? data.length
+                : encoder.headerLength(data.length) + data.length + encoder.trailerLength(data.length);
+        if (!admit(connection, framed)) {
+            if (promise != null) promise.completeExceptionally(new IOException("outbound queue limit exceeded"));
+            return;
+        }
+        if (framed > server.getBufferPool().getMaxSize()) {
+            queueHeader(connection, encoder, data.length);
+            connection.queue(ByteBuffer.wrap(data));
+            queueTrailer(connection, encoder, data.length);
+        } else {
+            var buffer = connection.allocator().acquire(framed);
+            if (encoder != null) encoder.writeHeader(data.length, buffer);
+            buffer.put(data);
+            if (encoder != null) encoder.writeTrailer(data.length, buffer);
+            connection.queue(buffer.flip());
+        }
+        if (promise != null) connection.whenWritten(promise);
+        updateWritability(connection);
+    }
+
+    /**
+     * Queues the payload of a pooled message on the connection without copying it, following the rules of
+     * {@link #queue(Connection, byte[], CompletableFuture)}. The header and trailer of the frame encoder are queued
+     * in buffers of their own around the payload. The message is released once the payload was written,
+     * or right away if the client is disconnected for exceeding its outbound limit.
+     *
+     * @param connection client connection for writing data
+     * @param message    message whose reference is taken over
+     */
+    private void queue(Connection connection, PooledMessage message) {
+        log.debug("queue pooled for client:{}, length:{}", connection.getAddress(), message.getLength());
+        var encoder = server.getConfig().getFrameEncoder();
+        int length = message.getLength();
+        int framed = encoder == null ? length : encoder.headerLength(length) + length + encoder.trailerLength(length);
+        if (!admit(connection, framed)) {
+            message.release();
+            return;
+        }
+        queueHeader(connection, encoder, length);
+        connection.queue(message);
+        queueTrailer(connection, encoder, length);
+        updateWritability(connection);
+    }
+
+    /**
+     * Queues the frame header of a payload in a buffer of its own.
+     *
+     * @param connection    client connection for writing data
+     * @param encoder       frame encoder of the server, {@code null} if payloads are not framed
+     * @param payloadLength length of the payload
+     */
+    private void queueHeader(Connection connection, FrameEncoder encoder, int payloadLength) {
+        int length = encoder == null ? 0 : encoder.headerLength(payloadLength);
+        if (length == 0) return;
+        var buffer = connection.allocator().acquire(length);
+        encoder.writeHeader(payloadLength, buffer);
+        connection.queue(buffer.flip());
+    }
+
+    /**
+     * Queues the frame trailer of a payload in a buffer of its own.
+     *
+     * @param connection    client connection for writing data
+     * @param encoder       frame encoder of the server, {@code null} if payloads are not framed
+     * @param payloadLength length of the payload
+     */
+    private void queueTrailer(Connection connection, FrameEncoder encoder, int payloadLength) {
+        int length = encoder == null ? 0 : encoder.trailerLength(payloadLength);
+        if (length == 0) return;
+        var buffer = connection.allocator().acquire(length);
+        encoder.writeTrailer(payloadLength, buffer);
+        connection.queue(buffer.flip());
+    }
+
+    /**
+     * Queues a view of a shared payload on every recipient of a broadcast and releases the reference of the loop.
+     * Every recipient holds a reference of its own until its view was written.
+     * Recipients that are closed or served by another loop are skipped.
+     *
+     * @param payload    payload shared by all recipients
+     * @param recipients ids of the connections to write to, {@code null} for every connection of the loop
+     */
+    private void queueBroadcast(PooledMessage payload, long[] recipients) {
+        try {
+            if (recipients == null) {
+                for (var key : selector.keys())
+                    if (key.isValid() && key.attachment() instanceof Connection connection)
+                        queue(connection, payload.retain());
+                return;
+            }
+            for (long id : recipients) {
+                var connection = server.getConnections().get(id);
+                if (connection != null && connection.getLoop() == this) queue(connection, payload.retain());
+            }
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * Checks whether the bytes fit the outbound limit of the connection, disconnecting the client if they don't.
+     * A connection that had nothing queued is remembered to be flushed at the end of the iteration.
+     *
+     * @param connection client connection for writing data
+     * @param length     number of bytes to queue
+     * @return {@code true} if the bytes may be queued
+     */
+    private boolean admit(Connection connection, int length) {
+        if (connection.getPendingOutboundBytes() + length > server.getConfig().getMaxOutboundBytes()) {
+            log.error("outbound queue limit exceeded, client:{}, pending:{}",
+                    connection.getAddress(), connection.getPendingOutboundBytes());
+            disconnect(connection);
+            return false;
+        }
+        if (!connection.hasPendingWrites()) dirtyConnections.add(connection);
+        return true;
+    }
+
+    /**
+     * Resumes writing the queued bytes of the client once its channel became writable
+     * and tells the handler when the queue is drained.
+     *
+     * @param key selector key corresponding to the client channel
+     * @throws ClientCommunicationException if an error occurs while writing data or the handler fails
+     */
+    private void writeToClient(SelectionKey key) {
+        var connection = (Connection) key.attachment();
+        flush(connection);
+        if (connection.hasPendingWrites()) return;
+        if (queueCallback(connection, ServerHandler::onWritable)) return;
+        try {
+            server.getHandler().onWritable(connection.getId(), connection.getAddress());
+        } catch (RuntimeException ex) {
+            throw new ClientCommunicationException("Handler error", ex, connection.getChannel());
+        }
+    }
+
+    /**
+     * Writes the queued bytes of the connection with gathering writes.
+     * Write interest is kept while anything is left and dropped as soon as the queue is drained.
+     * The writability of the connection is updated afterward.
+     *
+     * @param connection client connection to flush
+     * @throws ClientCommunicationException if an error occurs while writing data
+     */
+    private void flush(Connection connection) {
+        try {
+            int writes = connection.flush(gather, server.getConfig().getMaxGatheringBytes());
+            server.getMetrics().getWriteCalls().add(writes);
+            log.debug("flush to client:{}, writes:{}, pending:{}",
+                    connection.getChannel(), writes, connection.getPendingOutboundBytes());
+        } catch (IOException ex) {
+            throw new ClientCommunicationException("Write to the client error", ex, connection.getChannel());
+        }
+        if (connection.isCloseWhenFlushed() && !connection.hasPendingWrites()) closeLater(connection);
+        updateWritability(connection);
+    }
+
+    /**
+     * Checks the pending bytes of the connection against the outbound watermarks
+     * and reports a change of its writability to the handler.
+     *
+     * @param connection client connection whose outbound queue changed
+     */
+    private void updateWritability(Connection connection) {
+        var config = server.getConfig();
+        if (!connection.updateWritability(config.getOutboundHighWaterMark(), config.getOutboundLowWaterMark())) return;
+        log.debug("client:{} writable:{}", connection.getAddress(), connection.isWritable());
+        boolean writable = connection.isWritable();
+        if (queueCallback(connection, (handler, id, address) -> handler.onWritabilityChanged(id, address, writable))) return;
+        try {
+            server.getHandler().onWritabilityChanged(connection.getId(), connection.getAddress(), connection.isWritable());
+        } catch (RuntimeException ex) {
+            log.error("handler failed on writability change of client:{}", connection.getAddress(), ex);
+        }
+    }
+
+    /**
+     * Disconnects the client, cleans up associated resources and reports the disconnection to the handler.
+     *
+     * @param connection client connection to disconnect
+     */
+    private void disconnect(Connection connection) {
+        var clientAddress = connection.getAddress();
+        if (!server.getConnections().remove(connection)) return;
+        server.getClients().remove(clientAddress, connection);
+
+        connectionCount.decrementAndGet();
+        try {
+            connection.getChannel().close();
+        } catch (IOException ex) {
+            log.error("can't disconnect client on:{}", clientAddress);
+        } finally {
+            connection.releaseBuffers();
+        }
+        if (queueCallback(connection, ServerHandler::onDisconnect)) return;
+        try {
+            server.getHandler().onDisconnect(connection.getId(), clientAddress);
+        } catch (RuntimeException ex) {
+            log.error("handler failed on disconnect of client:{}", clientAddress, ex);
+        }
+    }
+
+    /**
+     * Callback of a {@link ServerHandler} about one client.
+     */
+    @FunctionalInterface
+    private interface HandlerCallback {
+        /**
+         * Invokes the callback.
+         *
+         * @param handler      handler of the server
+         * @param connectionId id of the connection
+         * @param client       address of the client
+         */
+        void invoke(ServerHandler handler, long connectionId, SocketAddress client);
+    }
+}
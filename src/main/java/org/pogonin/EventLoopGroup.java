@@ -0,0 +1,164 @@
+package org.pogonin;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.config.EventLoopChooser;
+import org.pogonin.config.ServerConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Acceptor loop plus a fixed set of worker loops, each running in its own thread.
+ * <p>
+ * The acceptor runs on the thread that started the server and hands accepted connections
+ * to the worker picked by the configured {@link EventLoopChooser}, unless every worker listens
+ * on its own {@code SO_REUSEPORT} channel.
+ * Without workers the acceptor serves all connections itself.
+ * With {@link ServerConfig#getHandlerThreads()} set, the group also owns the pool of threads
+ * running the callbacks of the server handler.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+final class EventLoopGroup {
+    /**
+     * Loop accepting new connections.
+     */
+    @Getter
+    private final EventLoop acceptor;
+
+    /**
+     * Loops serving accepted connections.
+     */
+    @Getter
+    private final List<EventLoop> workers;
+
+    /**
+     * Strategy used to pick a worker for a new connection.
+     */
+    private final EventLoopChooser chooser;
+
+    /**
+     * Threads running the workers.
+     */
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Pool of threads running handler callbacks, {@code null} if callbacks run on the event loops.
+     */
+    @Getter
+    private final ExecutorService handlerExecutor;
+
+    /**
+     * Index of the worker picked next by {@link EventLoopChooser#ROUND_ROBIN}.
+     * Only accessed by the acceptor thread.
+     */
+    private int nextIndex;
+
+    /**
+     * Creates the acceptor and worker loops described by the configuration.
+     *
+     * @param server server the loops belong to
+     * @param config server configuration
+     * @throws IOException if a selector can't be opened
+     */
+    EventLoopGroup(Server server, ServerConfig config) throws IOException {
+        this.chooser = config.getEventLoopChooser();
+        this.acceptor = new EventLoop(server, this, "acceptor", true);
+        this.workers = new ArrayList<>(config.getEventLoops());
+        try {
+            for (int i = 0; i < config.getEventLoops(); i++)
+                workers.add(new EventLoop(server, this, "event-loop-" + i, false));
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+        this.handlerExecutor = config.getHandlerThreads() > 0
+                ? Executors.newFixedThreadPool(config.getHandlerThreads(), Thread.ofPlatform().name("handler-", 0).factory())
+                : null;
+    }
+
+    /**
+     * Starts a thread for every worker loop.
+     */
+    void start() {
+        for (var worker : workers)
+            threads.add(Thread.ofPlatform().name(worker.getName()).start(worker));
+        log.debug("started {} event loops", workers.size());
+    }
+
+    /**
+     * Picks the loop that will serve a newly accepted connection.
+     *
+     * @return loop for the connection
+     */
+    EventLoop next() {
+        if (workers.isEmpty()) return acceptor;
+        return switch (chooser) {
+            case ROUND_ROBIN -> {
+                var loop = workers.get(nextIndex);
+                nextIndex = (nextIndex + 1) % workers.size();
+                yield loop;
+            }
+            case LEAST_CONNECTIONS -> {
+                var loop = workers.getFirst();
+                for (var worker : workers)
+                    if (worker.connectionCount() < loop.connectionCount()) loop = worker;
+                yield loop;
+            }
+        };
+    }
+
+    /**
+     * Returns the loops serving connections: the workers, or the acceptor in single-selector mode.
+     *
+     * @return loops serving connections
+     */
+    List<EventLoop> servingLoops() {
+        return workers.isEmpty() ? List.of(acceptor) : workers;
+    }
+
+    /**
+     * Returns the number of connections served by every worker loop, or by the acceptor
+     * in single-selector mode.
+     *
+     * @return connection count per loop
+     */
+    int[] connectionCounts() {
+        if (workers.isEmpty()) return new int[]{acceptor.connectionCount()};
+        return workers.stream().mapToInt(EventLoop::connectionCount).toArray();
+    }
+
+    /**
+     * Interrupts the worker threads, waits for them to finish and closes the acceptor.
+     * Started workers close themselves when their thread finishes.
+     * The handler threads finish the callbacks queued so far, including the disconnections, and stop.
+     */
+    void shutdown() {
+        threads.forEach(Thread::interrupt);
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (var thread : threads)
+                thread.join();
+        } catch (InterruptedException ex) {
+            interrupted = true;
+        }
+        close();
+        if (handlerExecutor != null) handlerExecutor.shutdown();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Closes the acceptor and the workers that were never started.
+     */
+    private void close() {
+        acceptor.close();
+        if (!threads.isEmpty()) return;
+        workers.forEach(EventLoop::close);
+    }
+}
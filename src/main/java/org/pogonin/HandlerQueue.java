@@ -0,0 +1,148 @@
+package org.pogonin;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.metrics.LatencyHistogram;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serial queue of handler callbacks of one connection, executed by the shared pool of handler threads.
+ * <p>
+ * The event loop of the connection adds callbacks; at most one pool thread drains the queue at a time,
+ * so callbacks of the connection run one after another in the order they were added, while callbacks
+ * of different connections run in parallel. A drain runs at most {@link #BATCH} callbacks before the queue
+ * is handed back to the pool, so a busy client can't keep a thread from the others.
+ * A callback that throws closes the connection.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+final class HandlerQueue implements Runnable {
+    /**
+     * Maximum number of callbacks run by one drain.
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * Connection the callbacks belong to.
+     */
+    private final Connection connection;
+
+    /**
+     * Pool of handler threads.
+     */
+    private final Executor executor;
+
+    /**
+     * Number of waiting callbacks at which the queue counts as full.
+     */
+    private final int depth;
+
+    /**
+     * Histogram of the time callbacks waited in the queue.
+     */
+    private final LatencyHistogram queueTime;
+
+    /**
+     * Waiting callbacks.
+     */
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of callbacks added and not yet finished.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Whether the queue is submitted to the pool or being drained.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param connection connection the callbacks belong to
+     * @param executor   pool of handler threads
+     * @param depth      number of waiting callbacks at which the queue counts as full
+     * @param queueTime  histogram of the time callbacks waited in the queue
+     */
+    HandlerQueue(Connection connection, Executor executor, int depth, LatencyHistogram queueTime) {
+        this.connection = connection;
+        this.executor = executor;
+        this.depth = depth;
+        this.queueTime = queueTime;
+    }
+
+    /**
+     * Checks whether the queue reached its depth. Messages of a client with a full queue are kept
+     * by its event loop until the queue has room again.
+     *
+     * @return {@code true} if at least {@code depth} callbacks are waiting or running
+     */
+    boolean isFull() {
+        return size.get() >= depth;
+    }
+
+    /**
+     * Adds a callback behind the waiting ones, regardless of the depth, and submits the queue to the pool
+     * unless it is already submitted.
+     *
+     * @param callback callback of the handler
+     */
+    void execute(Runnable callback) {
+        size.incrementAndGet();
+        tasks.add(new Task(callback, System.nanoTime()));
+        schedule();
+    }
+
+    /**
+     * Runs waiting callbacks in order, at most {@link #BATCH} of them, then resubmits the queue
+     * if callbacks are left.
+     */
+    @Override
+    public void run() {
+        for (int i = 0; i < BATCH; i++) {
+            var task = tasks.poll();
+            if (task == null) break;
+            queueTime.record(System.nanoTime() - task.enqueuedAt());
+            try {
+                task.callback().run();
+            } catch (RuntimeException ex) {
+                log.error("handler failed for client:{}", connection.getAddress(), ex);
+                connection.getLoop().closeLater(connection);
+            } finally {
+                size.decrementAndGet();
+            }
+        }
+        scheduled.set(false);
+        if (!tasks.isEmpty()) schedule();
+    }
+
+    /**
+     * Submits the queue to the pool unless it is already submitted.
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException ex) {
+            scheduled.set(false);
+            log.debug("handler threads are shut down, dropping callbacks of client:{}", connection.getAddress());
+        }
+    }
+
+    /**
+     * Callback together with the time it was added.
+     *
+     * @param callback   callback of the handler
+     * @param enqueuedAt {@link System#nanoTime()} at the moment the callback was added
+     */
+    private record Task(Runnable callback, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,25 @@
+package org.pogonin;
+
+import org.pogonin.model.Message;
+import org.pogonin.model.PooledMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Message queued on an event loop together with the time it was queued.
+ * <p>
+ * A message without {@link #message} is a broadcast: its pooled payload is queued on several connections
+ * of the loop, every one of them writing its own view of the shared buffer.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ *
+ * @param message    message for a client of the loop, its bytes are {@code null} if the payload is pooled,
+ *                   {@code null} for a broadcast
+ * @param pooled     pooled payload to write instead of the bytes of the message, {@code null} if there is none
+ * @param recipients ids of the connections receiving a broadcast, {@code null} for every connection of the loop
+ * @param enqueuedAt {@link System#nanoTime()} at the moment the message was queued
+ * @param promise    future completed once the message was written to the socket, {@code null} if nobody waits for it
+ */
+record OutboundMessage(Message message, PooledMessage pooled, long[] recipients, long enqueuedAt, CompletableFuture<Void> promise) {
+}
@@ -0,0 +1,88 @@
+package org.pogonin;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.handler.ServerHandler;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Default handler of a {@link Server} that turns the callbacks into entries of the server queues.
+ * <p>
+ * Keeps the queue-based API working for code that polls {@link Server#getConnectedClientsEvent()},
+ * {@link Server#getDisconnectedClientsEvent()} and {@link Server#getMessages()} instead of registering
+ * its own {@link ServerHandler}. Every added entry is signalled to the wait strategy of the consumer.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+final class QueueHandler implements ServerHandler {
+    /**
+     * Pause of a handler thread between two attempts to publish into a full inbound ring, in nanoseconds.
+     */
+    private static final long RETRY_NANOS = 50_000;
+
+    /**
+     * Server whose queues are filled.
+     */
+    private final Server server;
+
+    @Override
+    public void onConnect(long connectionId, SocketAddress client) {
+        server.getConnectedClientsEvent().add(client);
+        signal();
+    }
+
+    /**
+     * Copies all received bytes into a slot of the inbound ring as one message.
+     * <p>
+     * On the event loop, if the ring is full the bytes are left unconsumed; the event loop pauses reading
+     * from the client and hands them over again once the ring has drained. On a handler thread the bytes
+     * are a copy the event loop no longer keeps, so the thread retries until the consumer made room,
+     * giving up only when the server stops or the thread is interrupted.
+     * </p>
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param data         received bytes
+     */
+    @Override
+    public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+        var connection = server.getConnections().get(connectionId);
+        var channel = connection == null ? null : connection.getChannel();
+        var messages = server.getMessages();
+        if (messages.publish(connectionId, client, channel, data)) {
+            signal();
+            return;
+        }
+        if (server.getConfig().getHandlerThreads() <= 0) {
+            log.debug("inbound queue is full, keeping {} bytes of client:{}", data.remaining(), client);
+            return;
+        }
+        while (!messages.publish(connectionId, client, channel, data)) {
+            if (server.getLocalAddress() == null || Thread.currentThread().isInterrupted()) {
+                log.warn("server stopped, dropping {} bytes of client:{}", data.remaining(), client);
+                return;
+            }
+            LockSupport.parkNanos(RETRY_NANOS);
+        }
+        signal();
+    }
+
+    @Override
+    public void onDisconnect(long connectionId, SocketAddress client) {
+        server.getDisconnectedClientsEvent().add(client);
+        signal();
+    }
+
+    /**
+     * Wakes up a consumer blocked in {@link Server#awaitEvents()}.
+     */
+    private void signal() {
+        server.getConfig().getConsumerWaitStrategy().signal();
+    }
+}
@@ -1,33 +1,47 @@
 package org.pogonin;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.pogonin.exception.ClientCommunicationException;
+import org.pogonin.buffer.BufferPool;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.metrics.ServerMetrics;
 import org.pogonin.model.Message;
+import org.pogonin.model.PooledMessage;
+import org.pogonin.queue.InboundRing;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.LongStream;
 
 /**
  * Server that handles client connections, receiving and transmitting messages using NIO.
  * <p>
- * This class manages network operations using non-blocking input/output (NIO),
- * allowing you to handle multiple client connections in a single thread.
+ * This class manages network operations using non-blocking input/output (NIO).
+ * An acceptor thread hands new connections to a group of event loops, each serving its clients
+ * with its own selector in its own thread (see {@link ServerConfig#getEventLoops()}).
  * It supports connecting and disconnecting clients, passing messages from clients, and sending messages to clients.
  * </p>
+ * <p>
+ * Client events are reported to the {@link ServerHandler} set with {@link #setHandler}, directly on the event loop
+ * serving the client. Without a handler of its own the server puts them into its event queues and inbound ring.
+ * </p>
  *
  * <p>Author: Alexey Pogonin</p>
  */
@@ -46,24 +60,21 @@ public class Server {
     private final InetAddress addr;
 
     /**
-     * Timeout for the {@link Selector#select()} method in milliseconds.
-     */
-    private final long TIME_OUT_MS = 5000;
-
-    /**
-     * An empty byte array used to indicate no data.
+     * Tuning options of the server.
      */
-    private final byte[] EMPTY_ARRAY = new byte[0];
+    private final ServerConfig config;
 
     /**
-     * Buffer for reading data from clients.
+     * Map of connected clients, matching the client's address with its connection.
      */
-    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+    @Getter(AccessLevel.PACKAGE)
+    private final Map<SocketAddress, Connection> clients = new ConcurrentHashMap<>();
 
     /**
-     * Map of connected clients, matching the client's address with its channel.
+     * Table of connected clients by connection id, used on the send paths that know the id.
      */
-    private final Map<SocketAddress, SocketChannel> clients = new HashMap<>();
+    @Getter(AccessLevel.PACKAGE)
+    private final ConnectionTable connections = new ConnectionTable();
 
     /**
      * Event queue for connecting new clients.
@@ -76,14 +87,43 @@ public class Server {
     private final Queue<SocketAddress> disconnectedClientsEvent = new ConcurrentLinkedQueue<>();
 
     /**
-     * Message queue to send to clients.
+     * Queue of messages for clients that were not yet known when {@link #send} was called.
+     * The acceptor routes them to the loops serving these clients once they are accepted.
      */
     private final Queue<Message> messageForClients = new ArrayBlockingQueue<>(1000);
 
     /**
-     * Queue of messages received from clients.
+     * Ring of messages received from clients. It must be consumed by a single thread.
+     */
+    private final InboundRing messages;
+
+    /**
+     * Handler of client events, by default one filling the event queues and the inbound ring.
+     */
+    private volatile ServerHandler handler = new QueueHandler(this);
+
+    /**
+     * Runtime statistics of the server.
+     */
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    /**
+     * Pool of direct buffers used by the read and write paths of the event loops.
+     */
+    private final BufferPool bufferPool = new BufferPool();
+
+    /**
+     * Event loops of the running server, {@code null} while the server is not running.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile EventLoopGroup group;
+
+    /**
+     * Address the server channels are bound to, {@code null} while the server is not running.
+     * Set once the event loops are running, so it also tells when the server is ready; with port {@code 0}
+     * it holds the port picked by the system.
      */
-    private final Queue<Message> messages = new ArrayBlockingQueue<>(1000);
+    private volatile SocketAddress localAddress;
 
     /**
      * Creates a new server bound to all available addresses on the specified port.
@@ -101,222 +141,515 @@ public class Server {
      * @param port port to listen for incoming connections
      */
     public Server(InetAddress addr, int port) {
+        this(addr, port, ServerConfig.defaults());
+    }
+
+    /**
+     * Creates a new server bound to the specified address and port with the given configuration.
+     *
+     * @param addr   IP address for server binding
+     * @param port   port to listen for incoming connections
+     * @param config tuning options of the server
+     * @throws IllegalArgumentException if frames of the frame decoder may not fit the maximum read buffer,
+     *                                  or if thread counts, the inbound ring or the inbound or outbound watermarks
+     *                                  are invalid
+     */
+    public Server(InetAddress addr, int port, ServerConfig config) {
+        checkFrameSize(config);
+        checkFlowControl(config);
+        checkOutboundWatermarks(config);
         this.port = port;
         this.addr = addr;
+        this.config = config;
+        this.messages = new InboundRing(config.getInboundQueueCapacity(), config.getInboundSlotSize());
+    }
+
+    /**
+     * Sets the handler of client events. Must be called before {@link #start()}.
+     * The event queues and the inbound ring of the server are no longer filled afterward.
+     *
+     * @param handler handler invoked on the event loops
+     */
+    public void setHandler(ServerHandler handler) {
+        this.handler = Objects.requireNonNull(handler, "handler");
     }
 
     /**
      * Starts the server and begins processing connections and messages from clients.
      * <p>
-     * This method opens a server channel, configures it in non-blocking mode,
-     * binds to the specified address and port, and registers to accept new connections.
-     * Then begins a loop to process selector events until the current thread is interrupted.
+     * This method opens the server channels, configures them in non-blocking mode,
+     * binds them to the specified address and port and starts the worker event loops.
+     * With {@link ServerConfig#isReusePort()} every worker gets its own channel, otherwise the acceptor
+     * listens on a single one. Then runs the acceptor loop until the current thread is interrupted,
+     * after which all loops are stopped and their connections closed. While the loops run,
+     * {@link #getLocalAddress()} returns the address the server listens on.
      * </p>
      */
     public void start() {
+        EventLoopGroup eventLoopGroup;
+        try {
+            eventLoopGroup = new EventLoopGroup(this, config);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-        try (var serverSocketChannel = ServerSocketChannel.open();
-             var selector = Selector.open()) {
-
-            serverSocketChannel.configureBlocking(false);
-            var serverSocket = serverSocketChannel.socket();
-            serverSocket.bind(new InetSocketAddress(addr, port));
-            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        var serverSocketChannels = new ArrayList<ServerSocketChannel>();
+        try {
+            var workers = eventLoopGroup.getWorkers();
+            if (config.isReusePort() && !workers.isEmpty() && isReusePortSupported()) {
+                SocketAddress address = new InetSocketAddress(addr, port);
+                for (var worker : workers) {
+                    var serverSocketChannel = openServerChannel(worker, address, true);
+                    serverSocketChannels.add(serverSocketChannel);
+                    address = serverSocketChannel.getLocalAddress();
+                }
+            } else {
+                serverSocketChannels.add(
+                        openServerChannel(eventLoopGroup.getAcceptor(), new InetSocketAddress(addr, port), false));
+            }
 
-            while (!Thread.currentThread().isInterrupted())
-                handleSelector(selector);
+            group = eventLoopGroup;
+            eventLoopGroup.start();
+            localAddress = serverSocketChannels.get(0).getLocalAddress();
+            log.debug("server listening on:{}", localAddress);
+            eventLoopGroup.getAcceptor().run();
 
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            localAddress = null;
+            group = null;
+            eventLoopGroup.shutdown();
+            serverSocketChannels.forEach(this::closeServerChannel);
         }
     }
 
     /**
      * Sends data to the specified client.
+     * <p>
+     * The message is queued on the event loop serving the client and the loop is woken up,
+     * so the message is written without waiting for the select timeout. Messages for clients that are
+     * not accepted yet are queued on the acceptor, which routes them once the client is known.
+     * </p>
      *
      * @param clientAddress address of the client to whom the data should be sent
      * @param data          byte array with data to send
      * @return {@code true} if the message was successfully added to the queue for sending,
-     * {@code false} otherwise
+     * {@code false} otherwise; use {@link #sendAsync} to learn when it was written
+     * and {@link #isWritable} to check whether the client keeps up
      */
     public boolean send(SocketAddress clientAddress, byte[] data) {
-        var result = messageForClients.offer(new Message(clientAddress, data));
+        var connection = clients.get(clientAddress);
+        boolean result;
+        if (connection != null) {
+            result = connection.getLoop().enqueue(new Message(connection.getId(), clientAddress, null, data));
+        } else {
+            result = messageForClients.offer(new Message(clientAddress, data));
+            var eventLoopGroup = group;
+            if (eventLoopGroup != null) eventLoopGroup.getAcceptor().wakeup();
+        }
         log.debug("Scheduled for sending to the client:{}", clientAddress);
         return result;
     }
 
     /**
-     * Processes selector events and sends messages to clients.
+     * Sends data to the client of the specified connection.
      * <p>
-     * The method waits for selector events to occur for {@link #TIME_OUT_MS} milliseconds,
-     * then calls the I/O handler for each key and sends messages to clients.
+     * Works like {@link #send(SocketAddress, byte[])}, but the connection is found by its id with a single
+     * array access instead of hashing the client address.
      * </p>
      *
-     * @param selector selector for handling I/O events
+     * @param connectionId id of the connection, as reported by {@link ServerHandler} and {@link Message#getConnectionId()}
+     * @param data         byte array with data to send
+     * @return {@code true} if the message was successfully added to the queue for sending,
+     * {@code false} if the connection is closed or the queue is full
      */
-    private void handleSelector(Selector selector) {
-        try {
-            selector.select(this::performIO, TIME_OUT_MS);
-            sendMessageForClients();
-        } catch (IOException ex) {
-            log.error("Unexpected error:{}", ex.getMessage(), ex);
-        } catch (ClientCommunicationException ex) {
-            var clientAddress = getSocketAddress(ex.getSocketChannel());
-            log.error("error in client communication:{}", clientAddress, ex);
-            disconnect(clientAddress);
-        }
+    public boolean send(long connectionId, byte[] data) {
+        var connection = connections.get(connectionId);
+        if (connection == null) return false;
+        return connection.getLoop().enqueue(new Message(connectionId, connection.getAddress(), null, data));
     }
 
     /**
-     * Performs I/O operations for the given selector key.
+     * Sends the payload of a pooled message to the client of the specified connection without copying it.
+     * <p>
+     * The server takes over one reference of the message in any case: it is released once the payload
+     * was written, or right away if it can't be sent. A caller that keeps using the message, e.g. to send it
+     * to several clients, must {@link PooledMessage#retain() retain} it for every send.
+     * </p>
+     *
+     * @param connectionId id of the connection, as reported by {@link ServerHandler}
+     * @param message      message whose payload should be sent
+     * @return {@code true} if the message was added to the queue, {@code false} otherwise
+     */
+    public boolean send(long connectionId, PooledMessage message) {
+        var connection = connections.get(connectionId);
+        if (connection != null
+                && connection.getLoop().enqueue(new Message(connectionId, connection.getAddress(), null, null), message))
+            return true;
+        message.release();
+        return false;
+    }
+
+    /**
+     * Sends the same data to every connected client.
+     * <p>
+     * The data is copied once into a pooled buffer shared by all recipients. Every event loop gets a single
+     * queue entry for all of its clients, and every client queues a read-only view of the shared buffer,
+     * which returns to the pool once the last client has written it. Clients connected while the broadcast
+     * is in flight may miss it.
+     * </p>
      *
-     * @param key key of the selector on which to perform the operations
+     * @param data byte array with data to send
+     * @return {@code true} if the data was scheduled on every event loop, {@code false} if the server
+     * is not running or the queue of a loop is full
      */
-    private void performIO(SelectionKey key) {
-        if (key.isAcceptable()) {
-            acceptConnection(key);
-        } else if (key.isReadable()) {
-            readFromClient(key);
+    public boolean broadcast(byte[] data) {
+        var eventLoopGroup = group;
+        if (eventLoopGroup == null) return false;
+        var payload = PooledMessage.copyOf(bufferPool, data);
+        boolean result = true;
+        try {
+            for (var loop : eventLoopGroup.servingLoops())
+                result &= loop.enqueueBroadcast(payload.retain(), null);
+        } finally {
+            payload.release();
         }
+        log.debug("Scheduled broadcast of {} bytes", data.length);
+        return result;
     }
 
     /**
-     * Accepts a new client connection.
+     * Sends the same data to the clients of the specified connections.
      * <p>
-     * The method accepts a new connection, switches it to non-blocking mode,
-     * registers for reading and writing, adds clients and connection event queue to the map.
+     * Works like {@link #broadcast(byte[])}: the data is copied once and shared by all recipients,
+     * and every event loop gets a single queue entry for those of its clients that are among them.
      * </p>
      *
-     * @param key selector key corresponding to the server channel
+     * @param connectionIds ids of the connections, as reported by {@link ServerHandler}
+     * @param data          byte array with data to send
+     * @return number of connections the data was scheduled for; unknown ids and clients of loops
+     * whose queue is full are not counted
      */
-    private void acceptConnection(SelectionKey key) {
-        var serverSocketChannel = (ServerSocketChannel) key.channel();
+    public int sendToAll(long[] connectionIds, byte[] data) {
+        var recipients = new IdentityHashMap<EventLoop, LongStream.Builder>();
+        for (long id : connectionIds) {
+            var connection = connections.get(id);
+            if (connection != null) recipients.computeIfAbsent(connection.getLoop(), loop -> LongStream.builder()).add(id);
+        }
+        if (recipients.isEmpty()) return 0;
+
+        var payload = PooledMessage.copyOf(bufferPool, data);
+        int scheduled = 0;
         try {
-            var clientSocketChannel = serverSocketChannel.accept();
-            var selector = key.selector();
-            log.debug(
-                    "accept client connection, key:{}, selector:{}, clientSocketChannel:{}",
-                    key,
-                    selector,
-                    clientSocketChannel);
-
-            clientSocketChannel.configureBlocking(false);
-            clientSocketChannel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-
-            var remoteAddress = clientSocketChannel.getRemoteAddress();
-            clients.put(remoteAddress, clientSocketChannel);
-            connectedClientsEvent.add(remoteAddress);
-        } catch (IOException ex) {
-            log.error("can't accept new client on:{}", key);
+            for (var entry : recipients.entrySet()) {
+                var ids = entry.getValue().build().toArray();
+                if (entry.getKey().enqueueBroadcast(payload.retain(), ids)) scheduled += ids.length;
+            }
+        } finally {
+            payload.release();
         }
+        return scheduled;
     }
 
     /**
-     * Reads data from the client.
+     * Takes the bytes handed to {@link ServerHandler#onMessage} out of the connection as a pooled message,
+     * so they can be kept or sent back after the callback returned.
      * <p>
-     * The method reads data from the client channel.
-     * If the number of bytes read is zero, the client is considered disconnected.
-     * Otherwise, the message is added to the queue of received messages from clients.
+     * Must be called from {@code onMessage} running on the event loop, i.e. without handler threads,
+     * with the buffer it got. The bytes count as consumed. With
+     * {@link org.pogonin.config.MemoryMode#POOLED} the buffer of the connection itself becomes the message,
+     * so nothing is copied; otherwise the bytes are copied into a pooled buffer once. The caller owns
+     * one reference of the message and must release it, e.g. by passing it to {@link #send(long, PooledMessage)}.
      * </p>
      *
-     * @param key selector key corresponding to the client channel
+     * @param connectionId id of the connection the bytes were received on
+     * @param data         buffer handed to {@code onMessage}
+     * @return message holding the remaining bytes of the buffer
+     * @throws IllegalStateException if the connection is closed or the method is not called on its event loop
      */
-    private void readFromClient(SelectionKey key) {
-        var socketChannel = (SocketChannel) key.channel();
-        log.debug("read from client:{}", socketChannel);
+    public PooledMessage takeMessage(long connectionId, ByteBuffer data) {
+        var connection = connections.get(connectionId);
+        if (connection == null) throw new IllegalStateException("connection closed: " + connectionId);
+        return connection.getLoop().takeMessage(connection, data);
+    }
 
-        var data = readRequest(socketChannel);
-        if (data.length == 0) disconnect(getSocketAddress(socketChannel));
-        else messages.add(new Message(getSocketAddress(socketChannel), socketChannel, data));
+    /**
+     * Writes a reply to the client of a connection straight into its outbound queue.
+     * <p>
+     * Unlike {@link #send(long, byte[])}, the bytes don't pass through the queue of the event loop: they are copied
+     * right away behind the pending ones, sharing the buffer of the previous reply while it has room, and written
+     * at the end of the loop iteration. Replies to pipelined requests handled in one {@code onMessage} call thus
+     * leave in a single gathering write without allocating. The bytes are written as they are, without
+     * the {@link ServerConfig#getFrameEncoder() frame encoder}.
+     * Must be called from a callback running on the event loop, i.e. without handler threads.
+     * </p>
+     *
+     * @param connectionId id of the connection, as reported by {@link ServerHandler}
+     * @param data         bytes between the position and the limit, the position is moved to the limit
+     * @return {@code true} if the bytes were queued, {@code false} if the client is not connected
+     * @throws IllegalStateException if not called on the event loop of the connection
+     */
+    public boolean reply(long connectionId, ByteBuffer data) {
+        var connection = connections.get(connectionId);
+        if (connection == null) return false;
+        return connection.getLoop().reply(connection, data);
     }
 
     /**
-     * Reads a request from a client from the specified channel.
+     * Closes the connection once every byte queued on it so far was written.
+     * Must be called from a callback running on the event loop, i.e. without handler threads.
      *
-     * @param socketChannel client channel for reading data
-     * @return an array of bytes containing the data read from the client
-     * @throws ClientCommunicationException if an error occurs while reading data
-     */
-    private byte[] readRequest(SocketChannel socketChannel) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            buffer.clear();
-
-            while (socketChannel.read(buffer) > 0) {
-                buffer.flip();
-                byte[] bytes = new byte[buffer.remaining()];
-                buffer.get(bytes);
-                baos.write(bytes);
-                buffer.clear();
-            }
+     * @param connectionId id of the connection, as reported by {@link ServerHandler}
+     * @return {@code true} if the connection will be closed, {@code false} if it is not connected
+     * @throws IllegalStateException if not called on the event loop of the connection
+     */
+    public boolean closeWhenWritten(long connectionId) {
+        var connection = connections.get(connectionId);
+        if (connection == null) return false;
+        connection.getLoop().closeWhenFlushed(connection);
+        return true;
+    }
 
-            log.debug("Bytes read: {}", baos.size());
-            if (baos.size() == 0) return EMPTY_ARRAY;
-            return baos.toByteArray();
+    /**
+     * Attaches an object to a connection, e.g. the protocol state of the client, so a handler can keep
+     * per-connection state without a map of its own. The object is dropped with the connection.
+     *
+     * @param connectionId id of the connection, as reported by {@link ServerHandler}
+     * @param attachment   object to attach, {@code null} to remove the attached one
+     * @return {@code true} if attached, {@code false} if the client is not connected
+     */
+    public boolean attach(long connectionId, Object attachment) {
+        var connection = connections.get(connectionId);
+        if (connection == null) return false;
+        connection.attach(attachment);
+        return true;
+    }
 
-        } catch (Exception ex) {
-            throw new ClientCommunicationException("Reading error", ex, socketChannel);
-        }
+    /**
+     * Returns the object attached to a connection with {@link #attach}.
+     *
+     * @param connectionId id of the connection, as reported by {@link ServerHandler}
+     * @return attached object, {@code null} if there is none or the client is not connected
+     */
+    public Object attachment(long connectionId) {
+        var connection = connections.get(connectionId);
+        return connection == null ? null : connection.getAttachment();
+    }
+
+    /**
+     * Sends data to the specified client and reports when it was written.
+     * <p>
+     * Works like {@link #send}, but the returned future completes once every byte of the data was handed
+     * to the socket of the client. It fails if the client is not connected, the queue of its event loop is full,
+     * its outbound queue limit is exceeded or the connection is closed before the data was written.
+     * The future is completed on the event loop of the client, so dependent actions that are not async
+     * must not block.
+     * </p>
+     *
+     * @param clientAddress address of the client to whom the data should be sent
+     * @param data          byte array with data to send
+     * @return future completed once the data was written to the socket
+     */
+    public CompletableFuture<Void> sendAsync(SocketAddress clientAddress, byte[] data) {
+        return sendAsync(clients.get(clientAddress), clientAddress, data);
+    }
+
+    /**
+     * Sends data to the client of the specified connection and reports when it was written.
+     * Works like {@link #sendAsync(SocketAddress, byte[])} with the connection found by its id.
+     *
+     * @param connectionId id of the connection
+     * @param data         byte array with data to send
+     * @return future completed once the data was written to the socket
+     */
+    public CompletableFuture<Void> sendAsync(long connectionId, byte[] data) {
+        return sendAsync(connections.get(connectionId), connectionId, data);
+    }
+
+    /**
+     * Checks whether the outbound queue of the client is below its high-water mark.
+     * <p>
+     * A client stops being writable once more than {@link ServerConfig#getOutboundHighWaterMark()} bytes wait
+     * for its socket and becomes writable again at {@link ServerConfig#getOutboundLowWaterMark()}.
+     * Producers may use it to throttle per client; {@link ServerHandler#onWritabilityChanged} reports the changes.
+     * </p>
+     *
+     * @param clientAddress address of the client
+     * @return {@code true} if the client is connected and writable
+     */
+    public boolean isWritable(SocketAddress clientAddress) {
+        var connection = clients.get(clientAddress);
+        return connection != null && connection.isWritable();
     }
 
     /**
-     * Sends messages from the {@link #messageForClients} queue to clients.
+     * Checks whether the outbound queue of the connection is below its high-water mark.
+     *
+     * @param connectionId id of the connection
+     * @return {@code true} if the connection is open and writable
      */
-    private void sendMessageForClients() {
-        Message msg;
-        while ((msg = messageForClients.poll()) != null) {
-            log.debug("Try send message {}", msg);
-            var client = clients.get(msg.getClientAddress());
-            if (client == null) log.error("client {} not found", msg.getClientAddress());
-            else write(client, msg.getMessage());
+    public boolean isWritable(long connectionId) {
+        var connection = connections.get(connectionId);
+        return connection != null && connection.isWritable();
+    }
+
+    /**
+     * Waits until one of the event queues or the inbound ring has an entry.
+     * <p>
+     * Meant for the thread consuming the queues of the default handler: it waits with
+     * {@link ServerConfig#getConsumerWaitStrategy()} instead of polling the queues in a busy loop.
+     * Returns immediately if an entry is already waiting.
+     * </p>
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void awaitEvents() throws InterruptedException {
+        config.getConsumerWaitStrategy().await(this::hasEvents);
+    }
+
+    /**
+     * Queues data on the event loop of the connection with a future completed once it was written.
+     *
+     * @param connection connection of the client, {@code null} if the client is not connected
+     * @param client     address or id of the client, used in error messages
+     * @param data       byte array with data to send
+     * @return future completed once the data was written to the socket
+     */
+    private CompletableFuture<Void> sendAsync(Connection connection, Object client, byte[] data) {
+        var future = new CompletableFuture<Void>();
+        if (connection == null) {
+            future.completeExceptionally(new IllegalStateException("client not connected: " + client));
+            return future;
         }
+        var message = new Message(connection.getId(), connection.getAddress(), null, data);
+        if (!connection.getLoop().enqueue(message, future))
+            future.completeExceptionally(new IllegalStateException("queue of " + connection.getLoop().getName() + " is full"));
+        return future;
+    }
+
+    /**
+     * Checks whether one of the event queues or the inbound ring has an entry.
+     *
+     * @return {@code true} if there is something to consume
+     */
+    private boolean hasEvents() {
+        return !messages.isEmpty() || !connectedClientsEvent.isEmpty() || !disconnectedClientsEvent.isEmpty();
     }
 
     /**
-     * Writes a byte array to a channel
+     * Returns the number of connections served by every event loop of the running server.
      *
-     * @param clientChannel client channel for writing data
-     * @throws ClientCommunicationException if an error occurs while writing data
+     * @return connection count per loop, empty if the server is not running
      */
-    private void write(SocketChannel clientChannel, byte[] data) {
-        log.debug("write to client:{}, data.length:{}", clientChannel, data.length);
-        buffer.put(data);
-        buffer.flip();
+    int[] eventLoopConnections() {
+        var eventLoopGroup = group;
+        return eventLoopGroup == null ? new int[0] : eventLoopGroup.connectionCounts();
+    }
+
+    /**
+     * Checks that every frame accepted by the frame decoder of the configuration fits the inbound buffer
+     * of a connection, since a frame that doesn't is never decoded.
+     *
+     * @param config tuning options of the server
+     * @throws IllegalArgumentException if frames may be larger than {@link ServerConfig#getMaxReadBufferSize()}
+     */
+    private static void checkFrameSize(ServerConfig config) {
+        if (config.getFrameDecoder() == null) return;
+        long maxFrameSize = config.getFrameDecoder().get().maxFrameSize();
+        if (maxFrameSize > config.getMaxReadBufferSize())
+            throw new IllegalArgumentException("frames of up to " + maxFrameSize
+                    + " bytes don't fit the max read buffer size of " + config.getMaxReadBufferSize());
+    }
+
+    /**
+     * Checks the thread counts and the inbound ring of the configuration, and that reading paused at the high
+     * watermark of the ring is resumed only once the ring drained below it, since otherwise connections
+     * would be resumed right after being paused.
+     *
+     * @param config tuning options of the server
+     * @throws IllegalArgumentException if a thread count is negative, the ring has no capacity or the low
+     *                                  watermark isn't below the high one capped by the capacity of the ring
+     */
+    private static void checkFlowControl(ServerConfig config) {
+        if (config.getEventLoops() < 0)
+            throw new IllegalArgumentException("invalid event loop count: " + config.getEventLoops());
+        if (config.getHandlerThreads() < 0)
+            throw new IllegalArgumentException("invalid handler thread count: " + config.getHandlerThreads());
+        if (config.getInboundQueueCapacity() <= 0)
+            throw new IllegalArgumentException("invalid inbound queue capacity: " + config.getInboundQueueCapacity());
+        int highWaterMark = Math.min(config.getInboundHighWaterMark(), config.getInboundQueueCapacity());
+        if (config.getInboundLowWaterMark() < 0 || config.getInboundLowWaterMark() >= highWaterMark)
+            throw new IllegalArgumentException("inbound low watermark " + config.getInboundLowWaterMark()
+                    + " must be below the high watermark " + highWaterMark);
+    }
+
+    /**
+     * Checks that a connection that stopped being writable becomes writable again only once its outbound queue
+     * drained below the high watermark, and that it stops being writable before its client is disconnected.
+     *
+     * @param config tuning options of the server
+     * @throws IllegalArgumentException if the low watermark is negative or not below the high one,
+     *                                  or the high watermark exceeds {@link ServerConfig#getMaxOutboundBytes()}
+     */
+    private static void checkOutboundWatermarks(ServerConfig config) {
+        if (config.getOutboundLowWaterMark() < 0 || config.getOutboundLowWaterMark() >= config.getOutboundHighWaterMark())
+            throw new IllegalArgumentException("outbound low watermark " + config.getOutboundLowWaterMark()
+                    + " must be below the high watermark " + config.getOutboundHighWaterMark());
+        if (config.getOutboundHighWaterMark() > config.getMaxOutboundBytes())
+            throw new IllegalArgumentException("outbound high watermark " + config.getOutboundHighWaterMark()
+                    + " exceeds the max outbound bytes of " + config.getMaxOutboundBytes());
+    }
+
+    /**
+     * Opens a non-blocking server channel bound to the address and registers it
+     * for accepting connections with the selector of the loop.
+     *
+     * @param loop      loop that will accept connections of the channel
+     * @param address   address to bind to
+     * @param reusePort whether to enable {@code SO_REUSEPORT} on the channel
+     * @return bound server channel
+     * @throws IOException if the channel can't be opened, bound or registered
+     */
+    private ServerSocketChannel openServerChannel(EventLoop loop, SocketAddress address, boolean reusePort)
+            throws IOException {
+        var serverSocketChannel = ServerSocketChannel.open();
         try {
-            clientChannel.write(buffer);
-            buffer.clear();
+            serverSocketChannel.configureBlocking(false);
+            if (reusePort) serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            serverSocketChannel.bind(address);
+            serverSocketChannel.register(loop.getSelector(), SelectionKey.OP_ACCEPT);
+            return serverSocketChannel;
         } catch (IOException ex) {
-            throw new ClientCommunicationException("Write to the client error", ex, clientChannel);
+            serverSocketChannel.close();
+            throw ex;
         }
     }
 
     /**
-     * Disconnects the client and cleans up associated resources.
+     * Closes the server channel, logging the failure if any.
      *
-     * @param clientAddress client address to disconnect
-     */
-    private void disconnect(SocketAddress clientAddress) {
-        var clientChannel = clients.remove(clientAddress);
-        if (clientChannel != null) {
-            try {
-                clientChannel.close();
-                disconnectedClientsEvent.add(clientAddress);
-            } catch (IOException ex) {
-                log.error("can't disconnect client on:{}", clientAddress);
-            }
+     * @param serverSocketChannel server channel to close
+     */
+    private void closeServerChannel(ServerSocketChannel serverSocketChannel) {
+        try {
+            serverSocketChannel.close();
+        } catch (IOException ex) {
+            log.error("can't close server channel:{}", serverSocketChannel, ex);
         }
     }
 
     /**
-     * Gets the socket address from the channel.
+     * Checks whether the platform supports {@code SO_REUSEPORT} on server channels.
      *
-     * @param socketChannel socket channel
-     * @return socket address
+     * @return {@code true} if the option is supported
+     * @throws IOException if a probe channel can't be opened
      */
-    private SocketAddress getSocketAddress(SocketChannel socketChannel) {
-        try {
-            return socketChannel.socket().getRemoteSocketAddress();
-        } catch (Exception ex) {
-            throw new ClientCommunicationException("get RemoteAddress error", ex, socketChannel);
+    private boolean isReusePortSupported() throws IOException {
+        try (var probe = ServerSocketChannel.open()) {
+            if (probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) return true;
         }
+        log.warn("SO_REUSEPORT is not supported, falling back to a single acceptor");
+        return false;
     }
 }
@@ -1,17 +1,20 @@
 package org.pogonin;
 
 import java.net.InetAddress;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.pogonin.handler.ServerHandler;
+
 /**
  * TCP Echo Server, which listens on the specified port, accepts messages from clients
  * and sends them back ("echo" effect).
  * <p>
  * This class uses a {@link Server} instance to manage network operations.
  * It handles client connection, disconnection and message receiving events
- * in separate threads.
+ * with a {@link ServerHandler} invoked on the event loops of the server.
  * </p>
  *
  * <p>Author: Alexey Pogonin</p>
@@ -52,75 +55,65 @@ public class TcpEchoServer {
     /**
      * Starts the server.
      * <p>
-     * Initializes the {@link Server} instance and starts processing client connections
-     * and messages using a thread pool of two threads.
+     * Initializes the {@link Server} instance with an {@link EchoHandler} and runs it in the current thread
+     * until the thread is interrupted. Every message is echoed directly from the event loop that read it,
+     * so no extra thread polls the server queues.
      * </p>
      */
     public void run() {
-        var server = new Server(port);
-
-        try (var executor = Executors.newFixedThreadPool(2)) {
-            executor.submit(server::start);
-
-            executor.submit(() -> {
-                while (!Thread.currentThread().isInterrupted()) {
-                    try {
-                        handleConnectedClientsEvent(server);
-                        handleDisconnectedClientsEvent(server);
-                        handleClientMessagesEvent(server);
-                    } catch (Exception e) {
-                        log.error("error:{}", e.getMessage());
-                    }
-                }
-            });
-        }
+        var server = new Server(addr, port);
+        server.setHandler(new EchoHandler(server));
+        server.start();
     }
 
     /**
-     * Processes connection events for new clients.
-     * <p>
-     * Retrieves new client connections from the server queue and logs information
-     * about each new connection.
-     * </p>
-     *
-     * @param server instance of {@link Server} managing client connections
+     * Handler that logs connection events and sends every received message back to its client.
      */
-    private void handleConnectedClientsEvent(Server server) {
-        var newClient = server.getConnectedClientsEvent().poll();
-        if (newClient != null) log.info("New client connected: {}", newClient);
-    }
+    @RequiredArgsConstructor
+    private static final class EchoHandler implements ServerHandler {
+        /**
+         * Server used to send the echoes.
+         */
+        private final Server server;
 
-    /**
-     * Handles client disconnect events.
-     * <p>
-     * Retrieves client disconnection facts from the server queue and logs information
-     * about each outage.
-     * </p>
-     *
-     * @param server instance of {@link Server} managing client connections
-     */
-    private void handleDisconnectedClientsEvent(Server server) {
-        var disconnectedClient = server.getDisconnectedClientsEvent().poll();
-        if (disconnectedClient != null) log.info("Client disconnected: {}", disconnectedClient);
-    }
-
-    /**
-     * Processes incoming messages from clients.
-     * <p>
-     * Retrieves new messages from the server queue, logs them and sends them
-     * back to the client (echo effect).
-     * </p>
-     *
-     * @param server instance of {@link Server} that manages client connections and messages
-     */
-    private void handleClientMessagesEvent(Server server) {
-        var messageFromClient = server.getMessages().poll();
+        /**
+         * Logs information about a new connection.
+         *
+         * @param connectionId id of the connection
+         * @param client       address of the client
+         */
+        @Override
+        public void onConnect(long connectionId, SocketAddress client) {
+            log.info("New client connected: {}", client);
+        }
 
-        if (messageFromClient == null) return;
+        /**
+         * Logs information about a disconnection.
+         *
+         * @param connectionId id of the connection
+         * @param client       address of the client
+         */
+        @Override
+        public void onDisconnect(long connectionId, SocketAddress client) {
+            log.info("Client disconnected: {}", client);
+        }
 
-        String messageAsString = new String(messageFromClient.getMessage(), StandardCharsets.UTF_8);
-        log.info("from:{}, message:{}", messageFromClient.getClientAddress(), messageAsString);
-        boolean result = server.send(messageFromClient.getClientAddress(), messageFromClient.getMessage());
-        log.info("echo message: {}", result);
+        /**
+         * Sends the received bytes back to the client (echo effect).
+         * <p>
+         * The bytes are taken out of the connection as a pooled message and sent as is, without copying them.
+         * </p>
+         *
+         * @param connectionId id of the connection
+         * @param client       address of the client
+         * @param data         received bytes
+         */
+        @Override
+        public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+            var message = server.takeMessage(connectionId, data);
+            log.debug("from:{}, bytes:{}", client, message.getLength());
+            boolean result = server.send(connectionId, message);
+            log.debug("echo message: {}", result);
+        }
     }
 }
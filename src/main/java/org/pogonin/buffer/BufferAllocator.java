@@ -0,0 +1,36 @@
+package org.pogonin.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of direct buffers for the read and write paths of a connection.
+ * <p>
+ * Allocators are used by a single event loop thread only.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public interface BufferAllocator {
+    /**
+     * Acquires a cleared direct buffer with at least the given capacity.
+     * The buffer must be handed back with {@link #release} once it is no longer used.
+     *
+     * @param size minimum capacity
+     * @return buffer with at least the requested capacity
+     */
+    ByteBuffer acquire(int size);
+
+    /**
+     * Releases a buffer acquired from this allocator.
+     *
+     * @param buffer buffer that is no longer used
+     */
+    void release(ByteBuffer buffer);
+
+    /**
+     * Frees the memory held by the allocator once the connection using it is closed.
+     * Buffers acquired from the allocator must not be used afterwards.
+     */
+    default void close() {
+    }
+}
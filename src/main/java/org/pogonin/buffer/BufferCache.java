@@ -0,0 +1,80 @@
+package org.pogonin.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Buffer cache of a single event loop.
+ * <p>
+ * Keeps a bounded stack of free buffers per size class of its {@link BufferPool}. The cache is only
+ * used by the thread of its loop, so acquiring and releasing a buffer takes no locks; the shared arena
+ * of the pool is only consulted when the cache runs empty or full.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BufferCache implements BufferAllocator {
+    /**
+     * Pool backing the cache.
+     */
+    private final BufferPool pool;
+
+    /**
+     * Free buffers of every size class.
+     */
+    private final ArrayDeque<ByteBuffer>[] free;
+
+    /**
+     * Maximum number of free buffers kept per size class.
+     */
+    private final int[] limits;
+
+    /**
+     * Creates a cache backed by the pool.
+     *
+     * @param pool   pool backing the cache
+     * @param limits maximum number of free buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    BufferCache(BufferPool pool, int[] limits) {
+        this.pool = pool;
+        this.limits = limits;
+        this.free = new ArrayDeque[limits.length];
+        for (int i = 0; i < limits.length; i++)
+            free[i] = new ArrayDeque<>(Math.min(limits[i], 16));
+    }
+
+    /**
+     * Acquires a cleared direct buffer with at least the given capacity.
+     * The buffer must be handed back with {@link #release} once it is no longer used.
+     *
+     * @param size minimum capacity
+     * @return buffer whose capacity is the size class serving the size
+     */
+    @Override
+    public ByteBuffer acquire(int size) {
+        int index = pool.sizeClass(size);
+        if (index < 0) return pool.allocateUnpooled(size);
+
+        var buffer = free[index].poll();
+        if (buffer != null) pool.cacheHit();
+        else buffer = pool.allocate(index);
+        pool.acquired(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Releases a buffer acquired from this cache or another cache of the same pool.
+     *
+     * @param buffer buffer that is no longer used
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+        pool.released(buffer.capacity());
+        int index = pool.sizeClassOf(buffer);
+        if (index < 0) return;
+
+        if (free[index].size() < limits[index]) free[index].push(buffer.clear());
+        else pool.free(index, buffer);
+    }
+}
@@ -0,0 +1,326 @@
+package org.pogonin.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers with power-of-two size classes.
+ * <p>
+ * The pool itself is the shared arena: every size class keeps a bounded stack of free buffers guarded by a lock.
+ * Event loops don't use it directly but through their own {@link BufferCache}, which serves most requests
+ * without locking and only falls back to the arena when it runs empty or full.
+ * Requests larger than the largest size class are served with unpooled buffers.
+ * Buffers that outlive the loop that acquired them, such as payloads of pooled messages, are acquired
+ * and released through the pool itself, which is safe from any thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BufferPool {
+    /**
+     * Default capacity of the smallest size class.
+     */
+    public static final int DEFAULT_MIN_SIZE = 64;
+
+    /**
+     * Default capacity of the largest size class.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * Bytes the arena keeps per size class at most.
+     */
+    private static final int ARENA_BYTES_PER_CLASS = 4 * 1024 * 1024;
+
+    /**
+     * Bytes a loop cache keeps per size class at most.
+     */
+    private static final int CACHE_BYTES_PER_CLASS = 256 * 1024;
+
+    /**
+     * Binary logarithm of the smallest size class.
+     */
+    private final int minShift;
+
+    /**
+     * Capacity of the largest size class.
+     */
+    private final int maxSize;
+
+    /**
+     * Free buffers of every size class shared by all loops.
+     */
+    private final ArrayDeque<ByteBuffer>[] arena;
+
+    /**
+     * Maximum number of free buffers the arena keeps per size class.
+     */
+    private final int[] arenaLimits;
+
+    /**
+     * Requests served by a loop cache.
+     */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * Requests served by the shared arena.
+     */
+    private final LongAdder arenaHits = new LongAdder();
+
+    /**
+     * Requests that needed a new buffer.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Capacity of all buffers handed out and not released yet.
+     */
+    private final LongAdder bytesOutstanding = new LongAdder();
+
+    /**
+     * Creates a pool with size classes from {@value #DEFAULT_MIN_SIZE} bytes to 1 MiB.
+     */
+    public BufferPool() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a pool with size classes between the given capacities.
+     *
+     * @param minSize capacity of the smallest size class, rounded up to a power of two
+     * @param maxSize capacity of the largest size class, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int minSize, int maxSize) {
+        if (minSize <= 0 || maxSize < minSize) throw new IllegalArgumentException("invalid size classes");
+        this.minShift = shift(minSize);
+        this.maxSize = 1 << shift(maxSize);
+        int classes = shift(maxSize) - minShift + 1;
+        this.arena = new ArrayDeque[classes];
+        this.arenaLimits = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            arena[i] = new ArrayDeque<>();
+            arenaLimits[i] = limit(ARENA_BYTES_PER_CLASS, classSize(i), 1024);
+        }
+    }
+
+    /**
+     * Creates a cache for a single event loop. The cache must only be used by that loop.
+     *
+     * @return new cache backed by this pool
+     */
+    public BufferCache newCache() {
+        var limits = new int[arena.length];
+        for (int i = 0; i < limits.length; i++)
+            limits[i] = limit(CACHE_BYTES_PER_CLASS, classSize(i), 256);
+        return new BufferCache(this, limits);
+    }
+
+    /**
+     * Acquires a cleared direct buffer with at least the given capacity from the shared arena.
+     * May be called by any thread. The buffer must be handed back with {@link #release} once it is no longer used.
+     *
+     * @param size minimum capacity
+     * @return buffer whose capacity is the size class serving the size
+     */
+    public ByteBuffer acquire(int size) {
+        int index = sizeClass(size);
+        if (index < 0) return allocateUnpooled(size);
+        var buffer = allocate(index);
+        acquired(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Releases a buffer acquired from this pool or any of its caches to the shared arena.
+     * May be called by any thread.
+     *
+     * @param buffer buffer that is no longer used
+     */
+    public void release(ByteBuffer buffer) {
+        released(buffer.capacity());
+        int index = sizeClassOf(buffer);
+        if (index >= 0) free(index, buffer);
+    }
+
+    /**
+     * Returns the capacity of the largest size class. Larger buffers are not pooled.
+     *
+     * @return capacity in bytes
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of requests served by loop caches.
+     *
+     * @return number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns the number of requests served by the shared arena.
+     *
+     * @return number of arena hits
+     */
+    public long getArenaHits() {
+        return arenaHits.sum();
+    }
+
+    /**
+     * Returns the number of requests that needed a new buffer.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the capacity of all buffers handed out and not released yet.
+     *
+     * @return outstanding bytes
+     */
+    public long getBytesOutstanding() {
+        return bytesOutstanding.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{cacheHits=" + getCacheHits()
+                + ", arenaHits=" + getArenaHits()
+                + ", misses=" + getMisses()
+                + ", bytesOutstanding=" + getBytesOutstanding() + "}";
+    }
+
+    /**
+     * Returns the size class serving buffers of the given size.
+     *
+     * @param size requested capacity, sizes up to the smallest class, including {@code 0}, are served by it
+     * @return index of the size class, {@code -1} if the size exceeds the largest class
+     */
+    int sizeClass(int size) {
+        if (size > maxSize) return -1;
+        return Math.max(shift(Math.max(size, 1)) - minShift, 0);
+    }
+
+    /**
+     * Returns the size class of a buffer handed out by the pool.
+     *
+     * @param buffer released buffer
+     * @return index of the size class, {@code -1} if the buffer does not belong to any class
+     */
+    int sizeClassOf(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || Integer.bitCount(capacity) != 1) return -1;
+        int index = sizeClass(capacity);
+        return index >= 0 && classSize(index) == capacity ? index : -1;
+    }
+
+    /**
+     * Returns the capacity of buffers of the size class.
+     *
+     * @param index index of the size class
+     * @return capacity in bytes
+     */
+    int classSize(int index) {
+        return 1 << (index + minShift);
+    }
+
+    /**
+     * Takes a free buffer of the size class from the arena or allocates a new one.
+     *
+     * @param index index of the size class
+     * @return cleared buffer
+     */
+    ByteBuffer allocate(int index) {
+        ByteBuffer buffer;
+        var free = arena[index];
+        synchronized (free) {
+            buffer = free.poll();
+        }
+        if (buffer != null) {
+            arenaHits.increment();
+        } else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(classSize(index));
+        }
+        return buffer;
+    }
+
+    /**
+     * Allocates a buffer larger than the largest size class. It is not returned to the pool on release.
+     *
+     * @param size requested capacity
+     * @return new buffer
+     */
+    ByteBuffer allocateUnpooled(int size) {
+        misses.increment();
+        acquired(size);
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Returns a buffer of the size class to the arena unless the arena is full.
+     *
+     * @param index  index of the size class
+     * @param buffer released buffer
+     */
+    void free(int index, ByteBuffer buffer) {
+        var free = arena[index];
+        synchronized (free) {
+            if (free.size() < arenaLimits[index]) free.push(buffer.clear());
+        }
+    }
+
+    /**
+     * Counts a request served by a loop cache.
+     */
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Counts a buffer handed out.
+     *
+     * @param capacity capacity of the buffer
+     */
+    void acquired(int capacity) {
+        bytesOutstanding.add(capacity);
+    }
+
+    /**
+     * Counts a buffer released.
+     *
+     * @param capacity capacity of the buffer
+     */
+    void released(int capacity) {
+        bytesOutstanding.add(-capacity);
+    }
+
+    /**
+     * Rounds the size up to a power of two and returns its binary logarithm.
+     *
+     * @param size positive size
+     * @return binary logarithm of the rounded size
+     */
+    private static int shift(int size) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Computes how many buffers of a size class fit into a byte budget.
+     *
+     * @param bytes     byte budget
+     * @param classSize capacity of buffers of the class
+     * @param max       maximum number of buffers
+     * @return number of buffers, at least one
+     */
+    private static int limit(int bytes, int classSize, int max) {
+        return Math.clamp(bytes / classSize, 1, max);
+    }
+}
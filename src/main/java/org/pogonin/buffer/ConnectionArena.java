@@ -0,0 +1,78 @@
+package org.pogonin.buffer;
+
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Allocator backed by a confined FFM {@link Arena} owned by a single connection.
+ * <p>
+ * Read and write buffers of the connection are segments of the arena viewed as {@link ByteBuffer}s.
+ * Released buffers are kept per capacity and reused by the same connection, so the arena only grows
+ * with the peak memory of the connection. Closing the arena when the connection is closed frees all
+ * of its native memory at once, without waiting for the garbage collector to clean up direct buffers.
+ * </p>
+ * <p>
+ * The arena is confined to the thread that created the allocator, which must be the event loop
+ * serving the connection.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class ConnectionArena implements BufferAllocator {
+    /**
+     * Alignment of the segments, one cache line.
+     */
+    private static final long ALIGNMENT = 64;
+
+    /**
+     * Smallest capacity handed out.
+     */
+    private static final int MIN_SIZE = 64;
+
+    /**
+     * Arena owning the native memory of the connection.
+     */
+    private final Arena arena = Arena.ofConfined();
+
+    /**
+     * Released buffers by capacity.
+     */
+    private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+
+    /**
+     * Acquires a buffer of the next power-of-two capacity, reusing a released one if possible.
+     *
+     * @param size minimum capacity
+     * @return cleared buffer
+     */
+    @Override
+    public ByteBuffer acquire(int size) {
+        int capacity = size <= MIN_SIZE ? MIN_SIZE : size > 1 << 30 ? size : Integer.highestOneBit(size - 1) << 1;
+        var buffers = free.get(capacity);
+        var buffer = buffers == null ? null : buffers.poll();
+        if (buffer != null) return buffer;
+        return arena.allocate(capacity, ALIGNMENT).asByteBuffer();
+    }
+
+    /**
+     * Keeps the buffer for reuse by the connection.
+     *
+     * @param buffer buffer that is no longer used
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+        free.computeIfAbsent(buffer.capacity(), capacity -> new ArrayDeque<>()).push(buffer.clear());
+    }
+
+    /**
+     * Closes the arena, freeing all memory of the connection.
+     */
+    @Override
+    public void close() {
+        free.clear();
+        arena.close();
+    }
+}
@@ -0,0 +1,82 @@
+package org.pogonin.buffer;
+
+/**
+ * Predicts the capacity of the next receive buffer of a connection from the size of its recent read bursts.
+ * <p>
+ * Predictions are powers of two between the configured minimum and maximum. A burst that fills the predicted
+ * buffer grows the prediction at once to fit twice the burst, so bulk clients get large reads after a single
+ * full one. The prediction is halved only after two bursts in a row used at most half of it, so chatty clients
+ * with small messages settle on small buffers without oscillating.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class ReceiveSizePredictor {
+    /**
+     * Smallest predicted capacity.
+     */
+    private final int minSize;
+
+    /**
+     * Largest predicted capacity.
+     */
+    private final int maxSize;
+
+    /**
+     * Capacity predicted for the next read burst.
+     */
+    private int nextSize;
+
+    /**
+     * Whether the previous burst already used at most half of the prediction.
+     */
+    private boolean shrinkPending;
+
+    /**
+     * Creates a predictor.
+     *
+     * @param minSize     smallest predicted capacity
+     * @param initialSize capacity predicted before the first read
+     * @param maxSize     largest predicted capacity
+     */
+    public ReceiveSizePredictor(int minSize, int initialSize, int maxSize) {
+        if (minSize <= 0 || initialSize < minSize || maxSize < initialSize)
+            throw new IllegalArgumentException("invalid receive buffer sizes");
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.nextSize = initialSize;
+    }
+
+    /**
+     * Returns the capacity predicted for the next read burst.
+     *
+     * @return capacity in bytes
+     */
+    public int nextSize() {
+        return nextSize;
+    }
+
+    /**
+     * Updates the prediction with the number of bytes read in a burst.
+     * An empty burst, after a spurious wakeup or with no room left to read into, says nothing about
+     * the client and is ignored.
+     *
+     * @param bytesRead bytes read from the socket before it had no more data
+     */
+    public void record(int bytesRead) {
+        if (bytesRead <= 0) return;
+        if (bytesRead >= nextSize) {
+            nextSize = (int) Math.min(maxSize, Long.highestOneBit(2L * bytesRead - 1) << 1);
+            shrinkPending = false;
+        } else if (bytesRead <= nextSize >> 1) {
+            if (shrinkPending) {
+                nextSize = Math.max(minSize, nextSize >> 1);
+                shrinkPending = false;
+            } else {
+                shrinkPending = true;
+            }
+        } else {
+            shrinkPending = false;
+        }
+    }
+}
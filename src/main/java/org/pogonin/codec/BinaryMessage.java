@@ -0,0 +1,320 @@
+package org.pogonin.codec;
+
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable flyweight reading the typed fields of a binary message in place.
+ * <p>
+ * A message is a sequence of fields, each one a {@link Varint} key holding the field number and the wire type,
+ * followed by its value; the layout is the subset of the protobuf wire format without groups.
+ * The flyweight doesn't copy anything: {@link #wrap} points it at the payload and {@link #nextField} decodes
+ * the next field straight from the buffer. It is only valid as long as the wrapped bytes are, which for
+ * a {@link org.pogonin.handler.BinaryMessageHandler} is the duration of the callback.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BinaryMessage {
+    /**
+     * Wire type of a {@link Varint} value.
+     */
+    public static final int VARINT = 0;
+
+    /**
+     * Wire type of an eight-byte little-endian value.
+     */
+    public static final int FIXED64 = 1;
+
+    /**
+     * Wire type of a {@link Varint} length followed by that many bytes.
+     */
+    public static final int BYTES = 2;
+
+    /**
+     * Wire type of a four-byte little-endian value.
+     */
+    public static final int FIXED32 = 5;
+
+    /**
+     * Buffer holding the message.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Index of the first byte of the message.
+     */
+    private int start;
+
+    /**
+     * Index behind the last byte of the message.
+     */
+    private int end;
+
+    /**
+     * Index of the key of the next field.
+     */
+    private int cursor;
+
+    /**
+     * Number of the current field.
+     */
+    private int fieldNumber;
+
+    /**
+     * Wire type of the current field.
+     */
+    private int wireType;
+
+    /**
+     * Value of the current numeric field, or length of the current {@link #BYTES} field.
+     */
+    private long value;
+
+    /**
+     * Index of the first byte of the current {@link #BYTES} field.
+     */
+    private int bytesOffset;
+
+    /**
+     * Points the flyweight at a message and moves it before the first field.
+     *
+     * @param payload message between the position and the limit of the buffer; the buffer is neither copied
+     *                nor modified
+     * @return this flyweight
+     */
+    public BinaryMessage wrap(ByteBuffer payload) {
+        this.buffer = payload;
+        this.start = payload.position();
+        this.end = payload.limit();
+        rewind();
+        return this;
+    }
+
+    /**
+     * Moves the flyweight before the first field again.
+     */
+    public void rewind() {
+        cursor = start;
+        fieldNumber = 0;
+        wireType = 0;
+        value = 0;
+        bytesOffset = 0;
+    }
+
+    /**
+     * Returns the length of the message.
+     *
+     * @return length in bytes
+     */
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Decodes the next field.
+     *
+     * @return {@code true} if there is one, {@code false} at the end of the message
+     * @throws CorruptedFrameException if the field is malformed or exceeds the message
+     */
+    public boolean nextField() {
+        if (cursor == end) return false;
+        long key = readVarint();
+        fieldNumber = (int) (key >>> 3);
+        wireType = (int) key & 7;
+        if (fieldNumber == 0) throw new CorruptedFrameException("invalid field number 0");
+        switch (wireType) {
+            case VARINT -> value = readVarint();
+            case FIXED64 -> {
+                long bits = buffer.getLong(claim(Long.BYTES));
+                value = buffer.order() == ByteOrder.LITTLE_ENDIAN ? bits : Long.reverseBytes(bits);
+            }
+            case FIXED32 -> {
+                int bits = buffer.getInt(claim(Integer.BYTES));
+                value = (buffer.order() == ByteOrder.LITTLE_ENDIAN ? bits : Integer.reverseBytes(bits)) & 0xFFFFFFFFL;
+            }
+            case BYTES -> {
+                value = readVarint();
+                if (Long.compareUnsigned(value, end - cursor) > 0)
+                    throw new CorruptedFrameException("field " + fieldNumber + " exceeds the message");
+                bytesOffset = claim((int) value);
+            }
+            default -> throw new CorruptedFrameException("unsupported wire type " + wireType);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the current field.
+     *
+     * @return field number
+     */
+    public int fieldNumber() {
+        return fieldNumber;
+    }
+
+    /**
+     * Returns the wire type of the current field.
+     *
+     * @return {@link #VARINT}, {@link #FIXED64}, {@link #BYTES} or {@link #FIXED32}
+     */
+    public int wireType() {
+        return wireType;
+    }
+
+    /**
+     * Returns the value of the current numeric field; {@link #FIXED32} values are unsigned.
+     *
+     * @return value
+     */
+    public long longValue() {
+        requireNumeric();
+        return value;
+    }
+
+    /**
+     * Returns the value of the current numeric field truncated to an {@code int}.
+     *
+     * @return value
+     */
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    /**
+     * Returns the value of the current {@link #VARINT} field written with {@link Varint#zigZag}.
+     *
+     * @return signed value
+     */
+    public long signedValue() {
+        return Varint.unZigZag(longValue());
+    }
+
+    /**
+     * Returns the value of the current {@link #FIXED64} field as a {@code double}.
+     *
+     * @return value
+     */
+    public double doubleValue() {
+        requireType(FIXED64);
+        return Double.longBitsToDouble(value);
+    }
+
+    /**
+     * Returns the value of the current {@link #FIXED32} field as a {@code float}.
+     *
+     * @return value
+     */
+    public float floatValue() {
+        requireType(FIXED32);
+        return Float.intBitsToFloat((int) value);
+    }
+
+    /**
+     * Returns the length of the current {@link #BYTES} field.
+     *
+     * @return length in bytes
+     */
+    public int bytesLength() {
+        requireType(BYTES);
+        return (int) value;
+    }
+
+    /**
+     * Returns the byte of the current {@link #BYTES} field at the given index.
+     *
+     * @param index index within the field
+     * @return byte
+     */
+    public byte byteAt(int index) {
+        if (index < 0 || index >= bytesLength()) throw new IndexOutOfBoundsException(index);
+        return buffer.get(bytesOffset + index);
+    }
+
+    /**
+     * Copies the current {@link #BYTES} field.
+     *
+     * @param dst    destination array
+     * @param offset index of the first byte written in the destination
+     * @return number of bytes copied
+     */
+    public int getBytes(byte[] dst, int offset) {
+        int length = bytesLength();
+        buffer.get(bytesOffset, dst, offset, length);
+        return length;
+    }
+
+    /**
+     * Compares the current {@link #BYTES} field with the given bytes without copying it.
+     *
+     * @param expected bytes to compare with
+     * @return {@code true} if they are equal
+     */
+    public boolean bytesEqual(byte[] expected) {
+        int length = bytesLength();
+        if (length != expected.length) return false;
+        for (int i = 0; i < length; i++)
+            if (buffer.get(bytesOffset + i) != expected[i]) return false;
+        return true;
+    }
+
+    /**
+     * Decodes the current {@link #BYTES} field as UTF-8. Unlike the other accessors this allocates.
+     *
+     * @return decoded string
+     */
+    public String stringValue() {
+        var bytes = new byte[bytesLength()];
+        getBytes(bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a {@link Varint} at the cursor and moves the cursor behind it.
+     *
+     * @return value
+     */
+    private long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (cursor == end) throw new CorruptedFrameException("truncated varint");
+            byte b = buffer.get(cursor++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return result;
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+
+    /**
+     * Moves the cursor behind a value of the given length.
+     *
+     * @param length length of the value
+     * @return index of the value
+     */
+    private int claim(int length) {
+        if (length < 0 || end - cursor < length) throw new CorruptedFrameException("field " + fieldNumber + " exceeds the message");
+        int index = cursor;
+        cursor += length;
+        return index;
+    }
+
+    /**
+     * Checks that the current field is numeric.
+     */
+    private void requireNumeric() {
+        if (wireType == BYTES || fieldNumber == 0) throw new IllegalStateException("field " + fieldNumber + " is not numeric");
+    }
+
+    /**
+     * Checks the wire type of the current field.
+     *
+     * @param expected expected wire type
+     */
+    private void requireType(int expected) {
+        if (wireType != expected || fieldNumber == 0)
+            throw new IllegalStateException("field " + fieldNumber + " has wire type " + wireType + ", not " + expected);
+    }
+}
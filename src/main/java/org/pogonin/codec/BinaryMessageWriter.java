@@ -0,0 +1,139 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable flyweight writing the typed fields read by {@link BinaryMessage} into a buffer.
+ * <p>
+ * Every method writes one field at the position of the wrapped buffer, which must have room for it.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BinaryMessageWriter {
+    /**
+     * Buffer the fields are written to.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Points the writer at a buffer.
+     *
+     * @param out buffer the fields are written to, starting at its position
+     * @return this writer
+     */
+    public BinaryMessageWriter wrap(ByteBuffer out) {
+        this.buffer = out;
+        return this;
+    }
+
+    /**
+     * Writes a {@link BinaryMessage#VARINT} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       value, treated as unsigned
+     * @return this writer
+     */
+    public BinaryMessageWriter writeVarint(int fieldNumber, long value) {
+        writeKey(fieldNumber, BinaryMessage.VARINT);
+        Varint.write(buffer, value);
+        return this;
+    }
+
+    /**
+     * Writes a {@link BinaryMessage#VARINT} field with a {@link Varint#zigZag} value, short for small negatives.
+     *
+     * @param fieldNumber positive field number
+     * @param value       signed value
+     * @return this writer
+     */
+    public BinaryMessageWriter writeSigned(int fieldNumber, long value) {
+        return writeVarint(fieldNumber, Varint.zigZag(value));
+    }
+
+    /**
+     * Writes a {@link BinaryMessage#FIXED64} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       value
+     * @return this writer
+     */
+    public BinaryMessageWriter writeFixed64(int fieldNumber, long value) {
+        writeKey(fieldNumber, BinaryMessage.FIXED64);
+        buffer.putLong(buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+        return this;
+    }
+
+    /**
+     * Writes a {@code double} as a {@link BinaryMessage#FIXED64} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       value
+     * @return this writer
+     */
+    public BinaryMessageWriter writeDouble(int fieldNumber, double value) {
+        return writeFixed64(fieldNumber, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes a {@link BinaryMessage#FIXED32} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       value
+     * @return this writer
+     */
+    public BinaryMessageWriter writeFixed32(int fieldNumber, int value) {
+        writeKey(fieldNumber, BinaryMessage.FIXED32);
+        buffer.putInt(buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value));
+        return this;
+    }
+
+    /**
+     * Writes a {@code float} as a {@link BinaryMessage#FIXED32} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       value
+     * @return this writer
+     */
+    public BinaryMessageWriter writeFloat(int fieldNumber, float value) {
+        return writeFixed32(fieldNumber, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Writes a {@link BinaryMessage#BYTES} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       bytes of the field
+     * @return this writer
+     */
+    public BinaryMessageWriter writeBytes(int fieldNumber, byte[] value) {
+        writeKey(fieldNumber, BinaryMessage.BYTES);
+        Varint.write(buffer, value.length);
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Writes a string encoded as UTF-8 as a {@link BinaryMessage#BYTES} field.
+     *
+     * @param fieldNumber positive field number
+     * @param value       string
+     * @return this writer
+     */
+    public BinaryMessageWriter writeString(int fieldNumber, String value) {
+        return writeBytes(fieldNumber, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the key of a field.
+     *
+     * @param fieldNumber positive field number
+     * @param wireType    wire type of the field
+     */
+    private void writeKey(int fieldNumber, int wireType) {
+        if (fieldNumber <= 0 || fieldNumber > 0x1FFFFFFF) throw new IllegalArgumentException("invalid field number: " + fieldNumber);
+        Varint.write(buffer, (long) fieldNumber << 3 | wireType);
+    }
+}
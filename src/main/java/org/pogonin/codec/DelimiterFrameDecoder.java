@@ -0,0 +1,150 @@
+package org.pogonin.codec;
+
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes frames terminated by one of a set of delimiter bytes, such as newline-delimited text.
+ * <p>
+ * The accumulated bytes are searched 8 at a time: every {@code long} read from the buffer is compared with all
+ * delimiters at once using SWAR (SIMD within a register) arithmetic, and only the tail shorter than a word
+ * is scanned byte by byte. The decoder remembers how far it already scanned an incomplete frame, so bytes
+ * of a long line arriving in many reads are only scanned once.
+ * The returned payload excludes the delimiter, and with {@link #lines} also a carriage return in front of it.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class DelimiterFrameDecoder implements FrameDecoder {
+    /**
+     * Every byte of a word with its high bit cleared.
+     */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * Maximum accepted payload length.
+     */
+    private final int maxFrameLength;
+
+    /**
+     * Every delimiter repeated in all bytes of a word.
+     */
+    private final long[] patterns;
+
+    /**
+     * Whether a byte is a delimiter, indexed by its unsigned value.
+     */
+    private final boolean[] delimiters = new boolean[256];
+
+    /**
+     * Whether a carriage return in front of the delimiter is stripped from the payload.
+     */
+    private final boolean stripCarriageReturn;
+
+    /**
+     * Number of bytes of the incomplete frame at the position of the buffer already scanned without finding a delimiter.
+     */
+    private int scanned;
+
+    /**
+     * Creates a decoder for frames terminated by any of the given bytes.
+     *
+     * @param maxFrameLength maximum accepted payload length, frames must also fit the maximum read buffer of the server
+     * @param delimiters     bytes terminating a frame
+     */
+    public DelimiterFrameDecoder(int maxFrameLength, byte... delimiters) {
+        this(maxFrameLength, false, delimiters);
+    }
+
+    /**
+     * Creates a decoder.
+     *
+     * @param maxFrameLength      maximum accepted payload length
+     * @param stripCarriageReturn whether a carriage return in front of the delimiter is stripped from the payload
+     * @param delimiters          bytes terminating a frame
+     */
+    private DelimiterFrameDecoder(int maxFrameLength, boolean stripCarriageReturn, byte... delimiters) {
+        if (maxFrameLength < 0) throw new IllegalArgumentException("invalid max frame length: " + maxFrameLength);
+        if (delimiters.length == 0) throw new IllegalArgumentException("no delimiters");
+        this.maxFrameLength = maxFrameLength;
+        this.stripCarriageReturn = stripCarriageReturn;
+        this.patterns = new long[delimiters.length];
+        for (int i = 0; i < delimiters.length; i++) {
+            patterns[i] = (delimiters[i] & 0xFFL) * 0x0101010101010101L;
+            this.delimiters[delimiters[i] & 0xFF] = true;
+        }
+    }
+
+    /**
+     * Creates a decoder of lines terminated by {@code \n} or {@code \r\n}.
+     *
+     * @param maxLineLength maximum accepted line length without the line terminator
+     * @return new decoder
+     */
+    public static DelimiterFrameDecoder lines(int maxLineLength) {
+        return new DelimiterFrameDecoder(maxLineLength, true, (byte) '\n');
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        int start = in.position();
+        int end = indexOf(in, start + scanned, in.limit());
+        if (end < 0) {
+            scanned = in.limit() - start;
+            if (scanned > maxFrameLength + (stripCarriageReturn ? 1 : 0))
+                throw new CorruptedFrameException("no delimiter within " + maxFrameLength + " bytes");
+            return null;
+        }
+        scanned = 0;
+        int length = end - start;
+        if (stripCarriageReturn && length > 0 && in.get(end - 1) == '\r') length--;
+        if (length > maxFrameLength)
+            throw new CorruptedFrameException("frame length " + length + " exceeds " + maxFrameLength);
+        var payload = in.slice(start, length);
+        in.position(end + 1);
+        return payload;
+    }
+
+    @Override
+    public long maxFrameSize() {
+        return maxFrameLength + (stripCarriageReturn ? 2L : 1L);
+    }
+
+    /**
+     * Finds the first delimiter in a range of the buffer.
+     *
+     * @param in   buffer to search
+     * @param from index of the first byte to search
+     * @param to   index past the last byte to search
+     * @return index of the first delimiter, {@code -1} if there is none
+     */
+    int indexOf(ByteBuffer in, int from, int to) {
+        boolean bigEndian = in.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            long word = in.getLong(i);
+            long found = 0;
+            for (long pattern : patterns)
+                found |= zeroBytes(word ^ pattern);
+            if (found != 0)
+                return i + ((bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found)) >>> 3);
+        }
+        for (; i < to; i++)
+            if (delimiters[in.get(i) & 0xFF]) return i;
+        return -1;
+    }
+
+    /**
+     * Marks the zero bytes of a word. Unlike the shorter {@code (x - 0x01..) & ~x & 0x80..}, it never marks
+     * a byte that isn't zero, so the first mark is exact in either byte order.
+     *
+     * @param word word to test
+     * @return word with the high bit set in every byte that is zero in {@code word} and all other bits cleared
+     */
+    private static long zeroBytes(long word) {
+        long low = (word & LOW_BITS) + LOW_BITS;
+        return ~(low | word | LOW_BITS);
+    }
+}
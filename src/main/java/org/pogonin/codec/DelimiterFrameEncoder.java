@@ -0,0 +1,52 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames payloads by writing a delimiter behind them, as read by {@link DelimiterFrameDecoder}.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class DelimiterFrameEncoder implements FrameEncoder {
+    /**
+     * Byte written behind every payload.
+     */
+    private final byte delimiter;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param delimiter byte written behind every payload
+     */
+    public DelimiterFrameEncoder(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Creates an encoder terminating every payload with {@code \n}.
+     *
+     * @return new encoder
+     */
+    public static DelimiterFrameEncoder lines() {
+        return new DelimiterFrameEncoder((byte) '\n');
+    }
+
+    @Override
+    public int headerLength(int payloadLength) {
+        return 0;
+    }
+
+    @Override
+    public void writeHeader(int payloadLength, ByteBuffer out) {
+    }
+
+    @Override
+    public int trailerLength(int payloadLength) {
+        return 1;
+    }
+
+    @Override
+    public void writeTrailer(int payloadLength, ByteBuffer out) {
+        out.put(delimiter);
+    }
+}
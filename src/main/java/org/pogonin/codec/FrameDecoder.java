@@ -0,0 +1,47 @@
+package org.pogonin.codec;
+
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream received from a client into frames, one per application message.
+ * <p>
+ * The event loop calls the decoder with the bytes accumulated for the connection, again and again while it
+ * returns frames, so a read holding many frames yields all of them. Bytes of an incomplete frame stay in the
+ * inbound buffer of the connection and are handed over again, followed by the next read, so frames split
+ * across reads are decoded once complete. Every connection gets its own decoder instance,
+ * which may therefore keep state between calls, and is only called by the event loop of the connection.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public interface FrameDecoder {
+    /**
+     * Decodes the next frame at the position of the buffer.
+     * <p>
+     * If a complete frame is found, the position is moved past it and its payload is returned. Otherwise
+     * the position is left unchanged, so the decoder is called again from the same position after the next
+     * read. A returned payload may be handed over again for decoding from its start if the handler didn't
+     * take it, so the decoder must be able to decode the same frame twice.
+     * </p>
+     *
+     * @param in accumulated bytes between the position and the limit of the buffer
+     * @return view of the payload of the frame between its position and limit, only valid until the bytes are
+     * handed to the decoder again; decoders may return the same reusable view every time.
+     * {@code null} if no complete frame is available yet
+     * @throws CorruptedFrameException if the bytes can't be a valid frame
+     */
+    ByteBuffer decode(ByteBuffer in);
+
+    /**
+     * Returns the largest number of bytes a frame may take in the stream, its header or delimiter included.
+     * A frame is only decoded once it is in the inbound buffer of the connection as a whole, so the server
+     * refuses a decoder whose frames may be larger than {@link org.pogonin.config.ServerConfig#getMaxReadBufferSize()}.
+     *
+     * @return maximum frame size in bytes, {@code -1} if the decoder doesn't limit it
+     */
+    default long maxFrameSize() {
+        return -1;
+    }
+}
@@ -0,0 +1,51 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames the payloads sent to clients so their decoder can split the stream again.
+ * <p>
+ * The encoder only writes the bytes in front of and behind a payload. The payload itself is never copied
+ * by the encoder: it is queued as is, or copied once together with the header and trailer into a pooled
+ * buffer, as the event loop sees fit. One encoder instance is shared by all connections of a server,
+ * so it must be stateless. It is called on the event loops and must not throw.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public interface FrameEncoder {
+    /**
+     * Returns the number of bytes written in front of a payload.
+     *
+     * @param payloadLength length of the payload
+     * @return length of the header
+     */
+    int headerLength(int payloadLength);
+
+    /**
+     * Writes the header of a payload.
+     *
+     * @param payloadLength length of the payload
+     * @param out           buffer with room for {@link #headerLength} bytes at its position
+     */
+    void writeHeader(int payloadLength, ByteBuffer out);
+
+    /**
+     * Returns the number of bytes written behind a payload. Frames have no trailer by default.
+     *
+     * @param payloadLength length of the payload
+     * @return length of the trailer
+     */
+    default int trailerLength(int payloadLength) {
+        return 0;
+    }
+
+    /**
+     * Writes the trailer of a payload. Does nothing by default.
+     *
+     * @param payloadLength length of the payload
+     * @param out           buffer with room for {@link #trailerLength} bytes at its position
+     */
+    default void writeTrailer(int payloadLength, ByteBuffer out) {
+    }
+}
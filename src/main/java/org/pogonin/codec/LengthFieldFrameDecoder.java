@@ -0,0 +1,55 @@
+package org.pogonin.codec;
+
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames made of a 4-byte big-endian payload length followed by the payload.
+ * <p>
+ * The decoder is stateless: the length is read again from the accumulated bytes on every call.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class LengthFieldFrameDecoder implements FrameDecoder {
+    /**
+     * Length of the length field in bytes.
+     */
+    public static final int LENGTH_FIELD_SIZE = 4;
+
+    /**
+     * Maximum accepted payload length.
+     */
+    private final int maxFrameLength;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param maxFrameLength maximum accepted payload length, frames must also fit the maximum read buffer
+     *                       of the server together with their length field
+     */
+    public LengthFieldFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength < 0) throw new IllegalArgumentException("invalid max frame length: " + maxFrameLength);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        int start = in.position();
+        if (in.limit() - start < LENGTH_FIELD_SIZE) return null;
+        int length = in.getInt(start);
+        if (length < 0 || length > maxFrameLength)
+            throw new CorruptedFrameException("frame length " + Integer.toUnsignedString(length)
+                    + " exceeds " + maxFrameLength);
+        if (in.limit() - start - LENGTH_FIELD_SIZE < length) return null;
+        var payload = in.slice(start + LENGTH_FIELD_SIZE, length);
+        in.position(start + LENGTH_FIELD_SIZE + length);
+        return payload;
+    }
+
+    @Override
+    public long maxFrameSize() {
+        return LENGTH_FIELD_SIZE + (long) maxFrameLength;
+    }
+}
@@ -0,0 +1,20 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames payloads with a 4-byte big-endian length in front of them, as read by {@link LengthFieldFrameDecoder}.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class LengthFieldFrameEncoder implements FrameEncoder {
+    @Override
+    public int headerLength(int payloadLength) {
+        return LengthFieldFrameDecoder.LENGTH_FIELD_SIZE;
+    }
+
+    @Override
+    public void writeHeader(int payloadLength, ByteBuffer out) {
+        out.putInt(payloadLength);
+    }
+}
@@ -0,0 +1,63 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned LEB128 variable-length integers as used by protobuf: 7 bits per byte, least significant group first,
+ * the high bit of every byte but the last set.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class Varint {
+    /**
+     * Maximum number of bytes of an encoded {@code long}.
+     */
+    public static final int MAX_LONG_SIZE = 10;
+
+    private Varint() {
+    }
+
+    /**
+     * Returns the number of bytes of an encoded value.
+     *
+     * @param value value, treated as unsigned
+     * @return encoded size, 1 to {@value #MAX_LONG_SIZE}
+     */
+    public static int size(long value) {
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    /**
+     * Writes an encoded value at the position of the buffer.
+     *
+     * @param out   buffer with room for {@link #size} bytes
+     * @param value value, treated as unsigned
+     */
+    public static void write(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Maps a signed value to an unsigned one with a short encoding for small magnitudes.
+     *
+     * @param value signed value
+     * @return zigzag-encoded value
+     */
+    public static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    /**
+     * Reverses {@link #zigZag}.
+     *
+     * @param value zigzag-encoded value
+     * @return signed value
+     */
+    public static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,80 @@
+package org.pogonin.codec;
+
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames made of a {@link Varint} payload length followed by the payload.
+ * <p>
+ * The payload is returned as a reusable view of the inbound buffer of the connection, delimited by its position
+ * and limit, so no object is allocated per frame; the view is only replaced when the connection switches to
+ * another inbound buffer. Combined with a {@link org.pogonin.handler.BinaryMessageHandler}, messages are read
+ * in place from the bytes the socket delivered.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class VarintFrameDecoder implements FrameDecoder {
+    /**
+     * Maximum number of bytes of the length field, enough for any {@code int}.
+     */
+    private static final int MAX_LENGTH_FIELD_SIZE = 5;
+
+    /**
+     * Maximum accepted payload length.
+     */
+    private final int maxFrameLength;
+
+    /**
+     * Buffer the {@link #view} was created from.
+     */
+    private ByteBuffer source;
+
+    /**
+     * Reusable view of {@link #source} returned for every frame.
+     */
+    private ByteBuffer view;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param maxFrameLength maximum accepted payload length, frames must also fit the maximum read buffer
+     *                       of the server together with their length field
+     */
+    public VarintFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength < 0) throw new IllegalArgumentException("invalid max frame length: " + maxFrameLength);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        int start = in.position();
+        int limit = in.limit();
+        long length = 0;
+        int index = start;
+        for (int shift = 0; ; shift += 7) {
+            if (index == limit) return null;
+            if (index - start == MAX_LENGTH_FIELD_SIZE) throw new CorruptedFrameException("malformed frame length");
+            byte b = in.get(index++);
+            length |= (long) (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (length > maxFrameLength) throw new CorruptedFrameException("frame length " + length + " exceeds " + maxFrameLength);
+        int end = index + (int) length;
+        if (end > limit) return null;
+
+        if (in != source) {
+            source = in;
+            view = in.duplicate();
+        }
+        view.limit(end).position(index);
+        in.position(end);
+        return view;
+    }
+
+    @Override
+    public long maxFrameSize() {
+        return Varint.size(maxFrameLength) + (long) maxFrameLength;
+    }
+}
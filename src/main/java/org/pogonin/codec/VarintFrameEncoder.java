@@ -0,0 +1,20 @@
+package org.pogonin.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames payloads with a {@link Varint} length in front of them, as read by {@link VarintFrameDecoder}.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class VarintFrameEncoder implements FrameEncoder {
+    @Override
+    public int headerLength(int payloadLength) {
+        return Varint.size(payloadLength);
+    }
+
+    @Override
+    public void writeHeader(int payloadLength, ByteBuffer out) {
+        Varint.write(out, payloadLength);
+    }
+}
@@ -0,0 +1,18 @@
+package org.pogonin.config;
+
+/**
+ * Strategy used by the acceptor to pick the event loop that will serve a newly accepted connection.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public enum EventLoopChooser {
+    /**
+     * Loops are picked one after another in a fixed cyclic order.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The loop currently serving the fewest connections is picked.
+     */
+    LEAST_CONNECTIONS
+}
@@ -0,0 +1,19 @@
+package org.pogonin.config;
+
+/**
+ * Source of the native memory backing the read and write buffers of connections.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public enum MemoryMode {
+    /**
+     * Direct buffers from the server {@link org.pogonin.buffer.BufferPool}, shared by all connections
+     * through per-loop caches.
+     */
+    POOLED,
+
+    /**
+     * Every connection allocates its buffers from its own FFM arena, freed when the connection is closed.
+     */
+    CONNECTION_ARENA
+}
@@ -0,0 +1,196 @@
+package org.pogonin.config;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.pogonin.codec.FrameDecoder;
+import org.pogonin.codec.FrameEncoder;
+import org.pogonin.queue.BlockingWaitStrategy;
+import org.pogonin.queue.BusySpinWaitStrategy;
+import org.pogonin.queue.SpinParkWaitStrategy;
+import org.pogonin.queue.WaitStrategy;
+
+import java.util.function.Supplier;
+
+/**
+ * Tuning options of a {@link org.pogonin.Server}.
+ * <p>
+ * Instances are immutable and created with {@link #builder()}; every option that is not set
+ * explicitly keeps its default value.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Getter
+@Builder
+public final class ServerConfig {
+    /**
+     * Number of worker event loops, each running its own selector in its own thread.
+     * <p>
+     * Defaults to the number of available cores. With {@code 0} the server runs in single-selector mode:
+     * accepting, reading and writing all happen on the thread that called {@code start()}.
+     * </p>
+     */
+    @Builder.Default
+    private final int eventLoops = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Strategy used to pick the event loop for a newly accepted connection.
+     */
+    @Builder.Default
+    private final EventLoopChooser eventLoopChooser = EventLoopChooser.ROUND_ROBIN;
+
+    /**
+     * Whether every worker loop listens on its own server channel bound with {@code SO_REUSEPORT}.
+     * <p>
+     * The kernel then balances incoming connections across the loops and no acceptor thread is involved.
+     * Ignored in single-selector mode and on platforms without {@code SO_REUSEPORT}.
+     * </p>
+     */
+    @Builder.Default
+    private final boolean reusePort = false;
+
+    /**
+     * Smallest capacity the receive buffer of a connection is shrunk to by its size predictor.
+     */
+    @Builder.Default
+    private final int minReadBufferSize = 64;
+
+    /**
+     * Capacity of the receive buffer of a connection before its first read.
+     * Afterward the capacity follows the size of recent read bursts of the connection.
+     */
+    @Builder.Default
+    private final int readBufferSize = 1024;
+
+    /**
+     * Largest capacity of the receive buffer of a connection, both as predicted
+     * and while bytes accumulate across reads.
+     */
+    @Builder.Default
+    private final int maxReadBufferSize = 1024 * 1024;
+
+    /**
+     * Source of the memory backing the read and write buffers of connections.
+     */
+    @Builder.Default
+    private final MemoryMode memoryMode = MemoryMode.POOLED;
+
+    /**
+     * Maximum number of bytes that may wait in the outbound queue of a single connection.
+     * A client that lets its queue grow beyond the limit is disconnected.
+     */
+    @Builder.Default
+    private final long maxOutboundBytes = 64L * 1024 * 1024;
+
+    /**
+     * Number of bytes waiting in the outbound queue of a connection above which the connection
+     * is reported as not writable.
+     */
+    @Builder.Default
+    private final long outboundHighWaterMark = 64 * 1024;
+
+    /**
+     * Number of bytes waiting in the outbound queue of a connection at or below which a connection
+     * reported as not writable becomes writable again.
+     */
+    @Builder.Default
+    private final long outboundLowWaterMark = 32 * 1024;
+
+    /**
+     * Number of worker threads running the callbacks of the server handler.
+     * <p>
+     * With {@code 0}, the default, callbacks run directly on the event loop serving the client.
+     * Otherwise every connection gets a serial queue of callbacks executed by a pool of this many threads:
+     * the callbacks of one client still run one at a time and in order, but a slow callback only delays
+     * its own client, not the reads of the other clients of the loop.
+     * </p>
+     */
+    @Builder.Default
+    private final int handlerThreads = 0;
+
+    /**
+     * Maximum number of callbacks waiting in the handler queue of a connection when {@link #handlerThreads}
+     * is positive. A client whose queue is full is no longer read from until the workers caught up.
+     */
+    @Builder.Default
+    private final int handlerQueueDepth = 1024;
+
+    /**
+     * Factory of the decoder splitting the bytes received from a client into frames, called once per connection.
+     * <p>
+     * With a decoder, the handler gets every complete frame in its own {@code onMessage} call, however the bytes
+     * were split into reads. Without one, the default, it gets whatever bytes were read.
+     * </p>
+     */
+    private final Supplier<FrameDecoder> frameDecoder;
+
+    /**
+     * Encoder framing every payload sent to clients, {@code null} to send payloads as they are.
+     */
+    private final FrameEncoder frameEncoder;
+
+    /**
+     * Maximum number of queued buffers handed to the socket in one gathering write.
+     */
+    @Builder.Default
+    private final int maxGatheringBuffers = 64;
+
+    /**
+     * Maximum number of bytes handed to the socket in one gathering write.
+     * A single buffer larger than the limit is still written on its own.
+     */
+    @Builder.Default
+    private final long maxGatheringBytes = 256 * 1024;
+
+    /**
+     * Capacity of the queue through which {@code send()} hands messages over to an event loop,
+     * rounded up to a power of two. A send to a loop whose queue is full is rejected.
+     */
+    @Builder.Default
+    private final int outboundQueueCapacity = 16 * 1024;
+
+    /**
+     * Number of preallocated slots of the ring holding messages received from clients,
+     * rounded up to a power of two.
+     */
+    @Builder.Default
+    private final int inboundQueueCapacity = 1024;
+
+    /**
+     * Initial capacity of the data array of every inbound slot. Slots grow for larger messages.
+     */
+    @Builder.Default
+    private final int inboundSlotSize = 1024;
+
+    /**
+     * Number of messages in the inbound ring at which event loops stop reading from their heaviest connections.
+     * Capped by the capacity of the ring.
+     */
+    @Builder.Default
+    private final int inboundHighWaterMark = 768;
+
+    /**
+     * Number of messages in the inbound ring at or below which paused connections are read from again.
+     */
+    @Builder.Default
+    private final int inboundLowWaterMark = 256;
+
+    /**
+     * Strategy used by {@code Server.awaitEvents()} to wait for new entries in the event queues and the inbound ring.
+     * <p>
+     * Defaults to spinning briefly, then parking with exponential backoff up to 1 ms. Latency-critical deployments
+     * with a core to spare can use {@link BusySpinWaitStrategy}, shared hosts {@link BlockingWaitStrategy}.
+     * </p>
+     */
+    @Builder.Default
+    private final WaitStrategy consumerWaitStrategy = new SpinParkWaitStrategy();
+
+    /**
+     * Creates a configuration with all options set to their defaults.
+     *
+     * @return default configuration
+     */
+    public static ServerConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,18 @@
+package org.pogonin.exception;
+
+/**
+ * Thrown by a frame decoder when the received bytes can't be a valid frame, e.g. a frame longer than allowed.
+ * The connection is closed, since the stream can't be resynchronised.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class CorruptedFrameException extends RuntimeException {
+    /**
+     * Creates an exception.
+     *
+     * @param message what is wrong with the frame
+     */
+    public CorruptedFrameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package org.pogonin.exception;
+
+/**
+ * Thrown by a decoder when the received bytes announce a frame, or a part of one, longer than allowed.
+ * Lets protocols that can answer an oversized request tell it from malformed bytes; the connection is
+ * still closed, since the oversized bytes are never read.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class FrameTooLargeException extends CorruptedFrameException {
+    /**
+     * Creates an exception.
+     *
+     * @param message what is too large
+     */
+    public FrameTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package org.pogonin.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown by the HTTP request parser when a request can't be served; the client gets the status code
+ * of the exception and the connection is closed, since the stream can't be resynchronised.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Getter
+public class HttpException extends RuntimeException {
+    /**
+     * Status code answered to the client.
+     */
+    private final int status;
+
+    /**
+     * Creates an exception.
+     *
+     * @param status  status code answered to the client
+     * @param message what is wrong with the request
+     */
+    public HttpException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,48 @@
+package org.pogonin.handler;
+
+import org.pogonin.codec.BinaryMessage;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Handler of a binary protocol whose frames carry {@link BinaryMessage} fields.
+ * <p>
+ * Meant for a server configured with a {@link org.pogonin.codec.VarintFrameDecoder}: every frame is wrapped
+ * by a flyweight reused for all messages of the thread delivering them, which reads the fields straight from
+ * the inbound buffer of the connection. Receiving a message thus allocates nothing, which keeps the garbage
+ * collector out of high-rate ingestion such as telemetry. The flyweight is only valid during
+ * {@link #onBinaryMessage}; the handler must copy whatever it wants to keep.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public abstract class BinaryMessageHandler implements ServerHandler {
+    /**
+     * Flyweight of every thread delivering messages.
+     */
+    private final ThreadLocal<BinaryMessage> flyweights = ThreadLocal.withInitial(BinaryMessage::new);
+
+    /**
+     * Wraps the frame with the flyweight of the current thread and consumes it entirely.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param data         payload of one frame
+     */
+    @Override
+    public final void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+        var message = flyweights.get().wrap(data);
+        data.position(data.limit());
+        onBinaryMessage(connectionId, client, message);
+    }
+
+    /**
+     * Called with every message received from a client.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param message      flyweight positioned before the first field, only valid during the call
+     */
+    protected abstract void onBinaryMessage(long connectionId, SocketAddress client, BinaryMessage message);
+}
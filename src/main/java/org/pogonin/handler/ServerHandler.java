@@ -0,0 +1,87 @@
+package org.pogonin.handler;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Callbacks through which a {@link org.pogonin.Server} reports the events of its clients.
+ * <p>
+ * Every callback is invoked directly on the event loop thread serving the client, so the events
+ * of one client are never reported concurrently and always in order. Callbacks must not block:
+ * while a callback runs, no other client of the same loop is served. Messages may be sent from
+ * a callback with {@code Server.send()}; they are written in the same loop iteration.
+ * Every callback gets the id of the connection, which {@code Server.send(long, byte[])} accepts
+ * without hashing the client address.
+ * </p>
+ * <p>
+ * With {@code ServerConfig.getHandlerThreads()} set, callbacks run on a pool of handler threads instead,
+ * still one at a time and in order for every client, so they may block without stalling other clients.
+ * {@code onMessage} then gets a copy of all bytes read in one go and can't leave bytes for the next call.
+ * </p>
+ * <p>
+ * All methods do nothing by default.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public interface ServerHandler {
+    /**
+     * Called once a client is connected and registered with its event loop.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     */
+    default void onConnect(long connectionId, SocketAddress client) {
+    }
+
+    /**
+     * Called with the bytes received from a client that were not consumed yet.
+     * <p>
+     * The handler consumes bytes by advancing the position of the buffer. Bytes it leaves are kept
+     * and handed over again, followed by the newly read ones, after the next read from the client.
+     * The buffer belongs to the connection and is only valid during the call; the handler must copy
+     * whatever it wants to keep and must not modify its content.
+     * </p>
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param data         received bytes between the position and the limit of the buffer
+     */
+    default void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+    }
+
+    /**
+     * Called once the connection of a client is closed, by either side.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     */
+    default void onDisconnect(long connectionId, SocketAddress client) {
+    }
+
+    /**
+     * Called when the socket of a client accepted every queued byte after it had stopped accepting them,
+     * so more data can be sent to the client without growing its outbound queue.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     */
+    default void onWritable(long connectionId, SocketAddress client) {
+    }
+
+    /**
+     * Called when the outbound queue of a client crossed one of its watermarks.
+     * <p>
+     * A client becomes not writable once more than {@code ServerConfig.getOutboundHighWaterMark()} bytes
+     * wait for its socket, and writable again once at most {@code ServerConfig.getOutboundLowWaterMark()}
+     * bytes are left. Producers should stop sending to a client that is not writable until it becomes
+     * writable again.
+     * </p>
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param writable     new writability of the client
+     */
+    default void onWritabilityChanged(long connectionId, SocketAddress client, boolean writable) {
+    }
+}
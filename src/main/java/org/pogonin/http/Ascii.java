@@ -0,0 +1,118 @@
+package org.pogonin.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Comparisons of ASCII text stored in a buffer, reading it in place without decoding it.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+final class Ascii {
+    private Ascii() {
+    }
+
+    /**
+     * Compares the bytes between two indexes of the buffer with the given bytes.
+     *
+     * @param buffer   buffer holding the text
+     * @param from     index of the first byte
+     * @param to       index behind the last byte
+     * @param expected bytes to compare with
+     * @return {@code true} if they are equal
+     */
+    static boolean equals(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) return false;
+        for (int i = 0; i < expected.length; i++)
+            if (buffer.get(from + i) != expected[i]) return false;
+        return true;
+    }
+
+    /**
+     * Compares the bytes between two indexes of the buffer with lower-case bytes, ignoring the case of the buffer.
+     *
+     * @param buffer   buffer holding the text
+     * @param from     index of the first byte
+     * @param to       index behind the last byte
+     * @param expected lower-case bytes to compare with
+     * @return {@code true} if they are equal ignoring case
+     */
+    static boolean equalsIgnoreCase(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) return false;
+        for (int i = 0; i < expected.length; i++)
+            if (toLowerCase(buffer.get(from + i)) != expected[i]) return false;
+        return true;
+    }
+
+    /**
+     * Checks whether a comma-separated list between two indexes of the buffer contains a token, ignoring case.
+     *
+     * @param buffer buffer holding the list
+     * @param from   index of the first byte
+     * @param to     index behind the last byte
+     * @param token  lower-case token
+     * @return {@code true} if an element of the list is the token
+     */
+    static boolean containsToken(ByteBuffer buffer, int from, int to, byte[] token) {
+        while (from < to) {
+            int comma = indexOf(buffer, from, to, (byte) ',');
+            int end = comma < 0 ? to : comma;
+            int start = from;
+            while (start < end && isWhitespace(buffer.get(start))) start++;
+            int last = end;
+            while (last > start && isWhitespace(buffer.get(last - 1))) last--;
+            if (equalsIgnoreCase(buffer, start, last, token)) return true;
+            from = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first occurrence of a byte between two indexes of the buffer.
+     *
+     * @param buffer buffer to search
+     * @param from   index of the first byte searched
+     * @param to     index behind the last byte searched
+     * @param value  byte to find
+     * @return index of the byte, {@code -1} if it doesn't occur
+     */
+    static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++)
+            if (buffer.get(i) == value) return i;
+        return -1;
+    }
+
+    /**
+     * Checks whether the byte is optional whitespace of HTTP, a space or a horizontal tab.
+     *
+     * @param b byte to check
+     * @return {@code true} for whitespace
+     */
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Decodes the bytes between two indexes of the buffer. Unlike the other methods this allocates.
+     *
+     * @param buffer buffer holding the text
+     * @param from   index of the first byte
+     * @param to     index behind the last byte
+     * @return decoded text
+     */
+    static String string(ByteBuffer buffer, int from, int to) {
+        var bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Converts an ASCII letter to lower case.
+     *
+     * @param b byte to convert
+     * @return lower-case letter, or the byte itself if it isn't an upper-case letter
+     */
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
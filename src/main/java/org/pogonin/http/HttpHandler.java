@@ -0,0 +1,223 @@
+package org.pogonin.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.Server;
+import org.pogonin.exception.HttpException;
+import org.pogonin.handler.ServerHandler;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Handler serving HTTP/1.1 on the event loops of a {@link Server}, with keep-alive and pipelining.
+ * <p>
+ * Every connection gets an {@link HttpRequestParser} attached to it, which parses requests in place from
+ * the inbound buffer. All complete requests of a read are handed to {@link #onRequest} in order, and
+ * the responses written with {@link #respond} are copied straight into the outbound queue of the connection,
+ * so the responses to pipelined requests leave in one gathering write. Responses are precomputed
+ * {@link HttpResponse}s, so serving small requests allocates nothing. A connection that isn't kept alive is
+ * closed once its last response was written; a malformed request is answered with an error and closes it too.
+ * </p>
+ * <p>
+ * The handler relies on callbacks running on the event loops and on the bytes being handed over as they
+ * were read: the server must run without handler threads and without a frame decoder, and a request within
+ * the limits of the handler must fit its maximum read buffer, so it is answered with 413 or 431 when it doesn't.
+ * The constructor checks all of this.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+public abstract class HttpHandler implements ServerHandler {
+    /**
+     * Capacity of the scratch buffer of every thread, enough for the head of any response.
+     */
+    private static final int SCRATCH_SIZE = 4 * 1024;
+
+    /**
+     * Response to requests the handler left unanswered.
+     */
+    private static final HttpResponse NOT_FOUND = HttpResponse.of(404, "Not Found");
+
+    /**
+     * Attachment replacing the parser of a connection that is closed once its responses were written,
+     * so bytes arriving meanwhile are dropped.
+     */
+    private static final Object CLOSED = new Object();
+
+    /**
+     * Server the handler writes its responses to.
+     */
+    private final Server server;
+
+    /**
+     * Maximum length of the request line and the headers of a request.
+     */
+    private final int maxHeaderBytes;
+
+    /**
+     * Maximum length of the body of a request.
+     */
+    private final int maxContentLength;
+
+    /**
+     * Buffer of every thread the heads of responses are encoded into.
+     */
+    private final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCRATCH_SIZE));
+
+    /**
+     * Creates a handler with the default limits of {@link HttpRequestParser}.
+     *
+     * @param server server the handler is set on
+     */
+    protected HttpHandler(Server server) {
+        this(server, HttpRequestParser.DEFAULT_MAX_HEADER_BYTES, HttpRequestParser.DEFAULT_MAX_CONTENT_LENGTH);
+    }
+
+    /**
+     * Creates a handler.
+     *
+     * @param server           server the handler is set on
+     * @param maxHeaderBytes   maximum length of the request line and the headers of a request
+     * @param maxContentLength maximum length of the body of a request
+     * @throws IllegalArgumentException if the server runs handler threads or a frame decoder, or if a request
+     *                                  within the limits may not fit the maximum read buffer of the server
+     */
+    protected HttpHandler(Server server, int maxHeaderBytes, int maxContentLength) {
+        var config = server.getConfig();
+        if (config.getHandlerThreads() > 0)
+            throw new IllegalArgumentException("HTTP needs callbacks on the event loops, but the server runs "
+                    + config.getHandlerThreads() + " handler threads");
+        if (config.getFrameDecoder() != null)
+            throw new IllegalArgumentException("HTTP needs the bytes as they were read, but the server has a frame decoder");
+        if ((long) maxHeaderBytes + maxContentLength > config.getMaxReadBufferSize())
+            throw new IllegalArgumentException("requests of up to " + ((long) maxHeaderBytes + maxContentLength)
+                    + " bytes don't fit the max read buffer size of " + config.getMaxReadBufferSize());
+        this.server = server;
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * Parses and handles all complete requests among the received bytes, leaving an incomplete one for the next read.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param data         unconsumed bytes of the connection
+     */
+    @Override
+    public final void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+        var attachment = server.attachment(connectionId);
+        if (attachment == CLOSED) {
+            data.position(data.limit());
+            return;
+        }
+        var parser = (HttpRequestParser) attachment;
+        if (parser == null) {
+            parser = new HttpRequestParser(maxHeaderBytes, maxContentLength);
+            server.attach(connectionId, parser);
+        }
+        try {
+            HttpRequest request;
+            while ((request = parser.parse(data)) != null) {
+                onRequest(connectionId, request);
+                if (!request.isAnswered()) respond(connectionId, request, NOT_FOUND);
+                if (!request.isKeepAlive()) {
+                    close(connectionId, data);
+                    return;
+                }
+            }
+        } catch (HttpException ex) {
+            log.debug("bad request from client:{}, status:{}", client, ex.getStatus(), ex);
+            write(connectionId, HttpResponse.of(ex.getStatus(), ex.getMessage()), HttpResponse.CLOSE, false, null);
+            close(connectionId, data);
+        }
+    }
+
+    /**
+     * Called with every request received from a client, in order. The handler answers it with one of the
+     * {@code respond} methods; a request left unanswered gets {@code 404 Not Found}.
+     *
+     * @param connectionId id of the connection
+     * @param request      flyweight of the request, only valid during the call
+     */
+    protected abstract void onRequest(long connectionId, HttpRequest request);
+
+    /**
+     * Answers a request with a response carrying its body, or an empty body for a template.
+     *
+     * @param connectionId id of the connection the request was received on
+     * @param request      request to answer
+     * @param response     response
+     */
+    protected final void respond(long connectionId, HttpRequest request, HttpResponse response) {
+        answer(connectionId, request, response, null);
+    }
+
+    /**
+     * Answers a request with a template and the given body.
+     *
+     * @param connectionId id of the connection the request was received on
+     * @param request      request to answer
+     * @param template     response created with {@link HttpResponse#template}
+     * @param body         body between the position and the limit, the position is moved to the limit
+     */
+    protected final void respond(long connectionId, HttpRequest request, HttpResponse template, ByteBuffer body) {
+        if (!template.isTemplate()) throw new IllegalArgumentException("response has a fixed body");
+        answer(connectionId, request, template, body);
+    }
+
+    /**
+     * Writes the response to a request, choosing the head variant from the keep-alive state of the request.
+     *
+     * @param connectionId id of the connection the request was received on
+     * @param request      request to answer
+     * @param response     response
+     * @param body         body of a template, {@code null} for an empty one
+     */
+    private void answer(long connectionId, HttpRequest request, HttpResponse response, ByteBuffer body) {
+        if (request.isAnswered()) throw new IllegalStateException("request already answered");
+        request.answered();
+        int variant = !request.isKeepAlive() ? HttpResponse.CLOSE
+                : request.isHttp11() ? HttpResponse.DEFAULT : HttpResponse.KEEP_ALIVE;
+        write(connectionId, response, variant, request.method() == HttpMethod.HEAD, body);
+    }
+
+    /**
+     * Writes a response to the outbound queue of the connection.
+     *
+     * @param connectionId id of the connection
+     * @param response     response
+     * @param variant      head variant of the response
+     * @param headOnly     whether to omit the body, as for {@code HEAD} requests
+     * @param body         body of a template, {@code null} for an empty one
+     */
+    private void write(long connectionId, HttpResponse response, int variant, boolean headOnly, ByteBuffer body) {
+        var out = scratch.get().clear();
+        response.writeHead(out, variant, body == null ? 0 : body.remaining());
+        var fixed = response.body();
+        if (!headOnly && fixed != null && fixed.length <= out.remaining()) {
+            out.put(fixed);
+            fixed = null;
+        }
+        server.reply(connectionId, out.flip());
+        if (headOnly) return;
+        if (body != null) server.reply(connectionId, body);
+        for (int offset = 0; fixed != null && offset < fixed.length; offset += SCRATCH_SIZE) {
+            out.clear().put(fixed, offset, Math.min(SCRATCH_SIZE, fixed.length - offset));
+            server.reply(connectionId, out.flip());
+        }
+    }
+
+    /**
+     * Drops the remaining bytes of the connection and closes it once its responses were written.
+     *
+     * @param connectionId id of the connection
+     * @param data         unconsumed bytes of the connection
+     */
+    private void close(long connectionId, ByteBuffer data) {
+        data.position(data.limit());
+        server.attach(connectionId, CLOSED);
+        server.closeWhenWritten(connectionId);
+    }
+}
@@ -0,0 +1,37 @@
+package org.pogonin.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request methods of HTTP/1.1.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public enum HttpMethod {
+    GET, HEAD, POST, PUT, DELETE, OPTIONS, PATCH, TRACE, CONNECT;
+
+    /**
+     * All methods, cached because {@link #values()} copies the array.
+     */
+    private static final HttpMethod[] METHODS = values();
+
+    /**
+     * ASCII bytes of the name of the method.
+     */
+    private final byte[] token = name().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Finds the method whose name is stored in the buffer, without allocating.
+     *
+     * @param buffer buffer holding the name
+     * @param from   index of the first byte of the name
+     * @param to     index behind the last byte of the name
+     * @return matching method, {@code null} if there is none
+     */
+    static HttpMethod of(ByteBuffer buffer, int from, int to) {
+        for (var method : METHODS)
+            if (Ascii.equals(buffer, from, to, method.token)) return method;
+        return null;
+    }
+}
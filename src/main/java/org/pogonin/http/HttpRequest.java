@@ -0,0 +1,333 @@
+package org.pogonin.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable flyweight of a parsed HTTP/1.x request, reading the request line and the headers in place.
+ * <p>
+ * The {@link HttpRequestParser} fills it with the offsets of the parts of the request and points it
+ * at the bytes it parsed; nothing is copied. It is only valid until the parser is used again, which for
+ * an {@link HttpHandler} is the duration of {@link HttpHandler#onRequest}. Accessors returning strings allocate,
+ * the comparing ones don't.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class HttpRequest {
+    /**
+     * Maximum number of headers of a request.
+     */
+    public static final int MAX_HEADERS = 64;
+
+    /**
+     * Buffer holding the request.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Index of the first byte of the request in {@link #buffer}; all other offsets are relative to it.
+     */
+    private int base;
+
+    /**
+     * Method of the request, {@code null} until the request line was parsed.
+     */
+    private HttpMethod method;
+
+    /**
+     * Offset of the first byte of the request target.
+     */
+    private int targetStart;
+
+    /**
+     * Offset behind the last byte of the request target.
+     */
+    private int targetEnd;
+
+    /**
+     * Minor version of the protocol, {@code 0} for HTTP/1.0 and {@code 1} for HTTP/1.1.
+     */
+    private int minorVersion;
+
+    /**
+     * Start and end offsets of the name and the value of every header, four entries per header.
+     */
+    private final int[] headers = new int[MAX_HEADERS * 4];
+
+    /**
+     * Number of headers.
+     */
+    private int headerCount;
+
+    /**
+     * Whether the connection stays open after the response.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Value of the {@code Content-Length} header, {@code -1} if there is none.
+     */
+    private long contentLength = -1;
+
+    /**
+     * Offset of the first byte of the body.
+     */
+    private int bodyStart;
+
+    /**
+     * Whether a response was written for the request.
+     */
+    private boolean answered;
+
+    /**
+     * Returns the method of the request.
+     *
+     * @return method
+     */
+    public HttpMethod method() {
+        return method;
+    }
+
+    /**
+     * Checks whether the request uses HTTP/1.1 rather than HTTP/1.0.
+     *
+     * @return {@code true} for HTTP/1.1
+     */
+    public boolean isHttp11() {
+        return minorVersion == 1;
+    }
+
+    /**
+     * Checks whether the connection stays open after the response, by default for HTTP/1.1 and on
+     * {@code Connection: keep-alive} for HTTP/1.0.
+     *
+     * @return {@code true} if the connection is kept alive
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Compares the request target with the given ASCII bytes.
+     *
+     * @param target target to compare with, e.g. {@code /health}
+     * @return {@code true} if they are equal
+     */
+    public boolean targetEquals(byte[] target) {
+        return Ascii.equals(buffer, base + targetStart, base + targetEnd, target);
+    }
+
+    /**
+     * Checks whether the request target starts with the given ASCII bytes.
+     *
+     * @param prefix prefix to check
+     * @return {@code true} if the target starts with the prefix
+     */
+    public boolean targetStartsWith(byte[] prefix) {
+        return targetEnd - targetStart >= prefix.length
+                && Ascii.equals(buffer, base + targetStart, base + targetStart + prefix.length, prefix);
+    }
+
+    /**
+     * Returns the request target.
+     *
+     * @return target, e.g. {@code /health?verbose}
+     */
+    public String target() {
+        return Ascii.string(buffer, base + targetStart, base + targetEnd);
+    }
+
+    /**
+     * Returns the number of headers.
+     *
+     * @return number of headers
+     */
+    public int headerCount() {
+        return headerCount;
+    }
+
+    /**
+     * Returns the name of a header as it was sent.
+     *
+     * @param index index of the header
+     * @return name
+     */
+    public String headerName(int index) {
+        checkHeader(index);
+        return Ascii.string(buffer, base + headers[index * 4], base + headers[index * 4 + 1]);
+    }
+
+    /**
+     * Returns the value of a header without surrounding whitespace.
+     *
+     * @param index index of the header
+     * @return value
+     */
+    public String headerValue(int index) {
+        checkHeader(index);
+        return Ascii.string(buffer, base + headers[index * 4 + 2], base + headers[index * 4 + 3]);
+    }
+
+    /**
+     * Returns the value of the first header with the given name, compared ignoring case.
+     *
+     * @param name name of the header
+     * @return value, {@code null} if there is no such header
+     */
+    public String header(String name) {
+        int index = indexOfHeader(name.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+        return index < 0 ? null : headerValue(index);
+    }
+
+    /**
+     * Returns the index of the first header with the given name without allocating.
+     *
+     * @param lowerCaseName lower-case ASCII name of the header
+     * @return index of the header, {@code -1} if there is no such header
+     */
+    public int indexOfHeader(byte[] lowerCaseName) {
+        for (int i = 0; i < headerCount; i++)
+            if (Ascii.equalsIgnoreCase(buffer, base + headers[i * 4], base + headers[i * 4 + 1], lowerCaseName)) return i;
+        return -1;
+    }
+
+    /**
+     * Returns the length of the body.
+     *
+     * @return length in bytes, {@code 0} without a body
+     */
+    public int contentLength() {
+        return (int) Math.max(contentLength, 0);
+    }
+
+    /**
+     * Copies the body.
+     *
+     * @param dst    destination array
+     * @param offset index of the first byte written in the destination
+     * @return number of bytes copied
+     */
+    public int getBody(byte[] dst, int offset) {
+        int length = contentLength();
+        buffer.get(base + bodyStart, dst, offset, length);
+        return length;
+    }
+
+    /**
+     * Checks whether a response was written for the request.
+     *
+     * @return {@code true} once answered
+     */
+    public boolean isAnswered() {
+        return answered;
+    }
+
+    /**
+     * Clears the flyweight before a new request is parsed.
+     */
+    void reset() {
+        buffer = null;
+        base = 0;
+        method = null;
+        targetStart = 0;
+        targetEnd = 0;
+        minorVersion = 0;
+        headerCount = 0;
+        keepAlive = false;
+        contentLength = -1;
+        bodyStart = 0;
+        answered = false;
+    }
+
+    /**
+     * Sets the parts of the request line.
+     *
+     * @param method       method
+     * @param targetStart  offset of the first byte of the target
+     * @param targetEnd    offset behind the last byte of the target
+     * @param minorVersion minor version of the protocol
+     */
+    void requestLine(HttpMethod method, int targetStart, int targetEnd, int minorVersion) {
+        this.method = method;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.minorVersion = minorVersion;
+        this.keepAlive = minorVersion == 1;
+    }
+
+    /**
+     * Adds a header.
+     *
+     * @param nameStart  offset of the first byte of the name
+     * @param nameEnd    offset behind the last byte of the name
+     * @param valueStart offset of the first byte of the value
+     * @param valueEnd   offset behind the last byte of the value
+     * @return {@code false} if the request already has {@link #MAX_HEADERS} headers
+     */
+    boolean addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (headerCount == MAX_HEADERS) return false;
+        int i = headerCount++ * 4;
+        headers[i] = nameStart;
+        headers[i + 1] = nameEnd;
+        headers[i + 2] = valueStart;
+        headers[i + 3] = valueEnd;
+        return true;
+    }
+
+    /**
+     * Sets whether the connection stays open after the response.
+     *
+     * @param keepAlive {@code true} to keep it open
+     */
+    void keepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the value of the {@code Content-Length} header.
+     *
+     * @return length, {@code -1} if there is none
+     */
+    long rawContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Sets the value of the {@code Content-Length} header.
+     *
+     * @param contentLength length of the body
+     */
+    void contentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Points the flyweight at the parsed request.
+     *
+     * @param buffer    buffer holding the request
+     * @param base      index of the first byte of the request
+     * @param bodyStart offset of the first byte of the body
+     */
+    void bind(ByteBuffer buffer, int base, int bodyStart) {
+        this.buffer = buffer;
+        this.base = base;
+        this.bodyStart = bodyStart;
+    }
+
+    /**
+     * Marks the request as answered.
+     */
+    void answered() {
+        answered = true;
+    }
+
+    /**
+     * Checks the index of a header.
+     *
+     * @param index index of the header
+     */
+    private void checkHeader(int index) {
+        if (index < 0 || index >= headerCount) throw new IndexOutOfBoundsException(index);
+    }
+}
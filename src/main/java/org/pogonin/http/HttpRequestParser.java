@@ -0,0 +1,240 @@
+package org.pogonin.http;
+
+import org.pogonin.exception.HttpException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser of HTTP/1.x requests working on the inbound buffer of a connection.
+ * <p>
+ * {@link #parse} is called with the unconsumed bytes of the connection every time more arrive. It parses
+ * the request line and the headers one line at a time and remembers how far it got, so the bytes of a request
+ * split across reads are scanned once. Offsets are kept relative to the start of the request, which is
+ * where the buffer is positioned on every call, so it doesn't matter if the connection moved its bytes in between.
+ * A complete request is consumed from the buffer and returned as a reusable {@link HttpRequest} flyweight;
+ * pipelined requests are returned one by one by calling the parser again. Parsing allocates nothing.
+ * </p>
+ * <p>
+ * Bodies are supported with {@code Content-Length}; chunked transfer coding is rejected.
+ * A parser keeps the state of one connection and must only be used by one thread at a time.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class HttpRequestParser {
+    /**
+     * Default maximum length of the request line and the headers.
+     */
+    public static final int DEFAULT_MAX_HEADER_BYTES = 8 * 1024;
+
+    /**
+     * Default maximum length of a body.
+     */
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 64 * 1024;
+
+    private static final byte[] HTTP_1_0 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_1 = "HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP = "HTTP/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION = "connection".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Maximum length of the request line and the headers.
+     */
+    private final int maxHeaderBytes;
+
+    /**
+     * Maximum length of a body.
+     */
+    private final int maxContentLength;
+
+    /**
+     * Flyweight filled while parsing and returned for every request.
+     */
+    private final HttpRequest request = new HttpRequest();
+
+    /**
+     * Offset up to which the bytes of the current request were searched for line ends.
+     */
+    private int scanned;
+
+    /**
+     * Offset of the first byte of the line being parsed.
+     */
+    private int lineStart;
+
+    /**
+     * Offset of the first byte of the body, {@code 0} while the headers are incomplete.
+     */
+    private int bodyStart;
+
+    /**
+     * Whether {@link #request} was returned and must be cleared before the next request is parsed.
+     */
+    private boolean returned;
+
+    /**
+     * Creates a parser with {@link #DEFAULT_MAX_HEADER_BYTES} and {@link #DEFAULT_MAX_CONTENT_LENGTH}.
+     */
+    public HttpRequestParser() {
+        this(DEFAULT_MAX_HEADER_BYTES, DEFAULT_MAX_CONTENT_LENGTH);
+    }
+
+    /**
+     * Creates a parser.
+     *
+     * @param maxHeaderBytes   maximum length of the request line and the headers
+     * @param maxContentLength maximum length of a body; requests must also fit the maximum read buffer
+     *                         of the server
+     */
+    public HttpRequestParser(int maxHeaderBytes, int maxContentLength) {
+        if (maxHeaderBytes <= 0 || maxContentLength < 0) throw new IllegalArgumentException("invalid limits");
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxContentLength = maxContentLength;
+        request.reset();
+    }
+
+    /**
+     * Parses the next request from the bytes between the position and the limit of the buffer.
+     *
+     * @param in unconsumed bytes of the connection, starting at the same request on every call until it's complete
+     * @return the request, moving the position of the buffer behind it, only valid until the next call;
+     * {@code null} if the request is not complete yet, leaving the position where it was
+     * @throws HttpException if the request is malformed or can't be served
+     */
+    public HttpRequest parse(ByteBuffer in) {
+        if (returned) {
+            returned = false;
+            request.reset();
+        }
+        int start = in.position();
+        int available = in.remaining();
+        if (bodyStart == 0 && !parseHead(in, start, Math.min(available, maxHeaderBytes))) {
+            if (available >= maxHeaderBytes) throw new HttpException(431, "request header fields too large");
+            return null;
+        }
+        int contentLength = request.contentLength();
+        if (available - bodyStart < contentLength) return null;
+
+        request.bind(in, start, bodyStart);
+        in.position(start + bodyStart + contentLength);
+        scanned = 0;
+        lineStart = 0;
+        bodyStart = 0;
+        returned = true;
+        return request;
+    }
+
+    /**
+     * Parses the complete lines of the request line and the headers that were not parsed yet.
+     *
+     * @param in    buffer holding the request
+     * @param start index of the first byte of the request
+     * @param end   offset behind the last byte that may be parsed
+     * @return {@code true} once the empty line ending the headers was parsed
+     */
+    private boolean parseHead(ByteBuffer in, int start, int end) {
+        while (true) {
+            int lf = Ascii.indexOf(in, start + scanned, start + end, (byte) '\n');
+            if (lf < 0) {
+                scanned = end;
+                return false;
+            }
+            int lineEnd = lf - start;
+            scanned = lineEnd + 1;
+            if (lineEnd > lineStart && in.get(lf - 1) == '\r') lineEnd--;
+            if (request.method() == null) {
+                if (lineEnd > lineStart) parseRequestLine(in, start, lineEnd);
+            } else if (lineEnd == lineStart) {
+                bodyStart = scanned;
+                return true;
+            } else {
+                parseHeader(in, start, lineEnd);
+            }
+            lineStart = scanned;
+        }
+    }
+
+    /**
+     * Parses the request line, {@code method SP target SP version}.
+     * Empty lines in front of it are skipped before this method is called.
+     *
+     * @param in      buffer holding the request
+     * @param start   index of the first byte of the request
+     * @param lineEnd offset behind the last byte of the line, without the line end
+     */
+    private void parseRequestLine(ByteBuffer in, int start, int lineEnd) {
+        int methodEnd = Ascii.indexOf(in, start + lineStart, start + lineEnd, (byte) ' ') - start;
+        if (methodEnd < 0) throw new HttpException(400, "malformed request line");
+        int targetEnd = Ascii.indexOf(in, start + methodEnd + 1, start + lineEnd, (byte) ' ') - start;
+        if (targetEnd <= methodEnd + 1) throw new HttpException(400, "malformed request line");
+
+        var method = HttpMethod.of(in, start + lineStart, start + methodEnd);
+        if (method == null) throw new HttpException(501, "unsupported method");
+        int minorVersion;
+        if (Ascii.equals(in, start + targetEnd + 1, start + lineEnd, HTTP_1_1)) minorVersion = 1;
+        else if (Ascii.equals(in, start + targetEnd + 1, start + lineEnd, HTTP_1_0)) minorVersion = 0;
+        else if (lineEnd - targetEnd - 1 > HTTP.length
+                && Ascii.equals(in, start + targetEnd + 1, start + targetEnd + 1 + HTTP.length, HTTP))
+            throw new HttpException(505, "unsupported protocol version");
+        else throw new HttpException(400, "malformed request line");
+        request.requestLine(method, methodEnd + 1, targetEnd, minorVersion);
+    }
+
+    /**
+     * Parses a header, {@code name ":" OWS value OWS}, and applies the ones the parser needs itself.
+     *
+     * @param in      buffer holding the request
+     * @param start   index of the first byte of the request
+     * @param lineEnd offset behind the last byte of the line, without the line end
+     */
+    private void parseHeader(ByteBuffer in, int start, int lineEnd) {
+        int colon = Ascii.indexOf(in, start + lineStart, start + lineEnd, (byte) ':') - start;
+        if (colon <= lineStart || Ascii.isWhitespace(in.get(start + colon - 1)))
+            throw new HttpException(400, "malformed header");
+        int valueStart = colon + 1;
+        while (valueStart < lineEnd && Ascii.isWhitespace(in.get(start + valueStart))) valueStart++;
+        int valueEnd = lineEnd;
+        while (valueEnd > valueStart && Ascii.isWhitespace(in.get(start + valueEnd - 1))) valueEnd--;
+        if (!request.addHeader(lineStart, colon, valueStart, valueEnd))
+            throw new HttpException(431, "too many headers");
+
+        int nameFrom = start + lineStart;
+        int nameTo = start + colon;
+        if (Ascii.equalsIgnoreCase(in, nameFrom, nameTo, CONTENT_LENGTH)) {
+            long length = parseContentLength(in, start + valueStart, start + valueEnd);
+            if (request.rawContentLength() >= 0 && request.rawContentLength() != length)
+                throw new HttpException(400, "conflicting content lengths");
+            request.contentLength(length);
+        } else if (Ascii.equalsIgnoreCase(in, nameFrom, nameTo, TRANSFER_ENCODING)) {
+            throw new HttpException(501, "transfer coding not supported");
+        } else if (Ascii.equalsIgnoreCase(in, nameFrom, nameTo, CONNECTION)) {
+            if (Ascii.containsToken(in, start + valueStart, start + valueEnd, CLOSE)) request.keepAlive(false);
+            else if (Ascii.containsToken(in, start + valueStart, start + valueEnd, KEEP_ALIVE)) request.keepAlive(true);
+        }
+    }
+
+    /**
+     * Parses the value of a {@code Content-Length} header.
+     *
+     * @param in   buffer holding the request
+     * @param from index of the first digit
+     * @param to   index behind the last digit
+     * @return length of the body
+     */
+    private long parseContentLength(ByteBuffer in, int from, int to) {
+        if (from == to) throw new HttpException(400, "invalid content length");
+        long length = 0;
+        for (int i = from; i < to; i++) {
+            byte b = in.get(i);
+            if (b < '0' || b > '9') throw new HttpException(400, "invalid content length");
+            length = length * 10 + (b - '0');
+            if (length > maxContentLength) throw new HttpException(413, "content too large");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,201 @@
+package org.pogonin.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Precomputed response of an {@link HttpHandler}: the status line and the headers are encoded once,
+ * so writing a response only copies bytes.
+ * <p>
+ * A response created with {@link #of} also carries its body and is written as a whole; one created with
+ * {@link #template} gets its body, and thus its {@code Content-Length}, when it is written. The head is kept
+ * in one variant per {@code Connection} header the response may need, so no variant is assembled per request.
+ * Instances are immutable and may be shared by all connections and threads.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class HttpResponse {
+    /**
+     * Maximum length of the head of a response.
+     */
+    static final int MAX_HEAD_LENGTH = 1024;
+
+    /**
+     * Head variant without a {@code Connection} header, for kept-alive HTTP/1.1 connections.
+     */
+    static final int DEFAULT = 0;
+
+    /**
+     * Head variant with {@code Connection: close}.
+     */
+    static final int CLOSE = 1;
+
+    /**
+     * Head variant with {@code Connection: keep-alive}, for kept-alive HTTP/1.0 connections.
+     */
+    static final int KEEP_ALIVE = 2;
+
+    private static final String[] CONNECTION_HEADERS = {"", "Connection: close\r\n", "Connection: keep-alive\r\n"};
+    private static final byte[] END_OF_HEAD = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Status code of the response.
+     */
+    private final int status;
+
+    /**
+     * Head of every variant; up to and including the empty line with a body, up to {@code Content-Length: }
+     * for a template.
+     */
+    private final byte[][] heads = new byte[3][];
+
+    /**
+     * Body, {@code null} for a template.
+     */
+    private final byte[] body;
+
+    /**
+     * Encodes a response.
+     *
+     * @param status      status code
+     * @param contentType value of the {@code Content-Type} header, {@code null} to omit it
+     * @param body        body, {@code null} for a template
+     */
+    private HttpResponse(int status, String contentType, byte[] body) {
+        if (status < 100 || status > 999) throw new IllegalArgumentException("invalid status: " + status);
+        this.status = status;
+        this.body = body;
+        var common = "HTTP/1.1 " + status + " " + reasonPhrase(status) + "\r\n"
+                + (contentType == null ? "" : "Content-Type: " + contentType + "\r\n");
+        for (int i = 0; i < heads.length; i++) {
+            var head = common + CONNECTION_HEADERS[i] + "Content-Length: " + (body == null ? "" : body.length + "\r\n\r\n");
+            heads[i] = head.getBytes(StandardCharsets.ISO_8859_1);
+            if (heads[i].length > MAX_HEAD_LENGTH) throw new IllegalArgumentException("response head too long");
+        }
+    }
+
+    /**
+     * Creates a response with a fixed body.
+     *
+     * @param status      status code
+     * @param contentType value of the {@code Content-Type} header, {@code null} to omit it
+     * @param body        body
+     * @return new response
+     */
+    public static HttpResponse of(int status, String contentType, byte[] body) {
+        return new HttpResponse(status, contentType, body.clone());
+    }
+
+    /**
+     * Creates a response with a fixed plain-text body.
+     *
+     * @param status status code
+     * @param body   body, encoded as UTF-8
+     * @return new response
+     */
+    public static HttpResponse of(int status, String body) {
+        return of(status, "text/plain; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a response whose body is given when it is written.
+     *
+     * @param status      status code
+     * @param contentType value of the {@code Content-Type} header, {@code null} to omit it
+     * @return new template
+     */
+    public static HttpResponse template(int status, String contentType) {
+        return new HttpResponse(status, contentType, null);
+    }
+
+    /**
+     * Returns the status code.
+     *
+     * @return status code
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * Checks whether the response is a template whose body is given when it is written.
+     *
+     * @return {@code true} for a template
+     */
+    public boolean isTemplate() {
+        return body == null;
+    }
+
+    /**
+     * Writes the head of the response.
+     *
+     * @param out           buffer with room for {@link #MAX_HEAD_LENGTH} bytes
+     * @param variant       {@link #DEFAULT}, {@link #CLOSE} or {@link #KEEP_ALIVE}
+     * @param contentLength length of the body of a template, ignored otherwise
+     */
+    void writeHead(ByteBuffer out, int variant, int contentLength) {
+        out.put(heads[variant]);
+        if (body != null) return;
+        putDecimal(out, contentLength);
+        out.put(END_OF_HEAD, 0, END_OF_HEAD.length);
+    }
+
+    /**
+     * Returns the fixed body.
+     *
+     * @return body, {@code null} for a template
+     */
+    byte[] body() {
+        return body;
+    }
+
+    /**
+     * Writes a non-negative number as decimal ASCII digits without allocating.
+     *
+     * @param out   buffer to write to
+     * @param value number
+     */
+    private static void putDecimal(ByteBuffer out, int value) {
+        int digits = 1;
+        for (int rest = value; rest >= 10; rest /= 10) digits++;
+        int end = out.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+    }
+
+    /**
+     * Returns the reason phrase of a status code.
+     *
+     * @param status status code
+     * @return reason phrase, empty for unknown codes
+     */
+    private static String reasonPhrase(int status) {
+        return switch (status) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 413 -> "Content Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "";
+        };
+    }
+}
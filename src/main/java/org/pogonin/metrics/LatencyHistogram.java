@@ -0,0 +1,101 @@
+package org.pogonin.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with power-of-two buckets.
+ * <p>
+ * Recording is cheap enough to be done on the event loop for every message. Percentiles are
+ * approximated by the upper bound of the bucket they fall into, so they are accurate to a factor of two.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class LatencyHistogram {
+    /**
+     * Bucket {@code i} counts durations in {@code [2^(i-1), 2^i)} nanoseconds, bucket 0 counts zero durations.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * Number of recorded durations.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of recorded durations.
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Largest recorded duration.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos duration in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return number of recorded durations
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of recorded durations.
+     *
+     * @return mean duration in nanoseconds, {@code 0} if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Returns the largest recorded duration.
+     *
+     * @return largest duration in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of recorded durations.
+     *
+     * @param percentile percentile in the range {@code (0, 100]}
+     * @return upper bound of the percentile in nanoseconds, {@code 0} if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = 0;
+        for (int i = 0; i < buckets.length(); i++) n += buckets.get(i);
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.0fns, p50=%dns, p99=%dns, max=%dns",
+                getCount(), getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99), getMaxNanos());
+    }
+}
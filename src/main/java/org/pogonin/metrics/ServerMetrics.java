@@ -0,0 +1,61 @@
+package org.pogonin.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime statistics of a {@link org.pogonin.Server}, updated by its event loops.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Getter
+public final class ServerMetrics {
+    /**
+     * Time from queuing a message on the event loop of its client until the first attempt to write it.
+     */
+    private final LatencyHistogram outboundDelay = new LatencyHistogram();
+
+    /**
+     * Number of {@link java.nio.channels.Selector#wakeup()} calls made to deliver work to an event loop.
+     */
+    private final LongAdder wakeups = new LongAdder();
+
+    /**
+     * Number of select-loop iterations made by all event loops.
+     */
+    private final LongAdder selectIterations = new LongAdder();
+
+    /**
+     * Number of write calls issued to client sockets.
+     */
+    private final LongAdder writeCalls = new LongAdder();
+
+    /**
+     * Number of times reading from a connection was paused because the inbound ring passed its high-water mark
+     * or the handler queue of the connection was full.
+     */
+    private final LongAdder readPauses = new LongAdder();
+
+    /**
+     * Number of times reading from a paused connection was resumed after the inbound ring dropped
+     * below its low-water mark.
+     */
+    private final LongAdder readResumes = new LongAdder();
+
+    /**
+     * Time a handler callback waited in the queue of its connection before a worker thread ran it.
+     * Only recorded when the handler runs on worker threads.
+     */
+    private final LatencyHistogram handlerQueueTime = new LatencyHistogram();
+
+    @Override
+    public String toString() {
+        return "ServerMetrics{outboundDelay=[" + outboundDelay + "], wakeups=" + wakeups.sum()
+                + ", selectIterations=" + selectIterations.sum()
+                + ", writeCalls=" + writeCalls.sum()
+                + ", readPauses=" + readPauses.sum()
+                + ", readResumes=" + readResumes.sum()
+                + ", handlerQueueTime=[" + handlerQueueTime + "]}";
+    }
+}
@@ -9,13 +9,16 @@ import java.nio.channels.SocketChannel;
 @Data
 @AllArgsConstructor
 public final class Message {
+    private final long connectionId;
     private final SocketAddress clientAddress;
     private final SocketChannel clientChannel;
     private final byte[] message;
 
+    public Message(SocketAddress clientAddress, SocketChannel clientChannel, byte[] message) {
+        this(0, clientAddress, clientChannel, message);
+    }
+
     public Message(SocketAddress clientAddress, byte[] data) {
-        this.clientAddress = clientAddress;
-        this.message = data;
-        clientChannel = null;
+        this(0, clientAddress, null, data);
     }
 }
@@ -0,0 +1,153 @@
+package org.pogonin.model;
+
+import lombok.Getter;
+import org.pogonin.buffer.BufferPool;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Message whose payload is a slice of a direct buffer borrowed from a {@link BufferPool}.
+ * <p>
+ * Unlike {@link Message}, no array is copied: the payload stays in the pooled buffer it was read into
+ * and can be passed back to {@code Server.send()} as is. The buffer is shared by explicit reference counting.
+ * A new message has one reference; every additional holder calls {@link #retain()} and every holder calls
+ * {@link #release()} once done, the last release returning the buffer to the pool. Sending a message hands
+ * one reference over to the server, which releases it once the payload was written.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class PooledMessage {
+    /**
+     * Id of the connection the message was received on, {@code 0} if it was not received from a client.
+     */
+    @Getter
+    private final long connectionId;
+
+    /**
+     * Address of the client the message was received from, {@code null} if it was not received from a client.
+     */
+    @Getter
+    private final SocketAddress clientAddress;
+
+    /**
+     * Pooled buffer holding the payload.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Read-only view of the payload within {@link #buffer}.
+     */
+    private final ByteBuffer payload;
+
+    /**
+     * Pool the buffer is returned to.
+     */
+    private final BufferPool pool;
+
+    /**
+     * Number of holders of the message.
+     */
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /**
+     * Creates a message taking ownership of a pooled buffer.
+     *
+     * @param connectionId  id of the connection the message was received on, {@code 0} if none
+     * @param clientAddress address of the client the message was received from, may be {@code null}
+     * @param buffer        buffer acquired from the pool, returned to it by the last release
+     * @param offset        index of the first payload byte in the buffer
+     * @param length        number of payload bytes
+     * @param pool          pool the buffer was acquired from
+     */
+    public PooledMessage(long connectionId, SocketAddress clientAddress, ByteBuffer buffer, int offset, int length,
+                         BufferPool pool) {
+        this.connectionId = connectionId;
+        this.clientAddress = clientAddress;
+        this.buffer = buffer;
+        this.payload = buffer.slice(offset, length).asReadOnlyBuffer();
+        this.pool = pool;
+    }
+
+    /**
+     * Copies the bytes into a buffer acquired from the pool.
+     *
+     * @param pool pool to acquire the buffer from
+     * @param data payload bytes
+     * @return new message with one reference
+     */
+    public static PooledMessage copyOf(BufferPool pool, byte[] data) {
+        var buffer = pool.acquire(data.length);
+        buffer.put(data).flip();
+        return new PooledMessage(0, null, buffer, 0, data.length, pool);
+    }
+
+    /**
+     * Returns a read-only view of the payload with its own position and limit.
+     *
+     * @return view positioned at the first payload byte
+     * @throws IllegalStateException if the message was already released
+     */
+    public ByteBuffer getPayload() {
+        if (refCount.get() <= 0) throw new IllegalStateException("message already released");
+        return payload.duplicate();
+    }
+
+    /**
+     * Returns the number of payload bytes.
+     *
+     * @return payload length
+     */
+    public int getLength() {
+        return payload.capacity();
+    }
+
+    /**
+     * Returns the number of holders of the message.
+     *
+     * @return reference count, {@code 0} once the buffer was returned to the pool
+     */
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Adds a holder of the message.
+     *
+     * @return this message
+     * @throws IllegalStateException if the message was already released
+     */
+    public PooledMessage retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) throw new IllegalStateException("message already released");
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drops a holder of the message, returning the buffer to the pool if it was the last one.
+     *
+     * @return {@code true} if the buffer was returned to the pool
+     * @throws IllegalStateException if the message was already released
+     */
+    public boolean release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) return false;
+        if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("message already released");
+        }
+        pool.release(buffer);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledMessage{connectionId=" + connectionId + ", clientAddress=" + clientAddress
+                + ", length=" + getLength() + ", refCount=" + refCount() + "}";
+    }
+}
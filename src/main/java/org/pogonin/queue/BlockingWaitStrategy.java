@@ -0,0 +1,63 @@
+package org.pogonin.queue;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wait strategy that blocks on a condition until a producer signals a new entry.
+ * <p>
+ * An idle consumer uses no CPU at all; every wakeup costs a lock handoff and a thread unpark.
+ * Producers only take the lock while a consumer is actually waiting, so signalling is a fence and
+ * a volatile read on the fast path.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BlockingWaitStrategy implements WaitStrategy {
+    /**
+     * Lock guarding the condition.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled by producers.
+     */
+    private final Condition entryAdded = lock.newCondition();
+
+    /**
+     * Number of threads waiting on the condition.
+     */
+    private volatile int waiters;
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        if (ready.getAsBoolean()) return;
+        lock.lockInterruptibly();
+        try {
+            waiters++;
+            try {
+                VarHandle.fullFence();
+                while (!ready.getAsBoolean())
+                    entryAdded.await();
+            } finally {
+                waiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        VarHandle.fullFence();
+        if (waiters == 0) return;
+        lock.lock();
+        try {
+            entryAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
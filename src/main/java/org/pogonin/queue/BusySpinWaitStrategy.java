@@ -0,0 +1,22 @@
+package org.pogonin.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wait strategy that checks the condition in a tight loop.
+ * <p>
+ * Lowest latency, but the waiting thread keeps a core fully busy even without traffic.
+ * Only suitable when the consumer has a core of its own.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.pogonin.queue;
+
+import org.pogonin.model.Message;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Ring of preallocated, reusable slots through which event loops hand received messages to a single consumer.
+ * <p>
+ * Event loops claim a sequence with a CAS on the tail cursor, copy the message into the slot of that sequence
+ * and publish the slot by storing its sequence. The consumer works in batches in the style of the Disruptor:
+ * {@link #claim} counts the published slots at the head, {@link #get} gives access to them in place and
+ * {@link #release} hands all of them back to the producers with a single store of the head cursor.
+ * No objects are allocated per message; a slot only grows its data array for a message that doesn't fit.
+ * </p>
+ * <p>
+ * {@link #claim}, {@link #get}, {@link #release}, {@link #drain}, {@link #poll()} and {@link #isEmpty()}
+ * may only be called by the consumer thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class InboundRing extends InboundRingConsumerCursor {
+    private static final VarHandle TAIL;
+    private static final VarHandle HEAD;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            TAIL = lookup.findVarHandle(InboundRingProducerCursor.class, "tail", long.class);
+            HEAD = lookup.findVarHandle(InboundRingConsumerCursor.class, "head", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Preallocated slots.
+     */
+    private final InboundSlot[] slots;
+
+    /**
+     * Sequence last published in every slot, {@code -1} for slots never published.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Mask turning a sequence into a slot index.
+     */
+    private final int mask;
+
+    /**
+     * Initial capacity of the data array of every slot.
+     */
+    private final int slotSize;
+
+    /**
+     * Creates a ring with preallocated slots.
+     *
+     * @param capacity number of slots, rounded up to a power of two
+     * @param slotSize initial capacity of the data array of every slot
+     */
+    public InboundRing(int capacity, int slotSize) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("invalid capacity: " + capacity);
+        int size = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new InboundSlot[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.slotSize = slotSize;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new InboundSlot(slotSize);
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Returns the number of slots of the ring.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Copies a received message into the next free slot and publishes it. May be called by any thread.
+     *
+     * @param connectionId  id of the connection the message was received on
+     * @param clientAddress address of the client that sent the message
+     * @param clientChannel channel of the client that sent the message
+     * @param data          buffer whose remaining bytes are the message, its position is advanced past them
+     * @return {@code true} if the message was published, {@code false} if the ring is full
+     */
+    public boolean publish(long connectionId, SocketAddress clientAddress, SocketChannel clientChannel, ByteBuffer data) {
+        long sequence = (long) TAIL.getVolatile(this);
+        while (true) {
+            if (sequence - (long) HEAD.getAcquire(this) >= slots.length) return false;
+            if (TAIL.weakCompareAndSet(this, sequence, sequence + 1)) break;
+            sequence = (long) TAIL.getVolatile(this);
+        }
+        int index = (int) (sequence & mask);
+        slots[index].fill(connectionId, clientAddress, clientChannel, data);
+        published.setRelease(index, sequence);
+        return true;
+    }
+
+    /**
+     * Counts the published slots at the head of the ring. Consumer thread only.
+     *
+     * @param limit maximum number of slots to claim
+     * @return number of slots that can be read with {@link #get} until they are released
+     */
+    public int claim(int limit) {
+        long head = (long) HEAD.getOpaque(this);
+        int count = 0;
+        while (count < limit && published.getAcquire((int) ((head + count) & mask)) == head + count)
+            count++;
+        return count;
+    }
+
+    /**
+     * Returns a claimed slot. Consumer thread only.
+     *
+     * @param offset offset of the slot from the head, less than the number of claimed slots
+     * @return slot valid until it is released
+     */
+    public InboundSlot get(int offset) {
+        return slots[(int) (((long) HEAD.getOpaque(this) + offset) & mask)];
+    }
+
+    /**
+     * Hands claimed slots at the head back to the producers. Consumer thread only.
+     *
+     * @param count number of slots to release, at most the number of claimed slots
+     */
+    public void release(int count) {
+        long head = (long) HEAD.getOpaque(this);
+        for (int i = 0; i < count; i++)
+            slots[(int) ((head + i) & mask)].clear(slotSize);
+        HEAD.setRelease(this, head + count);
+    }
+
+    /**
+     * Claims up to {@code limit} published slots, hands them to the consumer in order and releases them.
+     * A slot whose handler throws is released as well. Consumer thread only.
+     *
+     * @param consumer consumer of the slots, must not keep them after returning
+     * @param limit    maximum number of slots to process
+     * @return number of slots processed
+     */
+    public int drain(Consumer<? super InboundSlot> consumer, int limit) {
+        int count = claim(limit);
+        int processed = 0;
+        try {
+            while (processed < count)
+                consumer.accept(get(processed++));
+        } finally {
+            release(processed);
+        }
+        return processed;
+    }
+
+    /**
+     * Removes the oldest message, copying it out of its slot. Consumer thread only.
+     *
+     * @return copy of the message, {@code null} if no message is ready
+     */
+    public Message poll() {
+        if (claim(1) == 0) return null;
+        var message = get(0).toMessage();
+        release(1);
+        return message;
+    }
+
+    /**
+     * Checks whether a message is ready for the consumer. Consumer thread only.
+     *
+     * @return {@code true} if {@link #claim} would return {@code 0}
+     */
+    public boolean isEmpty() {
+        return claim(1) == 0;
+    }
+
+    /**
+     * Returns the approximate number of messages in the ring. May be called by any thread.
+     *
+     * @return number of claimed sequences not yet released
+     */
+    public int size() {
+        long head = (long) HEAD.getVolatile(this);
+        long tail = (long) TAIL.getVolatile(this);
+        return (int) Math.max(0, Math.min(tail - head, slots.length));
+    }
+}
+
+/**
+ * Padding in front of the producer cursor.
+ */
+abstract class InboundRingPadding0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * Next sequence to be claimed by a producer.
+ */
+abstract class InboundRingProducerCursor extends InboundRingPadding0 {
+    volatile long tail;
+}
+
+/**
+ * Padding between the producer and consumer cursors.
+ */
+abstract class InboundRingPadding1 extends InboundRingProducerCursor {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * First sequence not yet released by the consumer, followed by padding.
+ */
+abstract class InboundRingConsumerCursor extends InboundRingPadding1 {
+    volatile long head;
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
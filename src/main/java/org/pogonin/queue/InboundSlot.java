@@ -0,0 +1,100 @@
+package org.pogonin.queue;
+
+import lombok.Getter;
+import org.pogonin.model.Message;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Reusable slot of an {@link InboundRing} holding one message received from a client.
+ * <p>
+ * The slot and its data array belong to the ring and are overwritten once the slot is released,
+ * so the consumer must copy whatever it wants to keep, e.g. with {@link #toMessage()}.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Getter
+public final class InboundSlot {
+    /**
+     * Data arrays larger than this are not kept when the slot is released.
+     */
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    /**
+     * Id of the connection the message was received on.
+     */
+    private long connectionId;
+
+    /**
+     * Address of the client that sent the message.
+     */
+    private SocketAddress clientAddress;
+
+    /**
+     * Channel of the client that sent the message.
+     */
+    private SocketChannel clientChannel;
+
+    /**
+     * Array holding the message in its first {@link #length} bytes.
+     */
+    private byte[] data;
+
+    /**
+     * Length of the message.
+     */
+    private int length;
+
+    /**
+     * Creates an empty slot.
+     *
+     * @param size initial capacity of the data array
+     */
+    InboundSlot(int size) {
+        this.data = new byte[size];
+    }
+
+    /**
+     * Copies the message into a new {@link Message} that stays valid after the slot is released.
+     *
+     * @return copy of the message
+     */
+    public Message toMessage() {
+        return new Message(connectionId, clientAddress, clientChannel, Arrays.copyOf(data, length));
+    }
+
+    /**
+     * Fills the slot with a message, growing the data array if the message doesn't fit.
+     *
+     * @param connectionId  id of the connection the message was received on
+     * @param clientAddress address of the client that sent the message
+     * @param clientChannel channel of the client that sent the message
+     * @param source        buffer whose remaining bytes are the message, its position is advanced past them
+     */
+    void fill(long connectionId, SocketAddress clientAddress, SocketChannel clientChannel, ByteBuffer source) {
+        int size = source.remaining();
+        if (data.length < size) data = new byte[size];
+        source.get(data, 0, size);
+        this.connectionId = connectionId;
+        this.clientAddress = clientAddress;
+        this.clientChannel = clientChannel;
+        this.length = size;
+    }
+
+    /**
+     * Drops the references of the slot and replaces an oversized data array.
+     *
+     * @param size initial capacity of the data array of the ring
+     */
+    void clear(int size) {
+        connectionId = 0;
+        clientAddress = null;
+        clientChannel = null;
+        length = 0;
+        if (data.length > Math.max(size, MAX_RETAINED_SIZE)) data = new byte[size];
+    }
+}
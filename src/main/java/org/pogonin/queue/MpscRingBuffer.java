@@ -0,0 +1,201 @@
+package org.pogonin.queue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer/single-consumer ring buffer.
+ * <p>
+ * Every slot carries a sequence number telling whether it is free for the producer of a given position
+ * or holds an element ready for the consumer. Producers claim positions by a CAS on the tail cursor,
+ * the only point where they contend, then publish their element with a release store of the slot sequence.
+ * The single consumer never takes part in a CAS: it checks the slot sequence, takes the element
+ * and hands the slot back to producers one lap ahead. The head and tail cursors are padded to lie
+ * on separate cache lines, so producers and the consumer don't invalidate each other's cursor.
+ * </p>
+ * <p>
+ * {@link #poll()}, {@link #drain} and {@link #isEmpty()} may only be called by the consumer thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ *
+ * @param <E> type of the elements
+ */
+public final class MpscRingBuffer<E> extends MpscRingBufferConsumerCursor {
+    private static final VarHandle TAIL;
+    private static final VarHandle HEAD;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            TAIL = lookup.findVarHandle(MpscRingBufferProducerCursor.class, "tail", long.class);
+            HEAD = lookup.findVarHandle(MpscRingBufferConsumerCursor.class, "head", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Elements by slot.
+     */
+    private final Object[] elements;
+
+    /**
+     * Sequence of every slot: {@code position} while free for the producer of that position,
+     * {@code position + 1} once it holds the element of that position.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Mask turning a position into a slot index.
+     */
+    private final int mask;
+
+    /**
+     * Creates a ring buffer.
+     *
+     * @param capacity maximum number of elements, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("invalid capacity: " + capacity);
+        int size = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Returns the number of slots of the ring.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Adds an element unless the ring is full. May be called by any thread.
+     *
+     * @param element element to add
+     * @return {@code true} if the element was added, {@code false} if the ring is full
+     */
+    public boolean offer(E element) {
+        if (element == null) throw new NullPointerException();
+        long position = (long) TAIL.getVolatile(this);
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (TAIL.weakCompareAndSet(this, position, position + 1)) break;
+                position = (long) TAIL.getVolatile(this);
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = (long) TAIL.getVolatile(this);
+            }
+        }
+        elements[index] = element;
+        sequences.setRelease(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element. Consumer thread only.
+     *
+     * @return the element, {@code null} if no element is ready
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = (long) HEAD.getOpaque(this);
+        int index = (int) (position & mask);
+        if (sequences.getAcquire(index) != position + 1) return null;
+        var element = (E) elements[index];
+        elements[index] = null;
+        sequences.setRelease(index, position + elements.length);
+        HEAD.setRelease(this, position + 1);
+        return element;
+    }
+
+    /**
+     * Removes up to {@code limit} ready elements in order and hands them to the consumer.
+     * The head cursor is published once for the whole batch. Consumer thread only.
+     *
+     * @param consumer consumer of the elements
+     * @param limit    maximum number of elements to remove
+     * @return number of elements removed
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long head = (long) HEAD.getOpaque(this);
+        long position = head;
+        try {
+            while (position - head < limit) {
+                int index = (int) (position & mask);
+                if (sequences.getAcquire(index) != position + 1) break;
+                var element = (E) elements[index];
+                elements[index] = null;
+                sequences.setRelease(index, position + elements.length);
+                position++;
+                consumer.accept(element);
+            }
+        } finally {
+            HEAD.setRelease(this, position);
+        }
+        return (int) (position - head);
+    }
+
+    /**
+     * Checks whether an element is ready for the consumer. Consumer thread only.
+     *
+     * @return {@code true} if {@link #poll()} would return {@code null}
+     */
+    public boolean isEmpty() {
+        long position = (long) HEAD.getOpaque(this);
+        return sequences.getAcquire((int) (position & mask)) != position + 1;
+    }
+
+    /**
+     * Returns the approximate number of elements in the ring. May be called by any thread.
+     *
+     * @return number of claimed positions not yet consumed
+     */
+    public int size() {
+        long head = (long) HEAD.getVolatile(this);
+        long tail = (long) TAIL.getVolatile(this);
+        return (int) Math.max(0, Math.min(tail - head, elements.length));
+    }
+}
+
+/**
+ * Padding in front of the producer cursor.
+ */
+abstract class MpscRingBufferPadding0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * Position of the next element to be claimed by a producer.
+ */
+abstract class MpscRingBufferProducerCursor extends MpscRingBufferPadding0 {
+    volatile long tail;
+}
+
+/**
+ * Padding between the producer and consumer cursors.
+ */
+abstract class MpscRingBufferPadding1 extends MpscRingBufferProducerCursor {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * Position of the next element to be taken by the consumer, followed by padding.
+ */
+abstract class MpscRingBufferConsumerCursor extends MpscRingBufferPadding1 {
+    volatile long head;
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -0,0 +1,68 @@
+package org.pogonin.queue;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wait strategy that spins for a while and then parks between checks with exponential backoff.
+ * <p>
+ * The park time starts at {@link #minParkNanos} and doubles with every empty check up to
+ * {@link #maxParkNanos}, so an idle consumer costs almost no CPU while a consumer under load
+ * reacts within the short first parks. No signal from producers is needed.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class SpinParkWaitStrategy implements WaitStrategy {
+    /**
+     * Number of checks before the strategy starts parking.
+     */
+    private final int spins;
+
+    /**
+     * Duration of the first park in nanoseconds.
+     */
+    private final long minParkNanos;
+
+    /**
+     * Longest park in nanoseconds, bounding the reaction time of an idle consumer.
+     */
+    private final long maxParkNanos;
+
+    /**
+     * Creates a strategy spinning for 100 checks, then parking from 1 µs up to 1 ms.
+     */
+    public SpinParkWaitStrategy() {
+        this(100, 1_000, 1_000_000);
+    }
+
+    /**
+     * Creates a strategy with the given spin count and park bounds.
+     *
+     * @param spins        number of checks before the strategy starts parking
+     * @param minParkNanos duration of the first park in nanoseconds
+     * @param maxParkNanos longest park in nanoseconds
+     */
+    public SpinParkWaitStrategy(int spins, long minParkNanos, long maxParkNanos) {
+        if (minParkNanos <= 0 || maxParkNanos < minParkNanos) throw new IllegalArgumentException("invalid park bounds");
+        this.spins = spins;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        int counter = 0;
+        long parkNanos = minParkNanos;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (counter < spins) {
+                counter++;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos << 1, maxParkNanos);
+            }
+        }
+    }
+}
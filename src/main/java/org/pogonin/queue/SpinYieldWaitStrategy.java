@@ -0,0 +1,49 @@
+package org.pogonin.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wait strategy that spins for a while and then yields the processor between checks.
+ * <p>
+ * Keeps latency close to busy spinning while letting other runnable threads use the core,
+ * but the waiting thread still shows up as busy when the core is otherwise idle.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class SpinYieldWaitStrategy implements WaitStrategy {
+    /**
+     * Number of checks before the strategy starts yielding.
+     */
+    private final int spins;
+
+    /**
+     * Creates a strategy spinning for 100 checks before yielding.
+     */
+    public SpinYieldWaitStrategy() {
+        this(100);
+    }
+
+    /**
+     * Creates a strategy spinning for the given number of checks before yielding.
+     *
+     * @param spins number of checks before the strategy starts yielding
+     */
+    public SpinYieldWaitStrategy(int spins) {
+        this.spins = spins;
+    }
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        int counter = 0;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (counter < spins) {
+                counter++;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.pogonin.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Strategy a consumer of the server queues uses to wait for new entries.
+ * <p>
+ * The strategies trade CPU for latency: spinning reacts within nanoseconds but keeps a core busy,
+ * parking and blocking free the core at the cost of a slower reaction to new entries.
+ * Producers call {@link #signal()} after adding an entry, which only matters to strategies that block.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public interface WaitStrategy {
+    /**
+     * Waits until the condition holds.
+     *
+     * @param ready condition checked by the waiting thread, {@code true} once there is something to consume
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    /**
+     * Wakes up threads waiting in {@link #await} after an entry was added. Does nothing by default.
+     */
+    default void signal() {
+    }
+}
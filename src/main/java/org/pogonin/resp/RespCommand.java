@@ -0,0 +1,172 @@
+package org.pogonin.resp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable flyweight of a parsed RESP command: the offsets of its arguments in the buffer they were received in.
+ * <p>
+ * The {@link RespParser} fills it and points it at the bytes it parsed; nothing is copied. It is only valid
+ * until the parser is used again. Accessors returning strings allocate, the others don't.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class RespCommand {
+    /**
+     * Buffer holding the arguments.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Index of the first byte of every argument.
+     */
+    private int[] starts = new int[16];
+
+    /**
+     * Index behind the last byte of every argument.
+     */
+    private int[] ends = new int[16];
+
+    /**
+     * Number of arguments, the command name included.
+     */
+    private int count;
+
+    /**
+     * Returns the buffer holding the arguments.
+     *
+     * @return buffer, read with absolute methods only
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of arguments, the command name included.
+     *
+     * @return number of arguments
+     */
+    public int argCount() {
+        return count;
+    }
+
+    /**
+     * Returns the index of the first byte of an argument in {@link #buffer()}.
+     *
+     * @param index index of the argument, {@code 0} for the command name
+     * @return index in the buffer
+     */
+    public int argStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * Returns the index behind the last byte of an argument in {@link #buffer()}.
+     *
+     * @param index index of the argument, {@code 0} for the command name
+     * @return index in the buffer
+     */
+    public int argEnd(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * Returns the length of an argument.
+     *
+     * @param index index of the argument
+     * @return length in bytes
+     */
+    public int argLength(int index) {
+        return argEnd(index) - argStart(index);
+    }
+
+    /**
+     * Compares an argument with upper-case ASCII bytes, ignoring the case of the argument.
+     *
+     * @param index    index of the argument
+     * @param expected upper-case bytes, e.g. a command name
+     * @return {@code true} if they are equal ignoring case
+     */
+    public boolean argEqualsIgnoreCase(int index, byte[] expected) {
+        int start = argStart(index);
+        if (argEnd(index) - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            byte b = buffer.get(start + i);
+            if (b >= 'a' && b <= 'z') b -= 'a' - 'A';
+            if (b != expected[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an argument as a decimal {@code long}.
+     *
+     * @param index index of the argument
+     * @return value
+     * @throws NumberFormatException if the argument is not an integer or out of range
+     */
+    public long argLong(int index) {
+        int start = argStart(index);
+        int end = argEnd(index);
+        boolean negative = start < end && buffer.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 19) throw new NumberFormatException("not an integer");
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') throw new NumberFormatException("not an integer");
+            value = Math.addExact(Math.multiplyExact(value, 10), negative ? '0' - b : b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Decodes an argument as UTF-8.
+     *
+     * @param index index of the argument
+     * @return argument
+     */
+    public String arg(int index) {
+        var bytes = new byte[argLength(index)];
+        buffer.get(argStart(index), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Clears the flyweight before a new command is parsed.
+     *
+     * @param buffer buffer holding the command
+     */
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = 0;
+    }
+
+    /**
+     * Adds an argument, growing the offset arrays if needed.
+     *
+     * @param start index of the first byte of the argument
+     * @param end   index behind the last byte of the argument
+     */
+    void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count++] = end;
+    }
+
+    /**
+     * Checks the index of an argument.
+     *
+     * @param index index of the argument
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+    }
+}
@@ -0,0 +1,317 @@
+package org.pogonin.resp;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pogonin.Server;
+import org.pogonin.exception.CorruptedFrameException;
+import org.pogonin.exception.FrameTooLargeException;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.store.OffHeapStore;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Handler serving a Redis-compatible subset of commands from an {@link OffHeapStore}, turning a {@link Server}
+ * into a lightweight cache sidecar that existing Redis clients can talk to.
+ * <p>
+ * Supported commands are {@code PING}, {@code GET}, {@code SET} with the {@code EX} and {@code PX} options,
+ * {@code DEL}, {@code MGET}, {@code MSET} and {@code EXPIRE}. Every read is processed as a whole: all complete
+ * commands among the received bytes are parsed in place and executed in order, their replies are collected by
+ * a {@link RespWriter} and leave in one gathering write, and an incomplete command is left for the next read.
+ * Keys and values are copied between the inbound buffer, the store and the outbound queue without allocating.
+ * Unlike in Redis, {@code MSET} sets every key atomically but not all keys together.
+ * A protocol error is answered with an error and closes the connection.
+ * </p>
+ * <p>
+ * The handler relies on callbacks running on the event loops and on the bytes being handed over as they
+ * were read: the server must run without handler threads and without a frame decoder, which the constructor checks.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@Slf4j
+public class RespHandler implements ServerHandler {
+    private static final byte[] PING = bytes("PING");
+    private static final byte[] GET = bytes("GET");
+    private static final byte[] SET = bytes("SET");
+    private static final byte[] DEL = bytes("DEL");
+    private static final byte[] MGET = bytes("MGET");
+    private static final byte[] MSET = bytes("MSET");
+    private static final byte[] EXPIRE = bytes("EXPIRE");
+    private static final byte[] EX = bytes("EX");
+    private static final byte[] PX = bytes("PX");
+    private static final byte[] OK = bytes("+OK\r\n");
+    private static final byte[] PONG = bytes("+PONG\r\n");
+    private static final String NOT_AN_INTEGER = "ERR value is not an integer or out of range";
+    private static final String SYNTAX_ERROR = "ERR syntax error";
+    private static final String OUT_OF_MEMORY = "OOM command not allowed when used memory > 'maxmemory'.";
+    private static final String TOO_LARGE = "ERR string exceeds maximum allowed size";
+
+    /**
+     * Maximum number of bytes of a command name echoed in an error, as in Redis.
+     */
+    private static final int MAX_ECHOED_NAME = 128;
+
+    /**
+     * Bytes of the inbound buffer kept free of a bulk string for the framing, the command name and the key
+     * of the command carrying it.
+     */
+    static final int COMMAND_OVERHEAD = 1024;
+
+    /**
+     * Attachment of a connection that is closed once its replies were written, so bytes arriving meanwhile
+     * are dropped.
+     */
+    private static final Object CLOSED = new Object();
+
+    /**
+     * Server the handler writes its replies to.
+     */
+    private final Server server;
+
+    /**
+     * Store the commands operate on.
+     */
+    private final OffHeapStore store;
+
+    /**
+     * Parser of every thread.
+     */
+    private final ThreadLocal<RespParser> parsers;
+
+    /**
+     * Reply writer of every thread.
+     */
+    private final ThreadLocal<RespWriter> writers = ThreadLocal.withInitial(RespWriter::new);
+
+    /**
+     * Creates a handler.
+     * <p>
+     * Bulk strings are limited by the size of a store entry and by the maximum read buffer of the server
+     * less {@link #COMMAND_OVERHEAD}, so a command too large to ever be read completely is answered with
+     * an error instead of being dropped with the connection.
+     * </p>
+     *
+     * @param server server the handler is set on
+     * @param store  store the commands operate on
+     * @throws IllegalArgumentException if the server runs handler threads or a frame decoder
+     */
+    public RespHandler(Server server, OffHeapStore store) {
+        var config = server.getConfig();
+        if (config.getHandlerThreads() > 0)
+            throw new IllegalArgumentException("RESP needs callbacks on the event loops, but the server runs "
+                    + config.getHandlerThreads() + " handler threads");
+        if (config.getFrameDecoder() != null)
+            throw new IllegalArgumentException("RESP needs the bytes as they were read, but the server has a frame decoder");
+        this.server = server;
+        this.store = store;
+        int maxBulkLength = Math.min(store.getMaxEntrySize(),
+                Math.max(0, config.getMaxReadBufferSize() - COMMAND_OVERHEAD));
+        this.parsers = ThreadLocal.withInitial(() -> new RespParser(maxBulkLength));
+    }
+
+    /**
+     * Executes all complete commands among the received bytes, leaving an incomplete one for the next read,
+     * and writes their replies. A bulk string above the limit is answered like an entry the store refuses
+     * and closes the connection, as does a protocol error.
+     *
+     * @param connectionId id of the connection
+     * @param client       address of the client
+     * @param data         unconsumed bytes of the connection
+     */
+    @Override
+    public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+        if (server.attachment(connectionId) == CLOSED) {
+            data.position(data.limit());
+            return;
+        }
+        var parser = parsers.get();
+        var writer = writers.get();
+        writer.begin(server, connectionId);
+        try {
+            RespCommand command;
+            while ((command = parser.parse(data)) != null)
+                execute(command, writer);
+        } catch (CorruptedFrameException ex) {
+            log.debug("protocol error from client:{}", client, ex);
+            writer.error(ex instanceof FrameTooLargeException ? TOO_LARGE : "ERR Protocol error: " + ex.getMessage());
+            data.position(data.limit());
+            server.attach(connectionId, CLOSED);
+            server.closeWhenWritten(connectionId);
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Executes a command and writes its reply.
+     *
+     * @param command command to execute
+     * @param writer  writer of the reply
+     */
+    private void execute(RespCommand command, RespWriter writer) {
+        int count = command.argCount();
+        if (command.argEqualsIgnoreCase(0, GET)) {
+            if (count != 2) wrongArity(command, writer);
+            else get(command, 1, writer);
+        } else if (command.argEqualsIgnoreCase(0, SET)) {
+            if (count < 3) wrongArity(command, writer);
+            else set(command, writer);
+        } else if (command.argEqualsIgnoreCase(0, MGET)) {
+            if (count < 2) {
+                wrongArity(command, writer);
+                return;
+            }
+            writer.arrayHeader(count - 1);
+            for (int i = 1; i < count; i++)
+                get(command, i, writer);
+        } else if (command.argEqualsIgnoreCase(0, MSET)) {
+            if (count < 3 || count % 2 == 0) wrongArity(command, writer);
+            else mset(command, writer);
+        } else if (command.argEqualsIgnoreCase(0, DEL)) {
+            if (count < 2) {
+                wrongArity(command, writer);
+                return;
+            }
+            int deleted = 0;
+            var buffer = command.buffer();
+            for (int i = 1; i < count; i++)
+                if (store.delete(buffer, command.argStart(i), command.argEnd(i))) deleted++;
+            writer.integer(deleted);
+        } else if (command.argEqualsIgnoreCase(0, EXPIRE)) {
+            if (count != 3) wrongArity(command, writer);
+            else expire(command, writer);
+        } else if (command.argEqualsIgnoreCase(0, PING)) {
+            if (count > 2) wrongArity(command, writer);
+            else if (count == 2) writer.bulk(command.buffer(), command.argStart(1), command.argLength(1));
+            else writer.raw(PONG);
+        } else {
+            writer.error("ERR unknown command '" + commandName(command) + "'");
+        }
+    }
+
+    /**
+     * Writes the value of a key as a bulk string, or a null bulk string if the key doesn't exist.
+     *
+     * @param command command holding the key
+     * @param index   index of the key argument
+     * @param writer  writer of the reply
+     */
+    private void get(RespCommand command, int index, RespWriter writer) {
+        if (!store.get(command.buffer(), command.argStart(index), command.argEnd(index), writer)) writer.nullBulk();
+    }
+
+    /**
+     * Executes {@code SET key value [EX seconds | PX milliseconds]}.
+     *
+     * @param command command to execute
+     * @param writer  writer of the reply
+     */
+    private void set(RespCommand command, RespWriter writer) {
+        long expiresAt = 0;
+        for (int i = 3; i < command.argCount(); i += 2) {
+            boolean seconds = command.argEqualsIgnoreCase(i, EX);
+            if (!seconds && !command.argEqualsIgnoreCase(i, PX) || i + 1 == command.argCount() || expiresAt != 0) {
+                writer.error(SYNTAX_ERROR);
+                return;
+            }
+            try {
+                long ttl = command.argLong(i + 1);
+                if (ttl <= 0) {
+                    writer.error("ERR invalid expire time in 'set' command");
+                    return;
+                }
+                expiresAt = Math.addExact(System.currentTimeMillis(), seconds ? Math.multiplyExact(ttl, 1000) : ttl);
+            } catch (ArithmeticException | NumberFormatException ex) {
+                writer.error(NOT_AN_INTEGER);
+                return;
+            }
+        }
+        if (store(command, 1, expiresAt, writer)) writer.raw(OK);
+    }
+
+    /**
+     * Executes {@code MSET key value [key value ...]}.
+     *
+     * @param command command to execute
+     * @param writer  writer of the reply
+     */
+    private void mset(RespCommand command, RespWriter writer) {
+        for (int i = 1; i < command.argCount(); i += 2)
+            if (!store(command, i, 0, writer)) return;
+        writer.raw(OK);
+    }
+
+    /**
+     * Stores a key and the value following it, writing an error if the store refuses the entry.
+     *
+     * @param command   command holding the key and the value
+     * @param index     index of the key argument
+     * @param expiresAt expiry time in milliseconds since the epoch, {@code 0} if the key doesn't expire
+     * @param writer    writer of an error
+     * @return {@code true} if the entry was stored
+     */
+    private boolean store(RespCommand command, int index, long expiresAt, RespWriter writer) {
+        var buffer = command.buffer();
+        if ((long) command.argLength(index) + command.argLength(index + 1) > store.getMaxEntrySize()) {
+            writer.error(TOO_LARGE);
+            return false;
+        }
+        if (store.set(buffer, command.argStart(index), command.argEnd(index),
+                buffer, command.argStart(index + 1), command.argEnd(index + 1), expiresAt))
+            return true;
+        writer.error(OUT_OF_MEMORY);
+        return false;
+    }
+
+    /**
+     * Executes {@code EXPIRE key seconds}. A time that is not positive removes the key.
+     *
+     * @param command command to execute
+     * @param writer  writer of the reply
+     */
+    private void expire(RespCommand command, RespWriter writer) {
+        long expiresAt;
+        try {
+            long seconds = command.argLong(2);
+            expiresAt = seconds <= 0 ? 1 : Math.addExact(System.currentTimeMillis(), Math.multiplyExact(seconds, 1000));
+        } catch (ArithmeticException | NumberFormatException ex) {
+            writer.error(NOT_AN_INTEGER);
+            return;
+        }
+        writer.integer(store.expireAt(command.buffer(), command.argStart(1), command.argEnd(1), expiresAt) ? 1 : 0);
+    }
+
+    /**
+     * Writes the error for a command called with the wrong number of arguments.
+     *
+     * @param command command
+     * @param writer  writer of the reply
+     */
+    private static void wrongArity(RespCommand command, RespWriter writer) {
+        writer.error("ERR wrong number of arguments for '" + commandName(command).toLowerCase() + "' command");
+    }
+
+    /**
+     * Decodes the name of a command to be echoed in an error, cut after {@link #MAX_ECHOED_NAME} bytes.
+     *
+     * @param command command
+     * @return name of the command
+     */
+    private static String commandName(RespCommand command) {
+        var name = new byte[Math.min(command.argLength(0), MAX_ECHOED_NAME)];
+        command.buffer().get(command.argStart(0), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes ASCII text.
+     *
+     * @param text text
+     * @return bytes
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,185 @@
+package org.pogonin.resp;
+
+import org.pogonin.exception.CorruptedFrameException;
+import org.pogonin.exception.FrameTooLargeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parser of RESP commands working on the inbound buffer of a connection.
+ * <p>
+ * Commands are arrays of bulk strings, as sent by Redis clients, or inline commands, a line of arguments
+ * separated by spaces, as typed into a terminal. {@link #parse} returns the next complete command as
+ * a reusable {@link RespCommand} flyweight and consumes it; pipelined commands are returned one by one
+ * by calling it again. An incomplete command is left in the buffer and parsed again once more bytes arrived;
+ * bulk strings are skipped by their length, so only the headers are scanned twice. Parsing allocates nothing
+ * unless a command has more arguments than any before.
+ * A parser keeps no state between commands and may be shared by all connections of one thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class RespParser {
+    /**
+     * Maximum number of arguments of a command.
+     */
+    public static final int MAX_ARGUMENTS = 1024 * 1024;
+
+    /**
+     * Maximum length of an inline command.
+     */
+    public static final int MAX_INLINE_LENGTH = 64 * 1024;
+
+    /**
+     * Maximum number of characters of a length, enough for any {@code int}.
+     */
+    private static final int MAX_NUMBER_LENGTH = 11;
+
+    /**
+     * Maximum length of a bulk string.
+     */
+    private final int maxBulkLength;
+
+    /**
+     * Flyweight filled with every command.
+     */
+    private final RespCommand command = new RespCommand();
+
+    /**
+     * Value of the number parsed last by {@link #readNumber}.
+     */
+    private long number;
+
+    /**
+     * Index behind the line end of the number parsed last by {@link #readNumber}.
+     */
+    private int numberEnd;
+
+    /**
+     * Creates a parser.
+     *
+     * @param maxBulkLength maximum length of a bulk string; commands must also fit the maximum read buffer
+     *                      of the server
+     */
+    public RespParser(int maxBulkLength) {
+        if (maxBulkLength < 0) throw new IllegalArgumentException("invalid max bulk length: " + maxBulkLength);
+        this.maxBulkLength = maxBulkLength;
+    }
+
+    /**
+     * Parses the next command from the bytes between the position and the limit of the buffer.
+     * Empty arrays and empty lines are consumed and skipped.
+     *
+     * @param in unconsumed bytes of the connection
+     * @return the command, moving the position of the buffer behind it, only valid until the next call;
+     * {@code null} if no complete command is available, leaving the position in front of the incomplete one
+     * @throws CorruptedFrameException if the bytes are not a valid command
+     * @throws FrameTooLargeException  if a bulk string is longer than the maximum bulk length
+     */
+    public RespCommand parse(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int end = in.get(start) == '*' ? parseArray(in, start) : parseInline(in, start);
+            if (end < 0) return null;
+            in.position(end);
+            if (command.argCount() > 0) return command;
+        }
+        return null;
+    }
+
+    /**
+     * Parses an array of bulk strings into {@link #command}.
+     *
+     * @param in    buffer holding the command
+     * @param start index of the {@code *} starting the array
+     * @return index behind the command, {@code -1} if it is incomplete
+     */
+    private int parseArray(ByteBuffer in, int start) {
+        if (!readNumber(in, start + 1, "invalid multibulk length")) return -1;
+        if (number > MAX_ARGUMENTS) throw new CorruptedFrameException("invalid multibulk length");
+        int count = (int) number;
+        int index = numberEnd;
+        command.reset(in);
+        for (int i = 0; i < count; i++) {
+            if (index >= in.limit()) return -1;
+            if (in.get(index) != '$') throw new CorruptedFrameException("expected '$', got '" + (char) in.get(index) + "'");
+            if (!readNumber(in, index + 1, "invalid bulk length")) return -1;
+            if (number < 0) throw new CorruptedFrameException("invalid bulk length");
+            if (number > maxBulkLength) throw new FrameTooLargeException("bulk length " + number + " exceeds " + maxBulkLength);
+            int from = numberEnd;
+            int to = from + (int) number;
+            if (in.limit() - to < 2) return -1;
+            if (in.get(to) != '\r' || in.get(to + 1) != '\n') throw new CorruptedFrameException("bulk string not terminated by CRLF");
+            command.add(from, to);
+            index = to + 2;
+        }
+        return index;
+    }
+
+    /**
+     * Parses an inline command into {@link #command}.
+     *
+     * @param in    buffer holding the command
+     * @param start index of the first byte of the line
+     * @return index behind the line, {@code -1} if it is incomplete
+     */
+    private int parseInline(ByteBuffer in, int start) {
+        int searchEnd = Math.min(in.limit(), start + MAX_INLINE_LENGTH);
+        int lf = start;
+        while (lf < searchEnd && in.get(lf) != '\n') lf++;
+        if (lf == searchEnd) {
+            if (searchEnd - start == MAX_INLINE_LENGTH) throw new CorruptedFrameException("too big inline request");
+            return -1;
+        }
+        int lineEnd = lf > start && in.get(lf - 1) == '\r' ? lf - 1 : lf;
+        command.reset(in);
+        int i = start;
+        while (i < lineEnd) {
+            while (i < lineEnd && isWhitespace(in.get(i))) i++;
+            int from = i;
+            while (i < lineEnd && !isWhitespace(in.get(i))) i++;
+            if (i > from) command.add(from, i);
+        }
+        return lf + 1;
+    }
+
+    /**
+     * Reads a decimal number terminated by CRLF into {@link #number} and {@link #numberEnd}.
+     *
+     * @param in    buffer holding the number
+     * @param from  index of its first character
+     * @param error message of the exception thrown for an invalid number
+     * @return {@code false} if the line is incomplete
+     */
+    private boolean readNumber(ByteBuffer in, int from, String error) {
+        boolean negative = from < in.limit() && in.get(from) == '-';
+        long value = 0;
+        int i = negative ? from + 1 : from;
+        for (; ; i++) {
+            if (i >= in.limit()) {
+                if (i - from > MAX_NUMBER_LENGTH) throw new CorruptedFrameException(error);
+                return false;
+            }
+            byte b = in.get(i);
+            if (b == '\r') break;
+            if (b < '0' || b > '9' || i - from >= MAX_NUMBER_LENGTH) throw new CorruptedFrameException(error);
+            value = value * 10 + (b - '0');
+        }
+        if (i == (negative ? from + 1 : from)) throw new CorruptedFrameException(error);
+        if (i + 1 >= in.limit()) return false;
+        if (in.get(i + 1) != '\n') throw new CorruptedFrameException(error);
+        number = negative ? -value : value;
+        numberEnd = i + 2;
+        return true;
+    }
+
+    /**
+     * Checks whether the byte separates the arguments of an inline command.
+     *
+     * @param b byte to check
+     * @return {@code true} for a space or a tab
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,198 @@
+package org.pogonin.resp;
+
+import org.pogonin.Server;
+import org.pogonin.store.ValueConsumer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoder of RESP replies collecting the replies to all commands of a read before handing them to the server.
+ * <p>
+ * Replies are encoded into a buffer of the writer and passed to {@link Server#reply} when it fills up or
+ * on {@link #flush}, so the replies to pipelined commands are copied into the outbound queue of the connection
+ * in a few large chunks and leave in one gathering write. As a {@link ValueConsumer} the writer encodes a value
+ * of the store as a bulk string straight from direct memory. Encoding allocates nothing except for errors.
+ * A writer must only be used by one thread.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class RespWriter implements ValueConsumer {
+    /**
+     * Capacity of the buffer of the writer.
+     */
+    private static final int CAPACITY = 16 * 1024;
+
+    /**
+     * Maximum length of an encoded number with its type and line end.
+     */
+    private static final int MAX_NUMBER_LINE = 23;
+
+    /**
+     * Maximum number of bytes of an error message; longer messages are cut, so an error always fits the buffer.
+     */
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Buffer the replies are encoded into.
+     */
+    private final ByteBuffer out = ByteBuffer.allocate(CAPACITY);
+
+    /**
+     * Server the replies are written to.
+     */
+    private Server server;
+
+    /**
+     * Id of the connection the replies are written to.
+     */
+    private long connectionId;
+
+    /**
+     * Directs the replies to a connection.
+     *
+     * @param server       server the replies are written to
+     * @param connectionId id of the connection
+     */
+    public void begin(Server server, long connectionId) {
+        this.server = server;
+        this.connectionId = connectionId;
+        out.clear();
+    }
+
+    /**
+     * Writes precomputed bytes as they are, e.g. a constant simple string such as {@code +OK\r\n}.
+     *
+     * @param reply encoded reply
+     */
+    public void raw(byte[] reply) {
+        ensure(reply.length);
+        out.put(reply);
+    }
+
+    /**
+     * Writes an error. The message is cut after {@link #MAX_ERROR_LENGTH} bytes and line ends in it are replaced
+     * with spaces, since an error is a single line.
+     *
+     * @param message message of the error, starting with its code, e.g. {@code ERR syntax error}
+     */
+    public void error(String message) {
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_ERROR_LENGTH);
+        ensure(length + 3);
+        out.put((byte) '-');
+        for (int i = 0; i < length; i++)
+            out.put(bytes[i] == '\r' || bytes[i] == '\n' ? (byte) ' ' : bytes[i]);
+        out.put(CRLF);
+    }
+
+    /**
+     * Writes an integer.
+     *
+     * @param value value
+     */
+    public void integer(long value) {
+        ensure(MAX_NUMBER_LINE);
+        putNumberLine((byte) ':', value);
+    }
+
+    /**
+     * Writes the header of an array, to be followed by its elements.
+     *
+     * @param count number of elements
+     */
+    public void arrayHeader(int count) {
+        ensure(MAX_NUMBER_LINE);
+        putNumberLine((byte) '*', count);
+    }
+
+    /**
+     * Writes a null bulk string, the reply for a missing key.
+     */
+    public void nullBulk() {
+        raw(NULL_BULK);
+    }
+
+    /**
+     * Writes a bulk string.
+     *
+     * @param src    buffer holding the string, only read with absolute methods
+     * @param from   index of the first byte of the string
+     * @param length length of the string
+     */
+    public void bulk(ByteBuffer src, int from, int length) {
+        ensure(MAX_NUMBER_LINE);
+        putNumberLine((byte) '$', length);
+        while (length > 0) {
+            if (!out.hasRemaining()) flush();
+            int chunk = Math.min(length, out.remaining());
+            out.put(out.position(), src, from, chunk);
+            out.position(out.position() + chunk);
+            from += chunk;
+            length -= chunk;
+        }
+        ensure(CRLF.length);
+        out.put(CRLF);
+    }
+
+    /**
+     * Writes a value of the store as a bulk string.
+     *
+     * @param memory buffer holding the value
+     * @param offset index of the first byte of the value
+     * @param length length of the value
+     */
+    @Override
+    public void accept(ByteBuffer memory, int offset, int length) {
+        bulk(memory, offset, length);
+    }
+
+    /**
+     * Hands the encoded replies to the server.
+     */
+    public void flush() {
+        if (out.position() == 0) return;
+        server.reply(connectionId, out.flip());
+        out.clear();
+    }
+
+    /**
+     * Flushes the buffer unless it has room for the given number of bytes.
+     *
+     * @param length number of bytes about to be written
+     */
+    private void ensure(int length) {
+        if (out.remaining() < length) flush();
+    }
+
+    /**
+     * Writes a type byte, a decimal number and a line end without allocating.
+     *
+     * @param type  type byte of the reply
+     * @param value number
+     */
+    private void putNumberLine(byte type, long value) {
+        out.put(type);
+        if (value < 0) {
+            out.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                out.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII)).put(CRLF);
+                return;
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) digits++;
+        int end = out.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+        out.put(CRLF);
+    }
+}
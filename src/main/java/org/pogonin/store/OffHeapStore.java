@@ -0,0 +1,222 @@
+package org.pogonin.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Key-value store keeping its keys and values in direct memory, so a cache of many gigabytes doesn't
+ * lengthen garbage collection pauses.
+ * <p>
+ * Keys are spread by hash over a power-of-two number of {@link StoreSegment}s, each one locked on its own and
+ * allocating its entries from slabs of its own, up to an equal share of the memory limit. Keys and values
+ * are passed as regions of buffers, e.g. the inbound buffer of a connection, and copied straight into
+ * the slabs; values are read in place through a {@link ValueConsumer}. None of these operations allocates
+ * on the heap. An entry may expire at a given time, after which it no longer exists.
+ * A write that finds no memory left fails, there is no eviction.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public final class OffHeapStore {
+    /**
+     * Default number of segments.
+     */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * Default capacity of a slab, which bounds the size of an entry.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Segments of the store.
+     */
+    private final StoreSegment[] segments;
+
+    /**
+     * Shift moving the top bits of a hash, which pick the segment, to the bottom; the slot within a segment
+     * is picked by the bottom bits.
+     */
+    private final int segmentShift;
+
+    /**
+     * Maximum length of a key and its value together.
+     */
+    private final int maxEntrySize;
+
+    /**
+     * Creates a store with {@value #DEFAULT_SEGMENTS} segments and slabs of 4 MiB.
+     *
+     * @param maxMemory maximum number of bytes of direct memory for the entries
+     */
+    public OffHeapStore(long maxMemory) {
+        this(maxMemory, DEFAULT_SEGMENTS, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param maxMemory maximum number of bytes of direct memory for the entries, at least one slab per segment
+     * @param segments  number of segments, a power of two
+     * @param slabSize  capacity of a slab, a power of two, which bounds the size of an entry
+     */
+    public OffHeapStore(long maxMemory, int segments, int slabSize) {
+        if (Integer.bitCount(segments) != 1) throw new IllegalArgumentException("invalid segment count: " + segments);
+        this.segments = new StoreSegment[segments];
+        for (int i = 0; i < segments; i++)
+            this.segments[i] = new StoreSegment(slabSize, maxMemory / segments);
+        this.segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(segments);
+        this.maxEntrySize = slabSize - StoreSegment.HEADER;
+    }
+
+    /**
+     * Hands the value of a key to the consumer.
+     *
+     * @param key      buffer holding the key
+     * @param from     index of the first byte of the key
+     * @param to       index behind the last byte of the key
+     * @param consumer consumer of the value, called while the entry is locked
+     * @return {@code true} if the key exists
+     */
+    public boolean get(ByteBuffer key, int from, int to, ValueConsumer consumer) {
+        int hash = hash(key, from, to);
+        return segment(hash).get(key, from, to - from, hash, System.currentTimeMillis(), consumer);
+    }
+
+    /**
+     * Stores the value of a key, replacing the previous one and its expiry time.
+     *
+     * @param key       buffer holding the key
+     * @param keyFrom   index of the first byte of the key
+     * @param keyTo     index behind the last byte of the key
+     * @param value     buffer holding the value
+     * @param valueFrom index of the first byte of the value
+     * @param valueTo   index behind the last byte of the value
+     * @param expiresAt expiry time in milliseconds since the epoch, {@code 0} if it doesn't expire
+     * @return {@code false} if the entry is larger than {@link #getMaxEntrySize()} or there is no memory left,
+     * leaving the previous value in place
+     */
+    public boolean set(ByteBuffer key, int keyFrom, int keyTo, ByteBuffer value, int valueFrom, int valueTo, long expiresAt) {
+        int keyLength = keyTo - keyFrom;
+        int valueLength = valueTo - valueFrom;
+        if ((long) keyLength + valueLength > maxEntrySize) return false;
+        int hash = hash(key, keyFrom, keyTo);
+        return segment(hash).set(key, keyFrom, keyLength, value, valueFrom, valueLength, hash, expiresAt, System.currentTimeMillis());
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key  buffer holding the key
+     * @param from index of the first byte of the key
+     * @param to   index behind the last byte of the key
+     * @return {@code true} if the key existed
+     */
+    public boolean delete(ByteBuffer key, int from, int to) {
+        int hash = hash(key, from, to);
+        return segment(hash).delete(key, from, to - from, hash, System.currentTimeMillis());
+    }
+
+    /**
+     * Sets the time a key expires at. A time that has already passed removes the key.
+     *
+     * @param key       buffer holding the key
+     * @param from      index of the first byte of the key
+     * @param to        index behind the last byte of the key
+     * @param expiresAt expiry time in milliseconds since the epoch, {@code 0} to keep the key forever
+     * @return {@code true} if the key exists
+     */
+    public boolean expireAt(ByteBuffer key, int from, int to, long expiresAt) {
+        int hash = hash(key, from, to);
+        return segment(hash).expireAt(key, from, to - from, hash, expiresAt, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns a copy of the value of a key.
+     *
+     * @param key key
+     * @return value, {@code null} if the key doesn't exist
+     */
+    public byte[] get(byte[] key) {
+        var value = new byte[1][];
+        get(ByteBuffer.wrap(key), 0, key.length, (memory, offset, length) -> {
+            value[0] = new byte[length];
+            memory.get(offset, value[0]);
+        });
+        return value[0];
+    }
+
+    /**
+     * Stores the value of a key that doesn't expire.
+     *
+     * @param key   key
+     * @param value value
+     * @return {@code false} if there is no memory left for the entry
+     */
+    public boolean set(byte[] key, byte[] value) {
+        return set(ByteBuffer.wrap(key), 0, key.length, ByteBuffer.wrap(value), 0, value.length, 0);
+    }
+
+    /**
+     * Returns the maximum length of a key and its value together.
+     *
+     * @return length in bytes
+     */
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Returns the number of entries, including expired ones not removed yet.
+     *
+     * @return number of entries
+     */
+    public long size() {
+        long size = 0;
+        for (var segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Returns the direct memory taken by the entries, rounded up to the chunks holding them.
+     *
+     * @return bytes in use
+     */
+    public long usedMemory() {
+        long used = 0;
+        for (var segment : segments)
+            used += segment.usedBytes();
+        return used;
+    }
+
+    /**
+     * Returns the segment of a key.
+     *
+     * @param hash hash of the key
+     * @return segment
+     */
+    private StoreSegment segment(int hash) {
+        return segments[(hash >>> segmentShift) & (segments.length - 1)];
+    }
+
+    /**
+     * Hashes the bytes of a key and mixes the result with the finalizer of MurmurHash3,
+     * so both the segment and the slot bits are well spread.
+     *
+     * @param key  buffer holding the key
+     * @param from index of the first byte of the key
+     * @param to   index behind the last byte of the key
+     * @return hash
+     */
+    static int hash(ByteBuffer key, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++)
+            h = 31 * h + key.get(i);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
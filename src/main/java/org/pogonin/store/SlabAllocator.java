@@ -0,0 +1,164 @@
+package org.pogonin.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Allocator of chunks in large direct slabs, with power-of-two size classes.
+ * <p>
+ * Chunks are addressed by a {@code long} combining the index of the slab and the offset in it, so the owner
+ * keeps no object per chunk on the heap. Freed chunks are linked into a free list of their size class
+ * through their first bytes and reused before new space is carved from the current slab. Slabs are only
+ * added while the memory limit allows it and are never given back; like in memcached, space freed in one
+ * size class is not reused by another one.
+ * Not thread-safe; every {@link StoreSegment} owns an allocator of its own.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+final class SlabAllocator {
+    /**
+     * Binary logarithm of the smallest chunk, large enough to hold the link of a free list.
+     */
+    private static final int MIN_SHIFT = 4;
+
+    /**
+     * Address returned when no chunk can be allocated, and the end of every free list.
+     */
+    static final long NONE = -1;
+
+    /**
+     * Capacity of every slab, a power of two.
+     */
+    private final int slabSize;
+
+    /**
+     * Maximum number of slabs.
+     */
+    private final int maxSlabs;
+
+    /**
+     * Slabs allocated so far.
+     */
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    /**
+     * Head of the free list of every size class.
+     */
+    private final long[] freeLists;
+
+    /**
+     * Offset of the first byte of the last slab not handed out yet.
+     */
+    private int bumpOffset;
+
+    /**
+     * Capacity of all chunks handed out and not freed yet.
+     */
+    private long usedBytes;
+
+    /**
+     * Creates an allocator.
+     *
+     * @param slabSize  capacity of every slab, a power of two of at least 16 bytes, also the largest chunk
+     * @param maxMemory maximum capacity of all slabs, at least one slab
+     */
+    SlabAllocator(int slabSize, long maxMemory) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < 1 << MIN_SHIFT || maxMemory < slabSize)
+            throw new IllegalArgumentException("invalid slab size " + slabSize + " for " + maxMemory + " bytes");
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(maxMemory / slabSize, Integer.MAX_VALUE);
+        this.freeLists = new long[sizeClass(slabSize) + 1];
+        Arrays.fill(freeLists, NONE);
+        this.bumpOffset = slabSize;
+    }
+
+    /**
+     * Allocates a chunk.
+     *
+     * @param size minimum capacity of the chunk
+     * @return address of the chunk, {@link #NONE} if it is larger than a slab or the memory limit is reached
+     */
+    long allocate(int size) {
+        if (size > slabSize) return NONE;
+        int index = sizeClass(size);
+        int chunk = 1 << (index + MIN_SHIFT);
+        long address = freeLists[index];
+        if (address != NONE) {
+            freeLists[index] = slab(address).getLong(offset(address));
+        } else {
+            if (slabSize - bumpOffset < chunk) {
+                if (slabs.size() == maxSlabs) return NONE;
+                slabs.add(ByteBuffer.allocateDirect(slabSize));
+                bumpOffset = 0;
+            }
+            address = (long) (slabs.size() - 1) << 32 | bumpOffset;
+            bumpOffset += chunk;
+        }
+        usedBytes += chunk;
+        return address;
+    }
+
+    /**
+     * Frees a chunk.
+     *
+     * @param address address of the chunk
+     * @param size    size it was allocated with
+     */
+    void free(long address, int size) {
+        int index = sizeClass(size);
+        slab(address).putLong(offset(address), freeLists[index]);
+        freeLists[index] = address;
+        usedBytes -= 1L << (index + MIN_SHIFT);
+    }
+
+    /**
+     * Returns the slab holding a chunk.
+     *
+     * @param address address of the chunk
+     * @return slab
+     */
+    ByteBuffer slab(long address) {
+        return slabs.get((int) (address >>> 32));
+    }
+
+    /**
+     * Returns the offset of a chunk in its slab.
+     *
+     * @param address address of the chunk
+     * @return offset
+     */
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Returns the capacity of all chunks handed out and not freed yet.
+     *
+     * @return bytes in use
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the capacity of all slabs.
+     *
+     * @return reserved bytes
+     */
+    long reservedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    /**
+     * Returns the size class of chunks of the given size.
+     *
+     * @param size chunk size
+     * @return index of the size class
+     */
+    private static int sizeClass(int size) {
+        return Math.max(Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT, 0);
+    }
+}
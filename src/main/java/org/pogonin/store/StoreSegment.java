@@ -0,0 +1,347 @@
+package org.pogonin.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Segment of an {@link OffHeapStore}: an open-addressing hash table whose entries live in the slabs
+ * of its own {@link SlabAllocator}.
+ * <p>
+ * Every entry is one chunk holding the length of the key, the length of the value, the key and the value.
+ * The table itself only keeps primitive arrays on the heap: the address of the chunk, the hash of the key and
+ * the expiry time of every slot, so the garbage collector never traces the entries. Collisions are resolved
+ * with linear probing and removals shift the following entries back, so no tombstones accumulate.
+ * Expired entries are removed when they are looked up, a few more on every write, and all of them once memory
+ * runs out. All methods are {@code synchronized}; the store spreads the keys over its segments to keep
+ * contention low.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+final class StoreSegment {
+    /**
+     * Bytes in front of the key of every entry: the length of the key and the length of the value.
+     */
+    static final int HEADER = 2 * Integer.BYTES;
+
+    /**
+     * Initial number of slots of the table.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Number of slots checked for expired entries on every write.
+     */
+    private static final int SWEEP_SLOTS = 2;
+
+    /**
+     * Allocator of the entries.
+     */
+    private final SlabAllocator allocator;
+
+    /**
+     * Address of the entry of every slot, {@link SlabAllocator#NONE} for an empty slot.
+     */
+    private long[] addresses;
+
+    /**
+     * Hash of the key of every slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Expiry time of the entry of every slot in milliseconds since the epoch, {@code 0} if it doesn't expire.
+     */
+    private long[] expiries;
+
+    /**
+     * Number of slots minus one; the number of slots is a power of two.
+     */
+    private int mask;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Slot checked next for an expired entry on a write.
+     */
+    private int sweepCursor;
+
+    /**
+     * Creates a segment.
+     *
+     * @param slabSize  capacity of every slab
+     * @param maxMemory maximum capacity of all slabs of the segment
+     */
+    StoreSegment(int slabSize, long maxMemory) {
+        this.allocator = new SlabAllocator(slabSize, maxMemory);
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Hands the value of a key to the consumer.
+     *
+     * @param key      buffer holding the key
+     * @param from     index of the first byte of the key
+     * @param length   length of the key
+     * @param hash     hash of the key
+     * @param now      current time in milliseconds since the epoch
+     * @param consumer consumer of the value
+     * @return {@code true} if the key exists
+     */
+    synchronized boolean get(ByteBuffer key, int from, int length, int hash, long now, ValueConsumer consumer) {
+        int slot = find(key, from, length, hash, now);
+        if (slot < 0) return false;
+        long address = addresses[slot];
+        var slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        consumer.accept(slab, offset + HEADER + length, slab.getInt(offset + Integer.BYTES));
+        return true;
+    }
+
+    /**
+     * Stores the value of a key, replacing the previous one.
+     *
+     * @param key         buffer holding the key
+     * @param keyFrom     index of the first byte of the key
+     * @param keyLength   length of the key
+     * @param value       buffer holding the value
+     * @param valueFrom   index of the first byte of the value
+     * @param valueLength length of the value
+     * @param hash        hash of the key
+     * @param expiresAt   expiry time in milliseconds since the epoch, {@code 0} if it doesn't expire
+     * @param now         current time in milliseconds since the epoch
+     * @return {@code false} if there is no memory left for the entry
+     */
+    synchronized boolean set(ByteBuffer key, int keyFrom, int keyLength, ByteBuffer value, int valueFrom, int valueLength,
+                             int hash, long expiresAt, long now) {
+        sweep(now);
+        int entrySize = HEADER + keyLength + valueLength;
+        long address = allocator.allocate(entrySize);
+        if (address == SlabAllocator.NONE && removeExpired(now) > 0) address = allocator.allocate(entrySize);
+        if (address == SlabAllocator.NONE) return false;
+
+        var slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        slab.putInt(offset, keyLength);
+        slab.putInt(offset + Integer.BYTES, valueLength);
+        slab.put(offset + HEADER, key, keyFrom, keyLength);
+        slab.put(offset + HEADER + keyLength, value, valueFrom, valueLength);
+
+        int slot = find(key, keyFrom, keyLength, hash, now);
+        if (slot >= 0) {
+            free(addresses[slot]);
+        } else {
+            if (size + 1 > (mask + 1) / 4 * 3) allocateTable((mask + 1) * 2);
+            slot = hash & mask;
+            while (addresses[slot] != SlabAllocator.NONE) slot = slot + 1 & mask;
+            hashes[slot] = hash;
+            size++;
+        }
+        addresses[slot] = address;
+        expiries[slot] = expiresAt;
+        return true;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key    buffer holding the key
+     * @param from   index of the first byte of the key
+     * @param length length of the key
+     * @param hash   hash of the key
+     * @param now    current time in milliseconds since the epoch
+     * @return {@code true} if the key existed
+     */
+    synchronized boolean delete(ByteBuffer key, int from, int length, int hash, long now) {
+        int slot = find(key, from, length, hash, now);
+        if (slot < 0) return false;
+        removeAt(slot);
+        return true;
+    }
+
+    /**
+     * Sets the expiry time of a key.
+     *
+     * @param key       buffer holding the key
+     * @param from      index of the first byte of the key
+     * @param length    length of the key
+     * @param hash      hash of the key
+     * @param expiresAt expiry time in milliseconds since the epoch, {@code 0} if it doesn't expire
+     * @param now       current time in milliseconds since the epoch
+     * @return {@code true} if the key exists
+     */
+    synchronized boolean expireAt(ByteBuffer key, int from, int length, int hash, long expiresAt, long now) {
+        int slot = find(key, from, length, hash, now);
+        if (slot < 0) return false;
+        if (expiresAt != 0 && expiresAt <= now) removeAt(slot);
+        else expiries[slot] = expiresAt;
+        return true;
+    }
+
+    /**
+     * Returns the number of entries, including expired ones not removed yet.
+     *
+     * @return number of entries
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the capacity of the chunks holding the entries.
+     *
+     * @return bytes in use
+     */
+    synchronized long usedBytes() {
+        return allocator.usedBytes();
+    }
+
+    /**
+     * Finds the slot of a key, removing its entry if it expired.
+     *
+     * @param key    buffer holding the key
+     * @param from   index of the first byte of the key
+     * @param length length of the key
+     * @param hash   hash of the key
+     * @param now    current time in milliseconds since the epoch
+     * @return slot of the key, {@code -1} if it doesn't exist
+     */
+    private int find(ByteBuffer key, int from, int length, int hash, long now) {
+        for (int slot = hash & mask; addresses[slot] != SlabAllocator.NONE; slot = slot + 1 & mask) {
+            if (hashes[slot] != hash) continue;
+            long address = addresses[slot];
+            var slab = allocator.slab(address);
+            int offset = SlabAllocator.offset(address);
+            if (slab.getInt(offset) != length || !regionEquals(slab, offset + HEADER, key, from, length)) continue;
+            if (isExpired(slot, now)) {
+                removeAt(slot);
+                return -1;
+            }
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes expired entries from the next {@link #SWEEP_SLOTS} slots.
+     *
+     * @param now current time in milliseconds since the epoch
+     */
+    private void sweep(long now) {
+        for (int i = 0; i < SWEEP_SLOTS; i++) {
+            if (isExpired(sweepCursor, now)) removeAt(sweepCursor);
+            else sweepCursor = sweepCursor + 1 & mask;
+        }
+    }
+
+    /**
+     * Removes every expired entry.
+     *
+     * @param now current time in milliseconds since the epoch
+     * @return number of removed entries
+     */
+    private int removeExpired(long now) {
+        int removed = 0;
+        for (int slot = 0; slot <= mask; ) {
+            if (isExpired(slot, now)) {
+                removeAt(slot);
+                removed++;
+            } else {
+                slot++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks whether the slot holds an expired entry.
+     *
+     * @param slot slot to check
+     * @param now  current time in milliseconds since the epoch
+     * @return {@code true} if the entry expired
+     */
+    private boolean isExpired(int slot, long now) {
+        return addresses[slot] != SlabAllocator.NONE && expiries[slot] != 0 && expiries[slot] <= now;
+    }
+
+    /**
+     * Removes the entry of a slot and shifts the entries probing past it back, so lookups keep finding them.
+     *
+     * @param slot slot of the entry
+     */
+    private void removeAt(int slot) {
+        free(addresses[slot]);
+        size--;
+        int hole = slot;
+        for (int i = slot + 1 & mask; addresses[i] != SlabAllocator.NONE; i = i + 1 & mask) {
+            int home = hashes[i] & mask;
+            if ((i - home & mask) < (i - hole & mask)) continue;
+            addresses[hole] = addresses[i];
+            hashes[hole] = hashes[i];
+            expiries[hole] = expiries[i];
+            hole = i;
+        }
+        addresses[hole] = SlabAllocator.NONE;
+        expiries[hole] = 0;
+    }
+
+    /**
+     * Returns the chunk of an entry to the allocator.
+     *
+     * @param address address of the entry
+     */
+    private void free(long address) {
+        var slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        allocator.free(address, HEADER + slab.getInt(offset) + slab.getInt(offset + Integer.BYTES));
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity and inserts the entries of the old one.
+     *
+     * @param capacity number of slots, a power of two
+     */
+    private void allocateTable(int capacity) {
+        var oldAddresses = addresses;
+        var oldHashes = hashes;
+        var oldExpiries = expiries;
+        addresses = new long[capacity];
+        Arrays.fill(addresses, SlabAllocator.NONE);
+        hashes = new int[capacity];
+        expiries = new long[capacity];
+        mask = capacity - 1;
+        sweepCursor = 0;
+        if (oldAddresses == null) return;
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] == SlabAllocator.NONE) continue;
+            int slot = oldHashes[i] & mask;
+            while (addresses[slot] != SlabAllocator.NONE) slot = slot + 1 & mask;
+            addresses[slot] = oldAddresses[i];
+            hashes[slot] = oldHashes[i];
+            expiries[slot] = oldExpiries[i];
+        }
+    }
+
+    /**
+     * Compares two regions of buffers, eight bytes at a time where both use the same byte order.
+     *
+     * @param a      first buffer
+     * @param aFrom  index of the first byte in the first buffer
+     * @param b      second buffer
+     * @param bFrom  index of the first byte in the second buffer
+     * @param length length of the regions
+     * @return {@code true} if they are equal
+     */
+    private static boolean regionEquals(ByteBuffer a, int aFrom, ByteBuffer b, int bFrom, int length) {
+        int i = 0;
+        if (a.order() == b.order())
+            for (; i + Long.BYTES <= length; i += Long.BYTES)
+                if (a.getLong(aFrom + i) != b.getLong(bFrom + i)) return false;
+        for (; i < length; i++)
+            if (a.get(aFrom + i) != b.get(bFrom + i)) return false;
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package org.pogonin.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives a value read from an {@link OffHeapStore} in place, while the entry is locked.
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+@FunctionalInterface
+public interface ValueConsumer {
+    /**
+     * Called with the bytes of the value. The memory belongs to the store: it must only be read with absolute
+     * methods, not modified and not kept after the call; the call must not touch the store.
+     *
+     * @param memory buffer holding the value
+     * @param offset index of the first byte of the value
+     * @param length length of the value
+     */
+    void accept(ByteBuffer memory, int offset, int length);
+}
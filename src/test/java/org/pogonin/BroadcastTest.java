@@ -0,0 +1,60 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
+
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BroadcastTest {
+
+    @Test
+    void testBroadcastSharesOnePayloadAcrossClients() throws Exception {
+        try (var running = RunningServer.start(ServerConfig.defaults());
+             Socket clientSocket1 = running.connect();
+             Socket clientSocket2 = running.connect()) {
+            var server = running.server();
+            running.awaitAccepted(clientSocket1);
+            long id2 = running.awaitAccepted(clientSocket2);
+
+
+            boolean broadcastResult = server.broadcast("all".getBytes(StandardCharsets.UTF_8));
+            byte[] all1 = clientSocket1.getInputStream().readNBytes(3);
+            byte[] all2 = clientSocket2.getInputStream().readNBytes(3);
+            int scheduled = server.sendToAll(new long[]{id2, Long.MAX_VALUE}, "one".getBytes(StandardCharsets.UTF_8));
+            byte[] one = clientSocket2.getInputStream().readNBytes(3);
+            RunningServer.await(() -> server.getBufferPool().getBytesOutstanding() == 0, "the shared payload to be released");
+
+
+            assertTrue(broadcastResult, "The broadcast should have been scheduled on every loop");
+            assertEquals("all", new String(all1, StandardCharsets.UTF_8));
+            assertEquals("all", new String(all2, StandardCharsets.UTF_8));
+            assertEquals(1, scheduled, "Only the known connection should be counted");
+            assertEquals("one", new String(one, StandardCharsets.UTF_8));
+            assertEquals(0, clientSocket1.getInputStream().available(), "A client that was not addressed must get nothing");
+        }
+    }
+
+    @Test
+    void testEmptyBroadcastSucceeds() throws Exception {
+        try (var running = RunningServer.start(ServerConfig.defaults());
+             Socket clientSocket = running.connect()) {
+            var server = running.server();
+            long id = running.awaitAccepted(clientSocket);
+
+
+            boolean broadcastResult = server.broadcast(new byte[0]);
+            int scheduled = server.sendToAll(new long[]{id}, new byte[0]);
+            server.broadcast("next".getBytes(StandardCharsets.UTF_8));
+            byte[] next = clientSocket.getInputStream().readNBytes(4);
+            RunningServer.await(() -> server.getBufferPool().getBytesOutstanding() == 0, "the shared payloads to be released");
+
+
+            assertTrue(broadcastResult, "An empty broadcast should have been scheduled");
+            assertEquals(1, scheduled, "An empty payload should have been scheduled for the connection");
+            assertEquals("next", new String(next, StandardCharsets.UTF_8), "The client must still get later broadcasts");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.model.Message;
+
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionIdTest {
+
+    @Test
+    void testServerRepliesByConnectionId() throws Exception {
+        try (var running = RunningServer.start(ServerConfig.defaults());
+             Socket clientSocket = running.connect()) {
+            var server = running.server();
+            String message = "Hello, Id!";
+            byte[] buffer = new byte[1024];
+
+
+            clientSocket.getOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
+            Message receivedMsg = running.awaitMessage();
+            boolean sendResult = server.send(receivedMsg.getConnectionId(), receivedMsg.getMessage());
+            int bytesRead = clientSocket.getInputStream().read(buffer);
+
+
+            assertTrue(receivedMsg.getConnectionId() > 0, "The message should carry the id of its connection");
+            assertTrue(sendResult, "The server should have scheduled the message to be sent");
+            assertEquals(message, new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
+            assertFalse(server.send(Long.MAX_VALUE, buffer), "A send to an unknown id must be rejected");
+        }
+    }
+}
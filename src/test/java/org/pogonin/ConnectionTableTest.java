@@ -0,0 +1,61 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTableTest {
+
+    @Test
+    void testIdsGrowMonotonically() {
+        var table = new ConnectionTable(4);
+
+
+        var first = table.add(id -> new Connection(id, null, null, null));
+        var second = table.add(id -> new Connection(id, null, null, null));
+        table.remove(first);
+        var third = table.add(id -> new Connection(id, null, null, null));
+
+
+        assertTrue(first.getId() > 0, "ids must be positive");
+        assertTrue(second.getId() > first.getId(), "ids must grow in the order connections are added");
+        assertTrue(third.getId() > second.getId(), "ids must grow even when a slot is reused");
+    }
+
+    @Test
+    void testRemovedIdIsNotFoundAfterSlotReuse() {
+        var table = new ConnectionTable(1);
+        var first = table.add(id -> new Connection(id, null, null, null));
+
+
+        boolean removed = table.remove(first);
+        boolean removedTwice = table.remove(first);
+        var second = table.add(id -> new Connection(id, null, null, null));
+
+
+        assertTrue(removed);
+        assertFalse(removedTwice, "a connection can only be removed once");
+        assertNull(table.get(first.getId()), "the id of a removed connection must not resolve to the new one");
+        assertSame(second, table.get(second.getId()));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void testTableGrowsBeyondInitialCapacity() {
+        var table = new ConnectionTable(2);
+        var connections = new ArrayList<Connection>();
+
+
+        for (int i = 0; i < 1000; i++)
+            connections.add(table.add(id -> new Connection(id, null, null, null)));
+
+
+        for (var connection : connections)
+            assertSame(connection, table.get(connection.getId()));
+        assertEquals(1000, table.size());
+        assertNull(table.get(0));
+        assertNull(table.get(Long.MAX_VALUE));
+    }
+}
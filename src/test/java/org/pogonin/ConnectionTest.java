@@ -0,0 +1,77 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pogonin.buffer.ReceiveSizePredictor;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTest {
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private SocketChannel channel;
+    private Selector selector;
+    private Connection connection;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open();
+        client.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        client.connect(listener.getLocalAddress());
+        channel = listener.accept();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+        selector = Selector.open();
+        connection = new Connection(1, client.getLocalAddress(), channel, null);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        selector.close();
+        channel.close();
+        client.close();
+        listener.close();
+    }
+
+    @Test
+    void testWriteInterestIsAppliedOnRegistration() throws Exception {
+        connection.queue(ByteBuffer.wrap(new byte[8 * 1024 * 1024]));
+        connection.flush(new ByteBuffer[64], Long.MAX_VALUE);
+        assertTrue(connection.hasPendingWrites(), "The socket must not accept the whole payload at once");
+
+
+        var key = register();
+
+
+        assertTrue(connection.isWriteInterest(), "Bytes left before registration must keep write interest");
+        assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, key.interestOps(),
+                "The new key must wait for the channel to become writable");
+    }
+
+    @Test
+    void testNoWriteInterestOnRegistrationWithoutPendingBytes() throws Exception {
+        var key = register();
+
+
+        assertFalse(connection.isWriteInterest());
+        assertEquals(SelectionKey.OP_READ, key.interestOps(), "An idle connection must only wait for reads");
+    }
+
+    private SelectionKey register() throws Exception {
+        var key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connection.registered(key, new ReceiveSizePredictor(64, 1024, 65536), null, null);
+        return key;
+    }
+}
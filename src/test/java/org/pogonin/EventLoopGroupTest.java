@@ -0,0 +1,38 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLoopGroupTest {
+
+    @Test
+    void testReusePortSpreadsConnectionsAcrossLoops() throws Exception {
+        int loops = 4;
+        int connections = 200;
+        List<Socket> clientSockets = new ArrayList<>();
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(loops).reusePort(true).build())) {
+            var server = running.server();
+
+
+            for (int i = 0; i < connections; i++)
+                clientSockets.add(running.connect());
+            RunningServer.await(() -> Arrays.stream(server.eventLoopConnections()).sum() == connections,
+                    "every connection to be accepted");
+
+
+            int[] perLoop = server.eventLoopConnections();
+            assertEquals(loops, perLoop.length, "Every loop should report its connections");
+            for (int count : perLoop)
+                assertTrue(count >= connections / loops / 4, "Every loop should get a reasonable share: " + Arrays.toString(perLoop));
+        } finally {
+            for (Socket clientSocket : clientSockets) clientSocket.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.model.Message;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlowControlTest {
+
+    @Test
+    void testInboundBackpressurePausesAndResumesReading() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .inboundQueueCapacity(8)
+                .inboundHighWaterMark(6)
+                .inboundLowWaterMark(2)
+                .build();
+        try (var running = RunningServer.start(config);
+             Socket clientSocket = running.connect()) {
+            var server = running.server();
+            OutputStream out = clientSocket.getOutputStream();
+            int chunks = 100;
+            byte[] chunk = new byte[100];
+
+
+            for (int i = 0; i < chunks; i++) {
+                out.write(chunk);
+                out.flush();
+                Thread.sleep(1);
+            }
+            RunningServer.await(() -> server.getMetrics().getReadPauses().sum() > 0,
+                    "reading to be paused once the inbound ring filled up");
+            int[] received = new int[1];
+            RunningServer.await(() -> {
+                Message message;
+                while ((message = server.getMessages().poll()) != null)
+                    received[0] += message.getMessage().length;
+                return received[0] == chunks * chunk.length;
+            }, "every chunk to be received");
+
+
+            assertTrue(server.getMetrics().getReadResumes().sum() > 0, "Reading should have been resumed once the ring drained");
+            assertEquals(chunks * chunk.length, received[0], "No received bytes may be lost while reading is paused");
+        }
+    }
+
+    @Test
+    void testServerRejectsInvalidInboundFlowControl() {
+        var invertedWatermarks = ServerConfig.builder().inboundHighWaterMark(100).inboundLowWaterMark(100).build();
+        var lowAboveCapacity = ServerConfig.builder().inboundQueueCapacity(8).build();
+        var noCapacity = ServerConfig.builder().inboundQueueCapacity(0).build();
+        var negativeLoops = ServerConfig.builder().eventLoops(-1).build();
+        var negativeHandlerThreads = ServerConfig.builder().handlerThreads(-1).build();
+
+
+        for (var config : new ServerConfig[]{invertedWatermarks, lowAboveCapacity, noCapacity, negativeLoops, negativeHandlerThreads})
+            assertThrows(IllegalArgumentException.class, () -> new Server(InetAddress.getLoopbackAddress(), 0, config));
+        assertDoesNotThrow(() -> new Server(InetAddress.getLoopbackAddress(), 0,
+                ServerConfig.builder().inboundQueueCapacity(8).inboundHighWaterMark(6).inboundLowWaterMark(2).build()));
+    }
+
+    @Test
+    void testServerRejectsInvalidOutboundWatermarks() {
+        var invertedWatermarks = ServerConfig.builder().outboundHighWaterMark(1024).outboundLowWaterMark(1024).build();
+        var negativeLowWaterMark = ServerConfig.builder().outboundLowWaterMark(-1).build();
+        var highAboveLimit = ServerConfig.builder().maxOutboundBytes(32 * 1024).build();
+
+
+        for (var config : new ServerConfig[]{invertedWatermarks, negativeLowWaterMark, highAboveLimit})
+            assertThrows(IllegalArgumentException.class, () -> new Server(InetAddress.getLoopbackAddress(), 0, config));
+        assertDoesNotThrow(() -> new Server(InetAddress.getLoopbackAddress(), 0,
+                ServerConfig.builder().maxOutboundBytes(64 * 1024).build()));
+    }
+
+    @Test
+    void testWritabilityFollowsOutboundWatermarks() throws Exception {
+        var changes = new ConcurrentLinkedQueue<Boolean>();
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new ServerHandler() {
+            @Override
+            public void onWritabilityChanged(long connectionId, SocketAddress client, boolean writable) {
+                changes.add(writable);
+            }
+        });
+             Socket clientSocket = running.connect()) {
+            var server = running.server();
+            SocketAddress clientAddress = clientSocket.getLocalSocketAddress();
+            byte[] payload = new byte[8 * 1024 * 1024];
+            running.awaitAccepted(clientSocket);
+
+
+            var written = server.sendAsync(clientAddress, payload);
+            RunningServer.await(() -> !changes.isEmpty(), "the client to become not writable");
+            boolean writableWhileBackedUp = server.isWritable(clientAddress);
+            boolean doneWhileBackedUp = written.isDone();
+            clientSocket.getInputStream().readNBytes(payload.length);
+            written.get(5, TimeUnit.SECONDS);
+            RunningServer.await(() -> changes.size() == 2, "the client to become writable again");
+
+
+            assertFalse(writableWhileBackedUp, "A client that doesn't read must not be writable");
+            assertFalse(doneWhileBackedUp, "The send must not complete before its bytes were written");
+            assertTrue(server.isWritable(clientAddress), "The client must be writable again once it has read everything");
+            assertEquals(List.of(false, true), new ArrayList<>(changes), "Both writability changes should have been reported");
+            var unknown = server.sendAsync(new InetSocketAddress("localhost", 1), payload);
+            assertThrows(ExecutionException.class, unknown::get, "A send to an unknown client must fail");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.codec.BinaryMessage;
+import org.pogonin.codec.BinaryMessageWriter;
+import org.pogonin.codec.DelimiterFrameDecoder;
+import org.pogonin.codec.LengthFieldFrameDecoder;
+import org.pogonin.codec.LengthFieldFrameEncoder;
+import org.pogonin.codec.VarintFrameDecoder;
+import org.pogonin.codec.VarintFrameEncoder;
+import org.pogonin.config.MemoryMode;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.BinaryMessageHandler;
+import org.pogonin.handler.ServerHandler;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FramedServerTest {
+
+    @Test
+    void testLengthFieldFramesAreDeliveredOneByOne() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .frameDecoder(() -> new LengthFieldFrameDecoder(1024))
+                .frameEncoder(new LengthFieldFrameEncoder())
+                .build();
+        var frames = new ConcurrentLinkedQueue<String>();
+        try (var running = RunningServer.start(config, server -> new ServerHandler() {
+            @Override
+            public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+                var text = StandardCharsets.UTF_8.decode(data).toString();
+                frames.add(text);
+                server.send(connectionId, text.toUpperCase().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+             Socket clientSocket = running.connect()) {
+            var out = clientSocket.getOutputStream();
+            var stream = ByteBuffer.allocate(64).putInt(1).put((byte) 'a').putInt(2).put("bc".getBytes(StandardCharsets.UTF_8))
+                    .putInt(3).put("def".getBytes(StandardCharsets.UTF_8)).flip();
+            var bytes = new byte[stream.remaining()];
+            stream.get(bytes);
+
+
+            out.write(bytes, 0, 7);
+            out.flush();
+            RunningServer.await(() -> !frames.isEmpty(), "the first frame");
+            out.write(bytes, 7, bytes.length - 7);
+            var replies = ByteBuffer.wrap(clientSocket.getInputStream().readNBytes(bytes.length));
+
+
+            assertEquals(List.of("a", "bc", "def"), new ArrayList<>(frames), "Every frame must be delivered exactly once");
+            assertEquals(1, replies.getInt(), "Replies must be framed with their length");
+            assertEquals('A', replies.get());
+            assertEquals(2, replies.getInt());
+        }
+    }
+
+    @Test
+    void testZeroLengthFrameIsTakenAsPooledMessage() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .memoryMode(MemoryMode.CONNECTION_ARENA)
+                .frameDecoder(() -> new LengthFieldFrameDecoder(1024))
+                .frameEncoder(new LengthFieldFrameEncoder())
+                .build();
+        var lengths = new ConcurrentLinkedQueue<Integer>();
+        try (var running = RunningServer.start(config, server -> new ServerHandler() {
+            @Override
+            public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+                var message = server.takeMessage(connectionId, data);
+                lengths.add(message.getLength());
+                server.send(connectionId, message);
+            }
+        });
+             Socket clientSocket = running.connect()) {
+            var stream = ByteBuffer.allocate(10).putInt(0).putInt(2).put("ok".getBytes(StandardCharsets.UTF_8)).flip();
+            var bytes = new byte[stream.remaining()];
+            stream.get(bytes);
+
+
+            clientSocket.getOutputStream().write(bytes);
+            var replies = clientSocket.getInputStream().readNBytes(bytes.length);
+
+
+            assertEquals(List.of(0, 2), new ArrayList<>(lengths), "An empty frame must be delivered like any other");
+            assertArrayEquals(bytes, replies, "Both frames must be echoed and the connection must stay open");
+        }
+    }
+
+    @Test
+    void testBinaryMessagesAreReadFromTheFlyweight() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .frameDecoder(() -> new VarintFrameDecoder(1024))
+                .frameEncoder(new VarintFrameEncoder())
+                .build();
+        var samples = new ConcurrentLinkedQueue<String>();
+        var flyweights = new ConcurrentLinkedQueue<BinaryMessage>();
+        try (var running = RunningServer.start(config, server -> new BinaryMessageHandler() {
+            @Override
+            protected void onBinaryMessage(long connectionId, SocketAddress client, BinaryMessage message) {
+                flyweights.add(message);
+                var sample = new StringBuilder();
+                while (message.nextField())
+                    sample.append(message.fieldNumber() == 1 ? message.stringValue() : "=" + message.longValue());
+                samples.add(sample.toString());
+            }
+        });
+             Socket clientSocket = running.connect()) {
+            var stream = ByteBuffer.allocate(64);
+            var payload = ByteBuffer.allocate(32);
+            var writer = new BinaryMessageWriter();
+            for (int i = 0; i < 3; i++) {
+                writer.wrap(payload.clear()).writeString(1, "m" + i).writeVarint(2, 1000L * i);
+                payload.flip();
+                new VarintFrameEncoder().writeHeader(payload.remaining(), stream);
+                stream.put(payload);
+            }
+
+
+            clientSocket.getOutputStream().write(stream.array(), 0, stream.position());
+            RunningServer.await(() -> samples.size() == 3, "every message");
+
+
+            assertEquals(List.of("m0=0", "m1=1000", "m2=2000"), new ArrayList<>(samples), "Every message must be read from its frame");
+            assertEquals(1, flyweights.stream().distinct().count(), "One flyweight must serve every message of the loop");
+        }
+    }
+
+    @Test
+    void testDecoderWhoseFramesExceedTheReadBufferIsRejected() {
+        var builder = ServerConfig.builder().maxReadBufferSize(1024 * 1024);
+        var lengthField = builder.frameDecoder(() -> new LengthFieldFrameDecoder(1024 * 1024)).build();
+        var varint = builder.frameDecoder(() -> new VarintFrameDecoder(1024 * 1024 - 1)).build();
+        var lines = builder.frameDecoder(() -> DelimiterFrameDecoder.lines(1024 * 1024 - 2)).build();
+
+
+        var linesServer = new Server(null, 0, lines);
+
+
+        assertSame(lines, linesServer.getConfig(), "A line and its CRLF fitting the read buffer must be accepted");
+        assertThrows(IllegalArgumentException.class, () -> new Server(null, 0, lengthField),
+                "A frame that can't fit the read buffer together with its length field must be refused");
+        assertThrows(IllegalArgumentException.class, () -> new Server(null, 0, varint),
+                "A frame that can't fit the read buffer together with its length field must be refused");
+    }
+
+    @Test
+    void testFrameThatCannotFitTheReadBufferClosesTheConnection() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .readBufferSize(1024)
+                .maxReadBufferSize(4096)
+                .frameDecoder(() -> in -> null)
+                .build();
+        try (var running = RunningServer.start(config);
+             Socket clientSocket = running.connect()) {
+            var clientAddress = clientSocket.getLocalSocketAddress();
+
+
+            clientSocket.getOutputStream().write(new byte[8192]);
+            RunningServer.await(() -> running.server().getDisconnectedClientsEvent().contains(clientAddress),
+                    "the client to be disconnected");
+
+
+            assertTrue(running.server().getMessages().isEmpty(), "No frame may be delivered");
+            assertFalse(running.server().getClients().containsKey(clientAddress), "The connection must be closed");
+        }
+    }
+}
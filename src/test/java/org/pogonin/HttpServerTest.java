@@ -0,0 +1,86 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.codec.LengthFieldFrameDecoder;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.http.HttpHandler;
+import org.pogonin.http.HttpRequest;
+import org.pogonin.http.HttpResponse;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpServerTest {
+
+    @Test
+    void testHttpPipelinedRequestsShareOneWriteAndCloseEndsConnection() throws Exception {
+        var ok = HttpResponse.of(200, "ok");
+        var echo = HttpResponse.template(200, "text/plain");
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new HttpHandler(server) {
+            @Override
+            protected void onRequest(long connectionId, HttpRequest request) {
+                if (request.targetEquals("/health".getBytes(StandardCharsets.US_ASCII)))
+                    respond(connectionId, request, ok);
+                else if (request.targetStartsWith("/echo/".getBytes(StandardCharsets.US_ASCII)))
+                    respond(connectionId, request, echo, ByteBuffer.wrap(request.target().substring(6).getBytes(StandardCharsets.US_ASCII)));
+            }
+        });
+             Socket clientSocket = running.connect()) {
+            var metrics = running.server().getMetrics();
+            var requests = "GET /health HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "GET /echo/hi HTTP/1.1\r\n\r\n"
+                    + "GET /missing HTTP/1.1\r\nConnection: close\r\n\r\n";
+            long writesBefore = metrics.getWriteCalls().sum();
+
+
+            clientSocket.getOutputStream().write(requests.getBytes(StandardCharsets.US_ASCII));
+            var responses = new String(clientSocket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            long writes = metrics.getWriteCalls().sum() - writesBefore;
+
+
+            assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: 2\r\n\r\nok"
+                    + "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n\r\nhi"
+                    + "HTTP/1.1 404 Not Found\r\nContent-Type: text/plain; charset=utf-8\r\nConnection: close\r\n"
+                    + "Content-Length: 9\r\n\r\nNot Found", responses, "Pipelined requests must be answered in order");
+            assertEquals(1, writes, "Responses to one read must leave in one gathering write");
+        }
+    }
+
+    @Test
+    void testHttpHandlerRejectsConfigurationsThatLoseRequests() {
+        var threaded = new Server(InetAddress.getLoopbackAddress(), 0, ServerConfig.builder().handlerThreads(2).build());
+        var framed = new Server(InetAddress.getLoopbackAddress(), 0,
+                ServerConfig.builder().frameDecoder(() -> new LengthFieldFrameDecoder(1024)).build());
+        var small = new Server(InetAddress.getLoopbackAddress(), 0, ServerConfig.builder().maxReadBufferSize(64 * 1024).build());
+
+
+        assertThrows(IllegalArgumentException.class, () -> new NotFoundHandler(threaded),
+                "Copies handed to handler threads can't keep an incomplete request");
+        assertThrows(IllegalArgumentException.class, () -> new NotFoundHandler(framed),
+                "Frames would hide the bytes as they were read");
+        assertThrows(IllegalArgumentException.class, () -> new NotFoundHandler(small, 8 * 1024, 64 * 1024),
+                "Requests within the limits must fit the read buffer");
+        assertDoesNotThrow(() -> new NotFoundHandler(small, 8 * 1024, 56 * 1024));
+    }
+
+    /**
+     * Handler answering every request with 404.
+     */
+    private static final class NotFoundHandler extends HttpHandler {
+        NotFoundHandler(Server server) {
+            super(server);
+        }
+
+        NotFoundHandler(Server server, int maxHeaderBytes, int maxContentLength) {
+            super(server, maxHeaderBytes, maxContentLength);
+        }
+
+        @Override
+        protected void onRequest(long connectionId, HttpRequest request) {
+        }
+    }
+}
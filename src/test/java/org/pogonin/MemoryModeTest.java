@@ -0,0 +1,33 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.MemoryMode;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.model.Message;
+
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryModeTest {
+
+    @Test
+    void testConnectionArenaModeExchangesMessages() throws Exception {
+        try (var running = RunningServer.start(ServerConfig.builder().memoryMode(MemoryMode.CONNECTION_ARENA).build());
+             Socket clientSocket = running.connect()) {
+            String message = "Hello, Arena!";
+            byte[] buffer = new byte[1024];
+
+
+            clientSocket.getOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
+            Message receivedMsg = running.awaitMessage();
+            running.server().send(receivedMsg.getClientAddress(), receivedMsg.getMessage());
+            int bytesRead = clientSocket.getInputStream().read(buffer);
+
+
+            assertEquals(message, new String(receivedMsg.getMessage(), StandardCharsets.UTF_8));
+            assertEquals(message, new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
+        }
+    }
+}
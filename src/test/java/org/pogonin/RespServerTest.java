@@ -0,0 +1,108 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.codec.LengthFieldFrameDecoder;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.resp.RespHandler;
+import org.pogonin.store.OffHeapStore;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespServerTest {
+
+    @Test
+    void testRespPipelinedCommandsAreAnsweredInOneWrite() throws Exception {
+        var store = new OffHeapStore(16 * 1024 * 1024, 4, 1024 * 1024);
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new RespHandler(server, store));
+             Socket clientSocket = running.connect()) {
+            var metrics = running.server().getMetrics();
+            var commands = "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$2\r\n10\r\n"
+                    + "*5\r\n$4\r\nMSET\r\n$1\r\nb\r\n$1\r\n2\r\n$1\r\nc\r\n$1\r\n3\r\n"
+                    + "*4\r\n$4\r\nMGET\r\n$1\r\na\r\n$1\r\nx\r\n$1\r\nc\r\n"
+                    + "*3\r\n$3\r\nDEL\r\n$1\r\nb\r\n$1\r\nx\r\n"
+                    + "*3\r\n$6\r\nEXPIRE\r\n$1\r\na\r\n$2\r\n60\r\n"
+                    + "PING\r\n"
+                    + "*2\r\n$3\r\nGET\r\n$1\r\nb\r\n"
+                    + "*1\r\n$4\r\nNOPE\r\n";
+            var expected = "+OK\r\n+OK\r\n*3\r\n$2\r\n10\r\n$-1\r\n$1\r\n3\r\n:1\r\n:1\r\n+PONG\r\n$-1\r\n"
+                    + "-ERR unknown command 'NOPE'\r\n";
+            long writesBefore = metrics.getWriteCalls().sum();
+
+
+            clientSocket.getOutputStream().write(commands.getBytes(StandardCharsets.US_ASCII));
+            var replies = new String(clientSocket.getInputStream().readNBytes(expected.length()), StandardCharsets.US_ASCII);
+            RunningServer.await(() -> metrics.getWriteCalls().sum() > writesBefore, "the write to be counted");
+            long writes = metrics.getWriteCalls().sum() - writesBefore;
+
+
+            assertEquals(expected, replies, "Pipelined commands must be answered in order");
+            assertEquals(1, writes, "Replies to one read must leave in one gathering write");
+            assertEquals(2, store.size(), "The store must hold the keys left");
+        }
+    }
+
+    @Test
+    void testHugeUnknownCommandNameIsCutInTheError() throws Exception {
+        var store = new OffHeapStore(16 * 1024 * 1024, 4, 1024 * 1024);
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new RespHandler(server, store));
+             Socket clientSocket = running.connect()) {
+            var name = "X".repeat(100_000);
+            var commands = "*1\r\n$" + name.length() + "\r\n" + name + "\r\nPING\r\n";
+            var expected = "-ERR unknown command '" + "X".repeat(128) + "'\r\n+PONG\r\n";
+
+
+            clientSocket.getOutputStream().write(commands.getBytes(StandardCharsets.US_ASCII));
+            var replies = new String(clientSocket.getInputStream().readNBytes(expected.length()), StandardCharsets.US_ASCII);
+
+
+            assertEquals(expected, replies, "The name must be cut to 128 bytes and the connection must stay usable");
+        }
+    }
+
+    @Test
+    void testValueLargerThanMaxReadBufferIsAnsweredWithError() throws Exception {
+        var store = new OffHeapStore(64 * 1024 * 1024, 4, 4 * 1024 * 1024);
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new RespHandler(server, store));
+             Socket clientSocket = running.connect()) {
+            var value = new byte[2 * 1024 * 1024];
+            var header = "*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$" + value.length + "\r\n";
+            var expected = "-ERR string exceeds maximum allowed size\r\n";
+            var out = clientSocket.getOutputStream();
+
+
+            Thread.ofVirtual().start(() -> {
+                try {
+                    out.write(header.getBytes(StandardCharsets.US_ASCII));
+                    out.write(value);
+                    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException ignored) {
+                    // the server closes the connection without reading the value
+                }
+            });
+            var reply = new String(clientSocket.getInputStream().readNBytes(expected.length()), StandardCharsets.US_ASCII);
+
+
+            assertEquals(expected, reply, "A value that can't fit the read buffer must be answered with an error");
+            assertEquals(0, store.size(), "The value must not be stored");
+        }
+    }
+
+    @Test
+    void testRespHandlerRejectsHandlerThreadsAndFrameDecoder() {
+        var store = new OffHeapStore(16 * 1024 * 1024, 4, 1024 * 1024);
+        var threaded = new Server(InetAddress.getLoopbackAddress(), 0, ServerConfig.builder().handlerThreads(2).build());
+        var framed = new Server(InetAddress.getLoopbackAddress(), 0,
+                ServerConfig.builder().frameDecoder(() -> new LengthFieldFrameDecoder(1024)).build());
+
+
+        assertThrows(IllegalArgumentException.class, () -> new RespHandler(threaded, store),
+                "Copies handed to handler threads can't keep an incomplete command");
+        assertThrows(IllegalArgumentException.class, () -> new RespHandler(framed, store),
+                "Frames would hide the bytes as they were read");
+    }
+}
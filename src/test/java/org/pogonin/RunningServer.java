@@ -0,0 +1,154 @@
+package org.pogonin;
+
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.model.Message;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Server started on an ephemeral loopback port in a thread of its own, for the integration tests.
+ * <p>
+ * {@link #start} returns once the server listens, and {@link #close} stops it and waits for its loops to finish,
+ * so tests and benchmarks neither pick ports nor sleep for the server. Conditions that depend on the loops
+ * are polled with {@link #await}.
+ * </p>
+ */
+public final class RunningServer implements AutoCloseable {
+    /**
+     * How long to wait for the server or a condition, in milliseconds.
+     */
+    private static final long TIMEOUT_MS = 10_000;
+
+    /**
+     * Started server.
+     */
+    private final Server server;
+
+    /**
+     * Thread running {@link Server#start()}.
+     */
+    private final Thread thread;
+
+    private RunningServer(Server server, Thread thread) {
+        this.server = server;
+        this.thread = thread;
+    }
+
+    /**
+     * Starts a server with the default handler filling its queues.
+     *
+     * @param config configuration of the server
+     * @return running server
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public static RunningServer start(ServerConfig config) throws InterruptedException {
+        return start(config, server -> null);
+    }
+
+    /**
+     * Starts a server with a handler of its own.
+     *
+     * @param config  configuration of the server
+     * @param handler creates the handler for the server, {@code null} for the default one
+     * @return running server
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public static RunningServer start(ServerConfig config, Function<Server, ServerHandler> handler) throws InterruptedException {
+        var server = new Server(InetAddress.getLoopbackAddress(), 0, config);
+        var custom = handler.apply(server);
+        if (custom != null) server.setHandler(custom);
+        var thread = Thread.ofPlatform().name("server").start(server::start);
+        await(() -> server.getLocalAddress() != null || !thread.isAlive(), "the server to listen");
+        if (server.getLocalAddress() == null) fail("The server didn't start");
+        return new RunningServer(server, thread);
+    }
+
+    /**
+     * Polls a condition until it holds.
+     *
+     * @param condition   condition to wait for
+     * @param description what is waited for, used in the failure message
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) fail("Timed out waiting for " + description);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Returns the running server.
+     *
+     * @return server
+     */
+    public Server server() {
+        return server;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return port picked by the system
+     */
+    public int port() {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Opens a client connection to the server.
+     *
+     * @return connected socket
+     * @throws IOException if the connection can't be opened
+     */
+    public Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), port());
+    }
+
+    /**
+     * Waits until the server accepted the connection of the client socket.
+     *
+     * @param client connected client socket
+     * @return id of the connection
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long awaitAccepted(Socket client) throws InterruptedException {
+        var address = client.getLocalSocketAddress();
+        await(() -> server.getClients().containsKey(address), "the server to accept " + address);
+        return server.getClients().get(address).getId();
+    }
+
+    /**
+     * Waits for the next message in the inbound ring of the server.
+     *
+     * @return received message
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Message awaitMessage() throws InterruptedException {
+        var message = new Message[1];
+        await(() -> (message[0] = server.getMessages().poll()) != null, "a message");
+        return message[0];
+    }
+
+    /**
+     * Stops the server and waits until its loops have closed every connection.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedException {
+        thread.interrupt();
+        thread.join(TIMEOUT_MS);
+        assertFalse(thread.isAlive(), "The server must stop once interrupted");
+    }
+}
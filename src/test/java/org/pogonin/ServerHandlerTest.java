@@ -0,0 +1,171 @@
+package org.pogonin;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.ServerHandler;
+import org.pogonin.model.Message;
+import org.pogonin.model.PooledMessage;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerHandlerTest {
+
+    @Test
+    void testHandlerReceivesClientEventsOnEventLoop() throws Exception {
+        var events = new ConcurrentLinkedQueue<String>();
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new ServerHandler() {
+            @Override
+            public void onConnect(long connectionId, SocketAddress client) {
+                events.add("connect:" + Thread.currentThread().getName());
+            }
+
+            @Override
+            public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+                var bytes = new byte[data.remaining()];
+                data.get(bytes);
+                events.add("message:" + new String(bytes, StandardCharsets.UTF_8));
+                server.send(connectionId, bytes);
+            }
+
+            @Override
+            public void onDisconnect(long connectionId, SocketAddress client) {
+                events.add("disconnect");
+            }
+        })) {
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            try (Socket clientSocket = running.connect()) {
+
+
+                clientSocket.getOutputStream().write("ping".getBytes(StandardCharsets.UTF_8));
+                bytesRead = clientSocket.getInputStream().read(buffer);
+            }
+            RunningServer.await(() -> events.size() == 3, "the disconnection");
+
+
+            assertEquals("ping", new String(buffer, 0, bytesRead, StandardCharsets.UTF_8), "The handler should have echoed the message");
+            assertEquals(List.of("connect:event-loop-0", "message:ping", "disconnect"), new ArrayList<>(events),
+                    "The handler should get every event in order on the event loop of the client");
+            assertTrue(running.server().getConnectedClientsEvent().isEmpty(), "Queues must stay empty with a custom handler");
+            assertTrue(running.server().getMessages().isEmpty(), "Queues must stay empty with a custom handler");
+        }
+    }
+
+    @Test
+    void testPooledMessageIsEchoedWithoutCopyAndReturnedToPool() throws Exception {
+        var taken = new ConcurrentLinkedQueue<PooledMessage>();
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new ServerHandler() {
+            @Override
+            public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+                var message = server.takeMessage(connectionId, data);
+                taken.add(message);
+                server.send(connectionId, message.retain());
+                message.release();
+            }
+        })) {
+            var pool = running.server().getBufferPool();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            try (Socket clientSocket = running.connect()) {
+
+
+                clientSocket.getOutputStream().write("pooled".getBytes(StandardCharsets.UTF_8));
+                bytesRead = clientSocket.getInputStream().read(buffer);
+            }
+            RunningServer.await(() -> pool.getBytesOutstanding() == 0, "every buffer to be back in the pool");
+
+
+            assertEquals("pooled", new String(buffer, 0, bytesRead, StandardCharsets.UTF_8), "The payload should have been echoed");
+            assertFalse(taken.isEmpty(), "The handler should have taken the message");
+            assertTrue(taken.stream().allMatch(message -> message.refCount() == 0), "Every message must be released once written");
+        }
+    }
+
+    @Test
+    void testHandlerThreadsKeepOrderAndIsolateSlowClients() throws Exception {
+        var config = ServerConfig.builder().eventLoops(1).handlerThreads(2).build();
+        var threads = new ConcurrentLinkedQueue<String>();
+        try (var running = RunningServer.start(config, server -> new ServerHandler() {
+            @Override
+            public void onMessage(long connectionId, SocketAddress client, ByteBuffer data) {
+                var text = StandardCharsets.UTF_8.decode(data).toString();
+                threads.add(Thread.currentThread().getName());
+                if (text.startsWith("slow")) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                server.send(connectionId, text.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+             Socket slowClient = running.connect();
+             Socket fastClient = running.connect()) {
+            running.awaitAccepted(slowClient);
+            running.awaitAccepted(fastClient);
+
+
+            slowClient.getOutputStream().write("slow".getBytes(StandardCharsets.UTF_8));
+            RunningServer.await(() -> !threads.isEmpty(), "the slow callback to start");
+            slowClient.getOutputStream().write("-next".getBytes(StandardCharsets.UTF_8));
+            long start = System.nanoTime();
+            fastClient.getOutputStream().write("fast".getBytes(StandardCharsets.UTF_8));
+            byte[] fast = fastClient.getInputStream().readNBytes(4);
+            long fastMillis = (System.nanoTime() - start) / 1_000_000;
+            byte[] slow = slowClient.getInputStream().readNBytes(9);
+
+
+            assertEquals("fast", new String(fast, StandardCharsets.UTF_8));
+            assertTrue(fastMillis < 500, "A slow client must not delay the others, took " + fastMillis + " ms");
+            assertEquals("slow-next", new String(slow, StandardCharsets.UTF_8), "Messages of a client must be handled in order");
+            assertTrue(threads.stream().allMatch(name -> name.startsWith("handler-")), "Callbacks must run on handler threads");
+            assertTrue(running.server().getMetrics().getHandlerQueueTime().getCount() >= 3, "Queue time must be recorded for every callback");
+        }
+    }
+
+    @Test
+    void testDefaultHandlerOnHandlerThreadsKeepsMessagesWhileInboundRingIsFull() throws Exception {
+        var config = ServerConfig.builder()
+                .eventLoops(1)
+                .handlerThreads(2)
+                .inboundQueueCapacity(2)
+                .inboundLowWaterMark(0)
+                .build();
+        try (var running = RunningServer.start(config);
+             Socket clientSocket = running.connect()) {
+            var server = running.server();
+            OutputStream out = clientSocket.getOutputStream();
+            int chunks = 50;
+            byte[] chunk = new byte[100];
+
+
+            for (int i = 0; i < chunks; i++) {
+                out.write(chunk);
+                out.flush();
+                Thread.sleep(1);
+            }
+            RunningServer.await(() -> server.getMessages().size() == server.getMessages().capacity(),
+                    "the inbound ring to fill up");
+            int[] received = new int[1];
+            RunningServer.await(() -> {
+                Message message;
+                while ((message = server.getMessages().poll()) != null)
+                    received[0] += message.getMessage().length;
+                return received[0] == chunks * chunk.length;
+            }, "every chunk to be received");
+
+
+            assertEquals(chunks * chunk.length, received[0], "No received bytes may be lost while the inbound ring is full");
+        }
+    }
+}
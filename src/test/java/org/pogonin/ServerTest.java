@@ -3,6 +3,7 @@ package org.pogonin;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.pogonin.config.ServerConfig;
 import org.pogonin.model.Message;
 
 import java.io.InputStream;
@@ -10,34 +11,28 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ServerTest {
+    private RunningServer running;
     private Server server;
-    private ExecutorService serverExecutor;
-    private final int port = 8084;
 
 
     @BeforeEach
     void setUp() throws Exception {
-         server = new Server(null, port);
-        serverExecutor = Executors.newSingleThreadExecutor();
-        serverExecutor.submit(() -> server.start());
-        Thread.sleep(300);
+        running = RunningServer.start(ServerConfig.defaults());
+        server = running.server();
     }
 
     @AfterEach
     void tearDown() throws Exception {
-        serverExecutor.shutdownNow();
-        Thread.sleep(300);
+        running.close();
     }
 
     @Test
     void testServerAcceptsConnection() throws Exception {
-        try (Socket clientSocket = new Socket("localhost", port)) {
+        try (Socket clientSocket = running.connect()) {
 
 
             assertTrue(clientSocket.isConnected());
@@ -46,35 +41,53 @@ public class ServerTest {
 
     @Test
     void testServerReceivesMessage() throws Exception {
-        try (Socket clientSocket = new Socket("localhost", port)) {
+        try (Socket clientSocket = running.connect()) {
             OutputStream out = clientSocket.getOutputStream();
             String message = "Hello, Server!";
 
 
             out.write(message.getBytes(StandardCharsets.UTF_8));
             out.flush();
-            Thread.sleep(500);
 
 
-            Message receivedMsg = server.getMessages().poll();
-            assertNotNull(receivedMsg, "The server should have received the message");
+            Message receivedMsg = running.awaitMessage();
             assertEquals(message, new String(receivedMsg.getMessage(), StandardCharsets.UTF_8),
                     "The message received must match the message sent");
         }
     }
 
 
+    @Test
+    void testEmptyMessageKeepsConnectionUsable() throws Exception {
+        try (Socket clientSocket = running.connect()) {
+            SocketAddress clientAddress = clientSocket.getLocalSocketAddress();
+            InputStream in = clientSocket.getInputStream();
+            long connectionId = running.awaitAccepted(clientSocket);
+
+
+            boolean emptyByAddress = server.send(clientAddress, new byte[0]);
+            boolean emptyById = server.send(connectionId, new byte[0]);
+            server.send(clientAddress, "after".getBytes(StandardCharsets.UTF_8));
+            byte[] received = in.readNBytes(5);
+
+
+            assertTrue(emptyByAddress && emptyById, "Empty messages should have been scheduled");
+            assertEquals("after", new String(received, StandardCharsets.UTF_8),
+                    "Messages sent after an empty one must still reach the client");
+        }
+    }
+
     @Test
     void testServerSendsMessage() throws Exception {
-        try (Socket clientSocket = new Socket("localhost", port)) {
+        try (Socket clientSocket = running.connect()) {
             SocketAddress clientAddress = clientSocket.getLocalSocketAddress();
             InputStream in = clientSocket.getInputStream();
             String expectedMessage = "Hello, Client!";
             byte[] buffer = new byte[1024];
+            running.awaitAccepted(clientSocket);
 
 
             boolean sendResult = server.send(clientAddress, expectedMessage.getBytes(StandardCharsets.UTF_8));
-            Thread.sleep(100);
 
 
             assertTrue(sendResult, "The server should have scheduled the message to be sent");
@@ -85,24 +98,43 @@ public class ServerTest {
         }
     }
 
+    @Test
+    void testServerSendsPayloadLargerThanSocketBuffer() throws Exception {
+        try (Socket clientSocket = running.connect()) {
+            SocketAddress clientAddress = clientSocket.getLocalSocketAddress();
+            InputStream in = clientSocket.getInputStream();
+            byte[] expected = new byte[8 * 1024 * 1024];
+            for (int i = 0; i < expected.length; i++) expected[i] = (byte) (i * 31);
+            running.awaitAccepted(clientSocket);
+
+
+            boolean sendResult = server.send(clientAddress, expected);
+            byte[] actual = in.readNBytes(expected.length);
+
+
+            assertTrue(sendResult, "The server should have scheduled the message to be sent");
+            assertArrayEquals(expected, actual, "The payload must arrive complete and in order");
+        }
+    }
+
     @Test
     void testServerHandlesClientDisconnection() throws Exception {
-        Socket clientSocket = new Socket("localhost", port);
+        Socket clientSocket = running.connect();
         SocketAddress clientAddress = clientSocket.getLocalSocketAddress();
 
 
         clientSocket.close();
-        Thread.sleep(100);
 
 
-        assertTrue(server.getDisconnectedClientsEvent().contains(clientAddress), "The server should have logged the client disconnection");
+        RunningServer.await(() -> server.getDisconnectedClientsEvent().contains(clientAddress),
+                "the server to log the client disconnection");
     }
 
 
     @Test
     void testServerHandlesMultipleClients() throws Exception {
-        try (Socket clientSocket1 = new Socket("localhost", port);
-             Socket clientSocket2 = new Socket("localhost", port)) {
+        try (Socket clientSocket1 = running.connect();
+             Socket clientSocket2 = running.connect()) {
             OutputStream out1 = clientSocket1.getOutputStream();
             OutputStream out2 = clientSocket2.getOutputStream();
             String message1 = "Message from Client 1";
@@ -113,13 +145,10 @@ public class ServerTest {
             out1.flush();
             out2.write(message2.getBytes(StandardCharsets.UTF_8));
             out2.flush();
-            Thread.sleep(500);
 
 
-            Message receivedMsg1 = server.getMessages().poll();
-            Message receivedMsg2 = server.getMessages().poll();
-            assertNotNull(receivedMsg1, "The server should have received a message from client 1");
-            assertNotNull(receivedMsg2, "The server should have received a message from client 2");
+            Message receivedMsg1 = running.awaitMessage();
+            Message receivedMsg2 = running.awaitMessage();
             String receivedData1 = new String(receivedMsg1.getMessage(), StandardCharsets.UTF_8);
             String receivedData2 = new String(receivedMsg2.getMessage(), StandardCharsets.UTF_8);
             assertTrue(receivedData1.equals(message1) || receivedData1.equals(message2), "The received message must match one of the sent ones");
@@ -127,6 +156,4 @@ public class ServerTest {
             assertNotEquals(receivedData1, receivedData2, "Messages must be from different clients");
         }
     }
-
-
 }
@@ -0,0 +1,77 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.codec.DelimiterFrameDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures splitting a buffer of newline-terminated lines with {@link DelimiterFrameDecoder},
+ * which searches 8 bytes at a time, against a loop comparing every byte.
+ * <p>
+ * For lines of 16 B, 256 B and 4 KiB, a 4 MiB direct buffer of lines is decoded repeatedly by both.
+ * Reports the time per line and the throughput of the best of several runs.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class DelimiterScanBenchmark {
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int[] LINE_SIZES = {16, 256, 4096};
+    private static final int WARMUP_RUNS = 20;
+    private static final int RUNS = 20;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        System.out.printf("%-8s %-8s %12s %12s%n", "line", "decoder", "ns/line", "GB/s");
+        for (int size : LINE_SIZES) {
+            var buffer = lines(size);
+            int lines = BUFFER_SIZE / size;
+            for (var swar : new boolean[]{false, true}) {
+                for (int i = 0; i < WARMUP_RUNS; i++)
+                    run(buffer, size, swar);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < RUNS; i++)
+                    best = Math.min(best, run(buffer, size, swar));
+                System.out.printf("%-8s %-8s %12.1f %12.2f%n", size + " B", swar ? "swar" : "naive",
+                        (double) best / lines, (double) BUFFER_SIZE / best);
+            }
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private static long run(ByteBuffer buffer, int size, boolean swar) {
+        var in = buffer.duplicate();
+        var decoder = new DelimiterFrameDecoder(size, (byte) '\n');
+        long start = System.nanoTime();
+        long total = 0;
+        ByteBuffer frame;
+        while ((frame = swar ? decoder.decode(in) : naiveDecode(in)) != null)
+            total += frame.remaining();
+        long elapsed = System.nanoTime() - start;
+        sink += total;
+        return elapsed;
+    }
+
+    private static ByteBuffer naiveDecode(ByteBuffer in) {
+        int start = in.position();
+        for (int i = start; i < in.limit(); i++) {
+            if (in.get(i) != '\n') continue;
+            var payload = in.slice(start, i - start);
+            in.position(i + 1);
+            return payload;
+        }
+        return null;
+    }
+
+    private static ByteBuffer lines(int size) {
+        var line = new byte[size];
+        Arrays.fill(line, (byte) 'x');
+        line[size - 1] = '\n';
+        var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (buffer.remaining() >= size)
+            buffer.put(line);
+        return buffer.flip();
+    }
+}
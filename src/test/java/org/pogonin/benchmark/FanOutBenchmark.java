@@ -0,0 +1,133 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.RunningServer;
+import org.pogonin.Server;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.handler.ServerHandler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures pushing the same update to many subscribers with one {@code send()} per subscriber
+ * against a single {@code broadcast()}.
+ * <p>
+ * The subscribers are non-blocking sockets drained by one reader thread. Every round sends a 256 byte
+ * update to all of them and waits until the reader has received it everywhere. Reports the time per round
+ * and the bytes allocated per round by the sending thread and the event loops together.
+ * The number of subscribers is the first argument, 10 000 by default; every subscriber takes two file
+ * descriptors, so the limit of open files may have to be raised.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class FanOutBenchmark {
+    private static final int SUBSCRIBERS = 10_000;
+    private static final int UPDATE_SIZE = 256;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = args.length > 0 ? Integer.parseInt(args[0]) : SUBSCRIBERS;
+        var ids = new ConcurrentLinkedQueue<Long>();
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(2).build(), server -> new ServerHandler() {
+            @Override
+            public void onConnect(long connectionId, SocketAddress client) {
+                ids.add(connectionId);
+            }
+        });
+             var selector = Selector.open()) {
+            try {
+                var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), running.port());
+                for (int i = 0; i < subscribers; i++) {
+                    var channel = SocketChannel.open(address);
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_READ);
+                }
+                RunningServer.await(() -> ids.size() == subscribers, "every subscriber to be accepted");
+                measure(running.server(), selector, ids.stream().mapToLong(Long::longValue).toArray());
+            } finally {
+                for (var key : selector.keys())
+                    key.channel().close();
+            }
+        }
+    }
+
+    private static void measure(Server server, Selector selector, long[] recipients) throws Exception {
+        var received = new AtomicLong();
+        var failure = new AtomicReference<Exception>();
+        var reader = Thread.ofPlatform().name("reader").start(() -> read(selector, received, failure));
+        var update = new byte[UPDATE_SIZE];
+        try {
+            System.out.printf("subscribers: %d, update: %d B%n", recipients.length, UPDATE_SIZE);
+            System.out.printf("%-10s %14s %18s%n", "mode", "ms/round", "allocated/round");
+            for (var mode : new String[]{"send", "broadcast", "send", "broadcast"}) {
+                run(server, mode, recipients, update, received, failure, WARMUP_ROUNDS);
+                long allocatedBefore = allocated();
+                long start = System.nanoTime();
+                run(server, mode, recipients, update, received, failure, ROUNDS);
+                long elapsed = System.nanoTime() - start;
+                long allocated = allocated() - allocatedBefore;
+                System.out.printf("%-10s %14.2f %16.1f KB%n", mode, elapsed / 1e6 / ROUNDS, allocated / 1024.0 / ROUNDS);
+            }
+        } finally {
+            reader.interrupt();
+            selector.wakeup();
+            reader.join();
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    private static void run(Server server, String mode, long[] recipients, byte[] update, AtomicLong received,
+                            AtomicReference<Exception> failure, int rounds) throws Exception {
+        for (int round = 0; round < rounds; round++) {
+            long expected = received.get() + (long) recipients.length * update.length;
+            if (mode.equals("broadcast")) {
+                while (!server.broadcast(update))
+                    Thread.onSpinWait();
+            } else {
+                for (long id : recipients)
+                    while (!server.send(id, update))
+                        Thread.onSpinWait();
+            }
+            while (received.get() < expected) {
+                if (failure.get() != null) throw failure.get();
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static void read(Selector selector, AtomicLong received, AtomicReference<Exception> failure) {
+        var buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                for (var key : selector.selectedKeys()) {
+                    int read;
+                    while ((read = ((SocketChannel) key.channel()).read(buffer.clear())) > 0)
+                        received.addAndGet(read);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (Exception ex) {
+            if (!Thread.currentThread().isInterrupted()) failure.set(ex);
+        }
+    }
+
+    private static long allocated() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        for (var thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().startsWith("event-loop-")) total += threads.getThreadAllocatedBytes(thread.threadId());
+        return total;
+    }
+}
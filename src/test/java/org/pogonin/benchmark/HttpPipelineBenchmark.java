@@ -0,0 +1,88 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.RunningServer;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.http.HttpHandler;
+import org.pogonin.http.HttpRequest;
+import org.pogonin.http.HttpResponse;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of tiny pipelined {@code GET} requests and how many bytes the event loop
+ * allocates per request, in the manner of {@code wrk} with a pipelining script.
+ * <p>
+ * A single client writes batches of pipelined requests and reads all responses of a batch before writing
+ * the next one. The allocation counter of the event loop thread is sampled around the measured run.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class HttpPipelineBenchmark {
+    private static final int PIPELINE_DEPTH = 16;
+    private static final int WARMUP_BATCHES = 20_000;
+    private static final int BATCHES = 100_000;
+    private static final byte[] REQUEST = "GET /plaintext HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final HttpResponse RESPONSE = HttpResponse.of(200, "Hello, World!");
+    private static final byte[] PLAINTEXT = "/plaintext".getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new HttpHandler(server) {
+            @Override
+            protected void onRequest(long connectionId, HttpRequest request) {
+                if (request.targetEquals(PLAINTEXT)) respond(connectionId, request, RESPONSE);
+            }
+        });
+             var socket = running.connect()) {
+            socket.setTcpNoDelay(true);
+            var out = socket.getOutputStream();
+            var in = socket.getInputStream();
+            var batch = new byte[REQUEST.length * PIPELINE_DEPTH];
+            for (int i = 0; i < PIPELINE_DEPTH; i++)
+                System.arraycopy(REQUEST, 0, batch, i * REQUEST.length, REQUEST.length);
+            int responseLength = responseLength(out, in);
+            var responses = new byte[responseLength * PIPELINE_DEPTH];
+
+            run(out, in, batch, responses, WARMUP_BATCHES);
+
+            var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            var loop = findThread("event-loop-0");
+            long before = threads.getThreadAllocatedBytes(loop.threadId());
+            long start = System.nanoTime();
+            run(out, in, batch, responses, BATCHES);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(loop.threadId()) - before;
+
+            long requests = (long) BATCHES * PIPELINE_DEPTH;
+            System.out.printf("requests: %d, pipeline depth: %d, time: %.1f ms, %.0f requests/s, event loop allocated: %.2f B/request%n",
+                    requests, PIPELINE_DEPTH, elapsed / 1e6, requests * 1e9 / elapsed, (double) allocated / requests);
+        }
+    }
+
+    private static int responseLength(java.io.OutputStream out, InputStream in) throws Exception {
+        out.write(REQUEST);
+        var head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n"))
+            head.append((char) in.read());
+        var body = "Hello, World!";
+        in.readNBytes(body.length());
+        return head.length() + body.length();
+    }
+
+    private static void run(java.io.OutputStream out, InputStream in, byte[] batch, byte[] responses, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            out.write(batch);
+            in.readNBytes(responses, 0, responses.length);
+        }
+    }
+
+    private static Thread findThread(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
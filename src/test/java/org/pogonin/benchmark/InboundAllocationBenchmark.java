@@ -0,0 +1,61 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.RunningServer;
+import org.pogonin.Server;
+import org.pogonin.config.ServerConfig;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes the event loop allocates per received 1 KiB message.
+ * <p>
+ * A single client writes a message and waits until the server has queued it before writing the next one,
+ * so every message is one read burst. The allocation counter of the event loop thread is sampled
+ * around the measured run.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class InboundAllocationBenchmark {
+    private static final int MESSAGE_SIZE = 1024;
+    private static final int WARMUP_MESSAGES = 20_000;
+    private static final int MESSAGES = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build());
+             var socket = running.connect()) {
+            var server = running.server();
+            var out = socket.getOutputStream();
+            var data = new byte[MESSAGE_SIZE];
+
+            run(server, out, data, WARMUP_MESSAGES);
+
+            var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            var loop = findThread("event-loop-0");
+            long before = threads.getThreadAllocatedBytes(loop.threadId());
+            long start = System.nanoTime();
+            run(server, out, data, MESSAGES);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(loop.threadId()) - before;
+
+            System.out.printf("messages: %d x %d B, time: %.1f ms, event loop allocated: %.1f B/message%n",
+                    MESSAGES, MESSAGE_SIZE, elapsed / 1e6, (double) allocated / MESSAGES);
+        }
+    }
+
+    private static void run(Server server, java.io.OutputStream out, byte[] data, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            out.write(data);
+            out.flush();
+            while (server.getMessages().drain(slot -> {}, 1) == 0)
+                Thread.onSpinWait();
+        }
+    }
+
+    private static Thread findThread(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,96 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.queue.MpscRingBuffer;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the outbound handoff queues of an event loop under producer contention.
+ * <p>
+ * 1, 4, 16 and 64 producer threads offer elements as fast as they can, retrying while the queue is full,
+ * and a single consumer thread drains them the way an event loop does. Reports the handoff throughput
+ * of the lock-based {@link ArrayBlockingQueue} and of the lock-free {@link MpscRingBuffer}
+ * of the same capacity.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class OutboundQueueBenchmark {
+    private static final int CAPACITY = 16 * 1024;
+    private static final int ELEMENTS = 4_000_000;
+    private static final int[] PRODUCERS = {1, 4, 16, 64};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-10s %22s %22s%n", "producers", "ArrayBlockingQueue", "MpscRingBuffer");
+        for (int producers : PRODUCERS) {
+            double blocking = 0;
+            double ring = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                blocking = Math.max(blocking, runBlockingQueue(producers));
+                ring = Math.max(ring, runRingBuffer(producers));
+            }
+            System.out.printf("%-10d %16.1f Mop/s %16.1f Mop/s%n", producers, blocking, ring);
+        }
+    }
+
+    private static double runBlockingQueue(int producers) throws InterruptedException {
+        Queue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+        return run(producers, queue::offer, () -> {
+            int drained = 0;
+            while (queue.poll() != null)
+                drained++;
+            return drained;
+        });
+    }
+
+    private static double runRingBuffer(int producers) throws InterruptedException {
+        var ring = new MpscRingBuffer<Object>(CAPACITY);
+        return run(producers, ring::offer, () -> ring.drain(element -> {}, CAPACITY));
+    }
+
+    private static double run(int producers, Producer producer, Drainer drainer) throws InterruptedException {
+        int perProducer = ELEMENTS / producers;
+        var element = new Object();
+        var start = new CountDownLatch(1);
+        var threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++)
+                    while (!producer.offer(element))
+                        Thread.onSpinWait();
+            });
+        }
+
+        long total = (long) perProducer * producers;
+        long received = 0;
+        long begin = System.nanoTime();
+        start.countDown();
+        while (received < total) {
+            int drained = drainer.drain();
+            if (drained == 0) Thread.onSpinWait();
+            received += drained;
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (var thread : threads)
+            thread.join();
+        return total * 1e3 / elapsed;
+    }
+
+    @FunctionalInterface
+    private interface Producer {
+        boolean offer(Object element);
+    }
+
+    @FunctionalInterface
+    private interface Drainer {
+        int drain();
+    }
+}
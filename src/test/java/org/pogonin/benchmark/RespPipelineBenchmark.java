@@ -0,0 +1,88 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.RunningServer;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.resp.RespHandler;
+import org.pogonin.store.OffHeapStore;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of pipelined RESP {@code SET} and {@code GET} commands and how many bytes
+ * the event loop allocates per command, in the manner of {@code redis-benchmark -P}.
+ * <p>
+ * A single client writes batches of pipelined commands, alternating a {@code SET} and a {@code GET} of
+ * one of {@value #KEYS} keys with 64-byte values, and reads all replies of a batch before writing the next one.
+ * The allocation counter of the event loop thread is sampled around the measured run.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class RespPipelineBenchmark {
+    private static final int PIPELINE_DEPTH = 16;
+    private static final int KEYS = 1000;
+    private static final int VALUE_SIZE = 64;
+    private static final int WARMUP_BATCHES = 20_000;
+    private static final int BATCHES = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        var store = new OffHeapStore(256L * 1024 * 1024);
+        try (var running = RunningServer.start(ServerConfig.builder().eventLoops(1).build(), server -> new RespHandler(server, store));
+             var socket = running.connect()) {
+            socket.setTcpNoDelay(true);
+            var out = socket.getOutputStream();
+            var in = socket.getInputStream();
+            var value = "v".repeat(VALUE_SIZE);
+            var batches = new byte[KEYS / (PIPELINE_DEPTH / 2)][];
+            for (int b = 0; b < batches.length; b++) {
+                var batch = new StringBuilder();
+                for (int i = 0; i < PIPELINE_DEPTH / 2; i++) {
+                    var key = "key:" + (b * PIPELINE_DEPTH / 2 + i);
+                    batch.append(command("SET", key, value)).append(command("GET", key));
+                }
+                batches[b] = batch.toString().getBytes(StandardCharsets.US_ASCII);
+            }
+            int repliesLength = PIPELINE_DEPTH / 2 * ("+OK\r\n".length() + ("$" + VALUE_SIZE + "\r\n").length() + VALUE_SIZE + 2);
+            var replies = new byte[repliesLength];
+
+            run(out, in, batches, replies, WARMUP_BATCHES);
+
+            var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            var loop = findThread("event-loop-0");
+            long before = threads.getThreadAllocatedBytes(loop.threadId());
+            long start = System.nanoTime();
+            run(out, in, batches, replies, BATCHES);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(loop.threadId()) - before;
+
+            long commands = (long) BATCHES * PIPELINE_DEPTH;
+            System.out.printf("commands: %d, pipeline depth: %d, time: %.1f ms, %.0f commands/s, event loop allocated: %.2f B/command, store: %d keys, %d KiB off-heap%n",
+                    commands, PIPELINE_DEPTH, elapsed / 1e6, commands * 1e9 / elapsed, (double) allocated / commands,
+                    store.size(), store.usedMemory() / 1024);
+        }
+    }
+
+    private static String command(String... args) {
+        var command = new StringBuilder("*").append(args.length).append("\r\n");
+        for (var arg : args)
+            command.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        return command.toString();
+    }
+
+    private static void run(OutputStream out, InputStream in, byte[][] batches, byte[] replies, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            out.write(batches[i % batches.length]);
+            in.readNBytes(replies, 0, replies.length);
+        }
+    }
+
+    private static Thread findThread(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
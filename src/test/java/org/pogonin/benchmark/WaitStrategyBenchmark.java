@@ -0,0 +1,103 @@
+package org.pogonin.benchmark;
+
+import org.pogonin.RunningServer;
+import org.pogonin.Server;
+import org.pogonin.config.ServerConfig;
+import org.pogonin.model.Message;
+import org.pogonin.queue.BlockingWaitStrategy;
+import org.pogonin.queue.BusySpinWaitStrategy;
+import org.pogonin.queue.SpinParkWaitStrategy;
+import org.pogonin.queue.SpinYieldWaitStrategy;
+import org.pogonin.queue.WaitStrategy;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Measures CPU use against echo latency for every consumer wait strategy.
+ * <p>
+ * A queue consumer thread waits with the strategy under test and echoes every received message.
+ * A client sends a 64 byte message every millisecond and waits for its echo, so the consumer spends
+ * most of its time waiting. Reports the process CPU time per wall-clock second and the median and
+ * 99th percentile round trip.
+ * </p>
+ *
+ * <p>Author: Alexey Pogonin</p>
+ */
+public class WaitStrategyBenchmark {
+    private static final int WARMUP_MESSAGES = 500;
+    private static final int MESSAGES = 3_000;
+    private static final long INTERVAL_NANOS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        var strategies = new LinkedHashMap<String, WaitStrategy>();
+        strategies.put("busy-spin", new BusySpinWaitStrategy());
+        strategies.put("spin-yield", new SpinYieldWaitStrategy());
+        strategies.put("spin-park", new SpinParkWaitStrategy());
+        strategies.put("blocking", new BlockingWaitStrategy());
+
+        System.out.printf("%-12s %10s %12s %12s%n", "strategy", "cpu", "p50", "p99");
+        for (var entry : strategies.entrySet())
+            run(entry.getKey(), entry.getValue());
+    }
+
+    private static void run(String name, WaitStrategy strategy) throws Exception {
+        var config = ServerConfig.builder().eventLoops(1).consumerWaitStrategy(strategy).build();
+        try (var running = RunningServer.start(config)) {
+            var consumer = Thread.ofPlatform().name("consumer").start(() -> consume(running.server()));
+            try (var socket = running.connect()) {
+                socket.setTcpNoDelay(true);
+                var data = new byte[64];
+                ping(socket, data, new long[WARMUP_MESSAGES]);
+
+                var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+                var latencies = new long[MESSAGES];
+                long cpuBefore = os.getProcessCpuTime();
+                long start = System.nanoTime();
+                ping(socket, data, latencies);
+                long elapsed = System.nanoTime() - start;
+                long cpu = os.getProcessCpuTime() - cpuBefore;
+
+                Arrays.sort(latencies);
+                System.out.printf("%-12s %9.0f%% %9.1f us %9.1f us%n", name, 100.0 * cpu / elapsed,
+                        latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3);
+            } finally {
+                consumer.interrupt();
+                consumer.join();
+            }
+        }
+    }
+
+    private static void consume(Server server) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                server.awaitEvents();
+                server.getConnectedClientsEvent().clear();
+                server.getDisconnectedClientsEvent().clear();
+                Message message;
+                while ((message = server.getMessages().poll()) != null)
+                    server.send(message.getClientAddress(), message.getMessage());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void ping(Socket socket, byte[] data, long[] latencies) throws Exception {
+        var out = socket.getOutputStream();
+        var in = socket.getInputStream();
+        var echo = new byte[data.length];
+        long next = System.nanoTime();
+        for (int i = 0; i < latencies.length; i++) {
+            while (System.nanoTime() < next)
+                Thread.sleep(0, 100_000);
+            long sent = System.nanoTime();
+            out.write(data);
+            out.flush();
+            in.readNBytes(echo, 0, echo.length);
+            latencies[i] = System.nanoTime() - sent;
+            next = sent + INTERVAL_NANOS;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.pogonin.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    void testAcquireRoundsUpToSizeClass() {
+        var cache = new BufferPool(64, 4096).newCache();
+
+
+        var buffer = cache.acquire(100);
+
+
+        assertTrue(buffer.isDirect(), "Pooled buffers must be direct");
+        assertEquals(128, buffer.capacity(), "The capacity must be the next power of two");
+        assertEquals(128, buffer.remaining(), "The buffer must be cleared");
+    }
+
+    @Test
+    void testEmptyBufferIsServedBySmallestClass() {
+        var pool = new BufferPool(64, 4096);
+
+
+        var fromPool = pool.acquire(0);
+        var fromCache = pool.newCache().acquire(0);
+
+
+        assertEquals(64, fromPool.capacity(), "An empty buffer must come from the smallest class");
+        assertEquals(64, fromCache.capacity(), "An empty buffer must come from the smallest class");
+    }
+
+    @Test
+    void testReleasedBufferIsReusedByCache() {
+        var pool = new BufferPool(64, 4096);
+        var cache = pool.newCache();
+
+
+        var first = cache.acquire(1000);
+        cache.release(first);
+        var second = cache.acquire(1000);
+
+
+        assertSame(first, second, "The released buffer should be handed out again");
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getCacheHits());
+    }
+
+    @Test
+    void testCachesShareArenaOnOverflow() {
+        var pool = new BufferPool(64, 4096);
+        var producer = pool.newCache();
+        var consumer = pool.newCache();
+        var buffers = new ArrayList<ByteBuffer>();
+
+
+        for (int i = 0; i < 300; i++) buffers.add(producer.acquire(64));
+        buffers.forEach(producer::release);
+        consumer.acquire(64);
+
+
+        assertEquals(1, pool.getArenaHits(), "A cache should fall back to the shared arena");
+    }
+
+    @Test
+    void testBytesOutstanding() {
+        var pool = new BufferPool(64, 4096);
+        var cache = pool.newCache();
+
+
+        var pooled = cache.acquire(2000);
+        var unpooled = cache.acquire(10_000);
+
+
+        assertEquals(2048 + 10_000, pool.getBytesOutstanding());
+        cache.release(pooled);
+        cache.release(unpooled);
+        assertEquals(0, pool.getBytesOutstanding());
+    }
+}
@@ -0,0 +1,68 @@
+package org.pogonin.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReceiveSizePredictorTest {
+
+    @Test
+    void testGrowsAfterFullRead() {
+        var predictor = new ReceiveSizePredictor(64, 1024, 65536);
+
+
+        predictor.record(1024);
+
+
+        assertEquals(2048, predictor.nextSize(), "A full read should fit twice the burst");
+    }
+
+    @Test
+    void testGrowthIsCappedByMaximum() {
+        var predictor = new ReceiveSizePredictor(64, 1024, 65536);
+
+
+        predictor.record(1_000_000);
+
+
+        assertEquals(65536, predictor.nextSize());
+    }
+
+    @Test
+    void testShrinksOnlyAfterTwoSmallReads() {
+        var predictor = new ReceiveSizePredictor(64, 1024, 65536);
+
+
+        predictor.record(100);
+        assertEquals(1024, predictor.nextSize(), "A single small read must not shrink the prediction");
+        predictor.record(100);
+
+
+        assertEquals(512, predictor.nextSize());
+    }
+
+    @Test
+    void testShrinkingStopsAtMinimum() {
+        var predictor = new ReceiveSizePredictor(64, 128, 65536);
+
+
+        for (int i = 0; i < 20; i++) predictor.record(1);
+
+
+        assertEquals(64, predictor.nextSize());
+    }
+
+    @Test
+    void testEmptyBurstsDoNotShrink() {
+        var predictor = new ReceiveSizePredictor(64, 1024, 65536);
+        predictor.record(1024);
+
+
+        predictor.record(0);
+        predictor.record(0);
+        predictor.record(0);
+
+
+        assertEquals(2048, predictor.nextSize(), "Reads that got no bytes must not count as small bursts");
+    }
+}
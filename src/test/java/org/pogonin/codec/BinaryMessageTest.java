@@ -0,0 +1,105 @@
+package org.pogonin.codec;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMessageTest {
+    private final VarintFrameDecoder decoder = new VarintFrameDecoder(1024);
+    private final VarintFrameEncoder encoder = new VarintFrameEncoder();
+
+    @Test
+    void testReadsTypedFieldsInPlace() {
+        var payload = ByteBuffer.allocate(64);
+        new BinaryMessageWriter().wrap(payload)
+                .writeVarint(1, 300)
+                .writeSigned(2, -5)
+                .writeDouble(3, 21.5)
+                .writeString(4, "cpu")
+                .writeFloat(5, 0.25f);
+        payload.flip();
+        var message = new BinaryMessage().wrap(payload);
+
+
+        assertTrue(message.nextField());
+        long id = message.longValue();
+        assertTrue(message.nextField());
+        long delta = message.signedValue();
+        assertTrue(message.nextField());
+        double temperature = message.doubleValue();
+        assertTrue(message.nextField());
+        boolean name = message.bytesEqual("cpu".getBytes());
+        assertTrue(message.nextField());
+        float load = message.floatValue();
+        boolean more = message.nextField();
+
+
+        assertEquals(300, id);
+        assertEquals(-5, delta);
+        assertEquals(21.5, temperature);
+        assertTrue(name, "Bytes must be compared in place");
+        assertEquals(0.25f, load);
+        assertFalse(more, "The message must end after the last field");
+        assertEquals(0, payload.position(), "The flyweight must not move the buffer");
+    }
+
+    @Test
+    void testDecoderReusesOneViewForEveryFrame() {
+        var in = ByteBuffer.allocate(600);
+        for (int length : new int[]{3, 200}) {
+            encoder.writeHeader(length, in);
+            in.put(new byte[length]);
+        }
+        in.flip();
+
+
+        var first = decoder.decode(in);
+        int firstLength = first.remaining();
+        var second = decoder.decode(in);
+        int secondStart = second.position();
+        var none = decoder.decode(in);
+
+
+        assertSame(first, second, "Frames of one buffer must share the view");
+        assertEquals(3, firstLength);
+        assertEquals(200, second.remaining(), "A two-byte length must be decoded");
+        assertEquals(6, secondStart, "The view must start behind the length");
+        assertNull(none);
+    }
+
+    @Test
+    void testRejectsMalformedInput() {
+        var oversized = ByteBuffer.allocate(8);
+        encoder.writeHeader(2048, oversized);
+        oversized.flip();
+        var truncated = ByteBuffer.wrap(new byte[]{(byte) (2 << 3 | BinaryMessage.BYTES), 5, 'a'});
+
+
+        assertThrows(CorruptedFrameException.class, () -> decoder.decode(oversized), "A frame above the limit must be rejected");
+        assertThrows(CorruptedFrameException.class, () -> new BinaryMessage().wrap(truncated).nextField(),
+                "A field exceeding the message must be rejected");
+    }
+
+    @Test
+    void testRejectsNegativeAndOversizedBytesLengths() {
+        var negative = ByteBuffer.allocate(16);
+        Varint.write(negative, 1 << 3 | BinaryMessage.BYTES);
+        Varint.write(negative, -11L);
+        negative.flip();
+        var oversized = ByteBuffer.allocate(16);
+        Varint.write(oversized, 1 << 3 | BinaryMessage.BYTES);
+        Varint.write(oversized, 1L << 40);
+        oversized.put(new byte[4]).flip();
+
+
+        var negativeMessage = new BinaryMessage().wrap(negative);
+        var oversizedMessage = new BinaryMessage().wrap(oversized);
+
+
+        assertThrows(CorruptedFrameException.class, negativeMessage::nextField, "A negative length must be rejected");
+        assertThrows(CorruptedFrameException.class, oversizedMessage::nextField, "A length beyond the message must be rejected");
+    }
+}
@@ -0,0 +1,92 @@
+package org.pogonin.codec;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DelimiterFrameDecoderTest {
+    @Test
+    void testDecodesLinesAndStripsCarriageReturn() {
+        var decoder = DelimiterFrameDecoder.lines(64);
+        var in = bytes("first\r\nsecond line that is longer than a word\n\nlast");
+
+
+        var lines = new ArrayList<String>();
+        ByteBuffer frame;
+        while ((frame = decoder.decode(in)) != null)
+            lines.add(StandardCharsets.UTF_8.decode(frame).toString());
+
+
+        assertEquals(List.of("first", "second line that is longer than a word", ""), lines);
+        assertEquals("last", StandardCharsets.UTF_8.decode(in).toString(), "The incomplete line must stay in the buffer");
+    }
+
+    @Test
+    void testFindsEveryDelimiterOfTheSetAtEveryOffset() {
+        var random = new Random(42);
+        byte[] delimiters = {'\n', 0, (byte) 0xFF};
+        var decoder = new DelimiterFrameDecoder(1024, delimiters);
+        var data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (1 + random.nextInt(254));
+            if (random.nextInt(16) == 0) data[i] = delimiters[random.nextInt(delimiters.length)];
+        }
+
+
+        boolean matches = true;
+        for (var order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            var in = ByteBuffer.allocateDirect(data.length).put(data).flip().order(order);
+            for (int from = 0; from < 64; from++)
+                matches &= decoder.indexOf(in, from, data.length) == naiveIndexOf(data, from, delimiters);
+        }
+
+
+        assertTrue(matches, "The word-wise search must find the same delimiter as a byte loop");
+    }
+
+    @Test
+    void testLineSplitAcrossReadsIsScannedOnce() {
+        var decoder = DelimiterFrameDecoder.lines(64);
+        var in = ByteBuffer.allocate(64);
+        in.put("partial ".getBytes(StandardCharsets.UTF_8)).flip();
+
+
+        var incomplete = decoder.decode(in);
+        in.compact().put("line\n".getBytes(StandardCharsets.UTF_8)).flip();
+        var complete = decoder.decode(in);
+
+
+        assertNull(incomplete, "A line without terminator must not be decoded");
+        assertEquals("partial line", StandardCharsets.UTF_8.decode(complete).toString());
+    }
+
+    @Test
+    void testRejectsLineLongerThanMaximum() {
+        var decoder = DelimiterFrameDecoder.lines(8);
+
+
+        assertThrows(CorruptedFrameException.class, () -> decoder.decode(bytes("0123456789")),
+                "A line without terminator beyond the maximum must be rejected");
+        assertThrows(CorruptedFrameException.class, () -> DelimiterFrameDecoder.lines(8).decode(bytes("0123456789\n")),
+                "A terminated line beyond the maximum must be rejected");
+    }
+
+    private static int naiveIndexOf(byte[] data, int from, byte[] delimiters) {
+        for (int i = from; i < data.length; i++)
+            for (byte delimiter : delimiters)
+                if (data[i] == delimiter) return i;
+        return -1;
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
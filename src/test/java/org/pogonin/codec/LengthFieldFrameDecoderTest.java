@@ -0,0 +1,67 @@
+package org.pogonin.codec;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LengthFieldFrameDecoderTest {
+    private final LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(1024);
+    private final LengthFieldFrameEncoder encoder = new LengthFieldFrameEncoder();
+
+    @Test
+    void testDecodesEveryFrameOfOneRead() {
+        var in = frames("one", "two", "three");
+
+
+        var decoded = new ArrayList<String>();
+        ByteBuffer frame;
+        while ((frame = decoder.decode(in)) != null)
+            decoded.add(StandardCharsets.UTF_8.decode(frame).toString());
+
+
+        assertEquals(List.of("one", "two", "three"), decoded);
+        assertFalse(in.hasRemaining(), "Every byte must be consumed");
+    }
+
+    @Test
+    void testWaitsForFrameSplitAcrossReads() {
+        var whole = frames("split");
+        var in = ByteBuffer.allocate(whole.remaining());
+        in.put(whole.slice(0, 6)).flip();
+
+
+        var partial = decoder.decode(in);
+        int positionAfterPartial = in.position();
+        in.compact().put(whole.slice(6, whole.remaining() - 6)).flip();
+        var complete = decoder.decode(in);
+
+
+        assertNull(partial, "An incomplete frame must not be decoded");
+        assertEquals(0, positionAfterPartial, "The bytes of an incomplete frame must be kept");
+        assertEquals("split", StandardCharsets.UTF_8.decode(complete).toString());
+    }
+
+    @Test
+    void testRejectsOversizedFrame() {
+        var in = ByteBuffer.allocate(8).putInt(2048).putInt(0).flip();
+
+
+        assertThrows(CorruptedFrameException.class, () -> decoder.decode(in), "A frame above the limit must be rejected");
+    }
+
+    private ByteBuffer frames(String... payloads) {
+        var out = ByteBuffer.allocate(256);
+        for (var payload : payloads) {
+            var bytes = payload.getBytes(StandardCharsets.UTF_8);
+            encoder.writeHeader(bytes.length, out);
+            out.put(bytes);
+        }
+        return out.flip();
+    }
+}
@@ -0,0 +1,77 @@
+package org.pogonin.http;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.exception.HttpException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRequestParserTest {
+    private final HttpRequestParser parser = new HttpRequestParser(256, 64);
+
+    @Test
+    void testParsesPipelinedRequestsOneByOne() {
+        var in = ascii("GET /health HTTP/1.1\r\nHost: a\r\n\r\n"
+                + "POST /data HTTP/1.1\r\nContent-Length: 3\r\nX-Id:  7 \r\n\r\nabc"
+                + "GET /next HTTP/1.1\r\n");
+
+
+        var first = parser.parse(in);
+        boolean health = first.targetEquals("/health".getBytes());
+        var second = parser.parse(in);
+        var method = second.method();
+        var body = new byte[second.contentLength()];
+        second.getBody(body, 0);
+        var id = second.header("x-id");
+        int positionAfterSecond = in.position();
+        var third = parser.parse(in);
+
+
+        assertTrue(health, "The target must be compared in place");
+        assertSame(first, second, "Every request must be returned in the same flyweight");
+        assertEquals(HttpMethod.POST, method);
+        assertEquals("abc", new String(body, StandardCharsets.US_ASCII));
+        assertEquals("7", id, "Header values must be trimmed");
+        assertNull(third, "An incomplete request must not be returned");
+        assertEquals(positionAfterSecond, in.position(), "The bytes of an incomplete request must be kept");
+    }
+
+    @Test
+    void testResumesRequestSplitAcrossReads() {
+        var whole = "GET /split HTTP/1.0\r\nConnection: keep-alive\r\n\r\n";
+        var in = ByteBuffer.allocate(128);
+        in.put(whole.substring(0, 25).getBytes(StandardCharsets.US_ASCII)).flip();
+
+
+        var partial = parser.parse(in);
+        in.compact().put(whole.substring(25).getBytes(StandardCharsets.US_ASCII)).flip();
+        var complete = parser.parse(in);
+
+
+        assertNull(partial);
+        assertEquals("/split", complete.target());
+        assertFalse(complete.isHttp11());
+        assertTrue(complete.isKeepAlive(), "HTTP/1.0 must be kept alive on request");
+        assertFalse(in.hasRemaining(), "The request must be consumed");
+    }
+
+    @Test
+    void testRejectsMalformedRequests() {
+        assertStatus(400, "GET /\r\n\r\n");
+        assertStatus(501, "BREW /pot HTTP/1.1\r\n\r\n");
+        assertStatus(505, "GET / HTTP/2.0\r\n\r\n");
+        assertStatus(413, "POST / HTTP/1.1\r\nContent-Length: 1000\r\n\r\n");
+        assertStatus(431, "GET / HTTP/1.1\r\nX: " + "a".repeat(300));
+    }
+
+    private void assertStatus(int status, String request) {
+        var ex = assertThrows(HttpException.class, () -> new HttpRequestParser(256, 64).parse(ascii(request)));
+        assertEquals(status, ex.getStatus(), request);
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
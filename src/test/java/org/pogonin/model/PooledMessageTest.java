@@ -0,0 +1,78 @@
+package org.pogonin.model;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.buffer.BufferPool;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledMessageTest {
+    @Test
+    void testLastReleaseReturnsBufferToPool() {
+        var pool = new BufferPool();
+        var message = PooledMessage.copyOf(pool, "hello".getBytes(StandardCharsets.UTF_8));
+        long outstanding = pool.getBytesOutstanding();
+
+
+        message.retain();
+        boolean firstRelease = message.release();
+        long outstandingAfterFirst = pool.getBytesOutstanding();
+        boolean lastRelease = message.release();
+
+
+        assertTrue(outstanding > 0, "The payload buffer must be taken from the pool");
+        assertFalse(firstRelease, "The buffer must stay while another holder retains it");
+        assertEquals(outstanding, outstandingAfterFirst);
+        assertTrue(lastRelease, "The last release must return the buffer");
+        assertEquals(0, pool.getBytesOutstanding());
+        assertEquals(0, message.refCount());
+    }
+
+    @Test
+    void testEmptyPayloadIsCopied() {
+        var pool = new BufferPool();
+
+
+        var message = PooledMessage.copyOf(pool, new byte[0]);
+
+
+        assertEquals(0, message.getLength());
+        assertFalse(message.getPayload().hasRemaining());
+        assertTrue(message.release(), "The last release must return the buffer");
+        assertEquals(0, pool.getBytesOutstanding());
+    }
+
+    @Test
+    void testPayloadViewsAreIndependentAndReadOnly() {
+        var pool = new BufferPool();
+        var message = PooledMessage.copyOf(pool, "hello".getBytes(StandardCharsets.UTF_8));
+
+
+        var first = message.getPayload();
+        first.get(new byte[3]);
+        var second = message.getPayload();
+
+
+        assertEquals(2, first.remaining());
+        assertEquals(5, second.remaining(), "Every view must start at the first payload byte");
+        assertTrue(second.isReadOnly(), "Holders must not be able to modify the shared payload");
+        assertEquals(5, message.getLength());
+        message.release();
+    }
+
+    @Test
+    void testReleasedMessageCanNotBeUsed() {
+        var pool = new BufferPool();
+        var message = PooledMessage.copyOf(pool, new byte[16]);
+
+
+        message.release();
+
+
+        assertThrows(IllegalStateException.class, message::release, "A double release must be rejected");
+        assertThrows(IllegalStateException.class, message::retain, "A released message can't be retained");
+        assertThrows(IllegalStateException.class, message::getPayload, "A released payload can't be read");
+        assertEquals(0, pool.getBytesOutstanding(), "A double release must not count the buffer twice");
+    }
+}
@@ -0,0 +1,127 @@
+package org.pogonin.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundRingTest {
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("localhost", 1);
+
+    @Test
+    void testPublishFailsWhenFullAndSucceedsAfterRelease() {
+        var ring = new InboundRing(2, 16);
+        assertTrue(ring.publish(1, CLIENT, null, bytes("a")));
+        assertTrue(ring.publish(1, CLIENT, null, bytes("b")));
+
+
+        boolean rejected = ring.publish(1, CLIENT, null, bytes("c"));
+        int claimed = ring.claim(2);
+        ring.release(claimed);
+        boolean accepted = ring.publish(1, CLIENT, null, bytes("c"));
+
+
+        assertFalse(rejected, "publish must fail when every slot is taken");
+        assertEquals(2, claimed);
+        assertTrue(accepted, "publish must succeed once the slots were released");
+    }
+
+    @Test
+    void testSlotsAreReusedInPlace() {
+        var ring = new InboundRing(2, 16);
+        ring.publish(1, CLIENT, null, bytes("first"));
+        ring.claim(1);
+        var first = ring.get(0);
+        ring.release(1);
+        ring.publish(1, CLIENT, null, bytes("second"));
+        ring.publish(1, CLIENT, null, bytes("third"));
+
+
+        ring.claim(2);
+        var third = ring.get(1);
+
+
+        assertSame(first, third, "the slot must be reused once the ring wrapped around");
+        assertEquals("third", new String(third.getData(), 0, third.getLength(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSlotGrowsForLargeMessage() {
+        var ring = new InboundRing(1, 4);
+        var data = new byte[100];
+        Arrays.fill(data, (byte) 7);
+
+
+        ring.publish(1, CLIENT, null, ByteBuffer.wrap(data));
+        var message = ring.poll();
+
+
+        assertArrayEquals(data, message.getMessage(), "message larger than the slot must be copied whole");
+        assertEquals(CLIENT, message.getClientAddress());
+    }
+
+    @Test
+    void testDrainProcessesBatchInOrder() {
+        var ring = new InboundRing(8, 16);
+        for (var text : List.of("a", "b", "c"))
+            ring.publish(1, CLIENT, null, bytes(text));
+        var received = new ArrayList<String>();
+
+
+        int drained = ring.drain(slot -> received.add(
+                new String(slot.getData(), 0, slot.getLength(), StandardCharsets.UTF_8)), 8);
+
+
+        assertEquals(3, drained);
+        assertEquals(List.of("a", "b", "c"), received);
+        assertTrue(ring.isEmpty(), "ring must be empty after draining everything");
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void testConcurrentProducersDeliverEveryMessage() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50_000;
+        var ring = new InboundRing(64, 8);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                var buffer = ByteBuffer.allocate(8);
+                for (int i = 0; i < perProducer; i++) {
+                    buffer.clear().putInt(producer).putInt(i).flip();
+                    while (!ring.publish(1, CLIENT, null, buffer))
+                        Thread.onSpinWait();
+                }
+            }));
+        }
+
+
+        var next = new int[producers];
+        var ordered = new boolean[]{true};
+        int received = 0;
+        while (received < producers * perProducer) {
+            received += ring.drain(slot -> {
+                var data = ByteBuffer.wrap(slot.getData(), 0, slot.getLength());
+                int producer = data.getInt();
+                ordered[0] &= data.getInt() == next[producer]++;
+            }, 32);
+        }
+        for (var thread : threads)
+            thread.join();
+
+
+        assertTrue(ordered[0], "messages of every producer must be received in the order they were published");
+        assertTrue(ring.isEmpty(), "ring must be empty after receiving every message");
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
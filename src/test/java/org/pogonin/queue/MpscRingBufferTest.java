@@ -0,0 +1,91 @@
+package org.pogonin.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+    @Test
+    void testCapacityIsRoundedUpToPowerOfTwo() {
+        var ring = new MpscRingBuffer<Integer>(1000);
+
+
+        assertEquals(1024, ring.capacity(), "capacity must be rounded up to a power of two");
+    }
+
+    @Test
+    void testOfferFailsWhenFullAndSucceedsAfterPoll() {
+        var ring = new MpscRingBuffer<Integer>(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(ring.offer(i), "offer must succeed while the ring has free slots");
+
+
+        boolean rejected = ring.offer(4);
+        int first = ring.poll();
+        boolean accepted = ring.offer(4);
+
+
+        assertFalse(rejected, "offer must fail when the ring is full");
+        assertEquals(0, first);
+        assertTrue(accepted, "offer must succeed once a slot was freed");
+        assertEquals(4, ring.size());
+    }
+
+    @Test
+    void testDrainRespectsLimitAndOrder() {
+        var ring = new MpscRingBuffer<Integer>(8);
+        for (int i = 0; i < 6; i++)
+            ring.offer(i);
+        var drained = new ArrayList<Integer>();
+
+
+        int first = ring.drain(drained::add, 4);
+        int second = ring.drain(drained::add, 4);
+
+
+        assertEquals(4, first);
+        assertEquals(2, second);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), drained);
+        assertTrue(ring.isEmpty(), "ring must be empty after draining everything");
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void testConcurrentProducersKeepPerProducerOrder() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        var ring = new MpscRingBuffer<long[]>(256);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    var element = new long[]{producer, i};
+                    while (!ring.offer(element))
+                        Thread.onSpinWait();
+                }
+            }));
+        }
+
+
+        var next = new long[producers];
+        int received = 0;
+        boolean ordered = true;
+        while (received < producers * perProducer) {
+            var element = ring.poll();
+            if (element == null) continue;
+            ordered &= element[1] == next[(int) element[0]]++;
+            received++;
+        }
+        for (var thread : threads)
+            thread.join();
+
+
+        assertTrue(ordered, "elements of every producer must be received in the order they were offered");
+        assertTrue(ring.isEmpty(), "ring must be empty after receiving every element");
+    }
+}
@@ -0,0 +1,64 @@
+package org.pogonin.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WaitStrategyTest {
+    private static final List<WaitStrategy> STRATEGIES = List.of(
+            new BusySpinWaitStrategy(),
+            new SpinYieldWaitStrategy(),
+            new SpinParkWaitStrategy(),
+            new BlockingWaitStrategy());
+
+    @Test
+    void testEveryStrategyReturnsOnceSignalled() throws Exception {
+        for (var strategy : STRATEGIES) {
+            var ready = new AtomicBoolean();
+            var failure = new AtomicReference<Throwable>();
+            var consumer = Thread.ofPlatform().start(() -> {
+                try {
+                    strategy.await(ready::get);
+                } catch (Throwable ex) {
+                    failure.set(ex);
+                }
+            });
+            Thread.sleep(50);
+
+
+            ready.set(true);
+            strategy.signal();
+            consumer.join(2000);
+
+
+            assertFalse(consumer.isAlive(), "Consumer must stop waiting once signalled: " + strategy.getClass().getSimpleName());
+            assertNull(failure.get());
+        }
+    }
+
+    @Test
+    void testEveryStrategyStopsWaitingOnInterrupt() throws Exception {
+        for (var strategy : STRATEGIES) {
+            var interrupted = new AtomicBoolean();
+            var consumer = Thread.ofPlatform().start(() -> {
+                try {
+                    strategy.await(() -> false);
+                } catch (InterruptedException ex) {
+                    interrupted.set(true);
+                }
+            });
+            Thread.sleep(50);
+
+
+            consumer.interrupt();
+            consumer.join(2000);
+
+
+            assertTrue(interrupted.get(), "Waiting must end with InterruptedException: " + strategy.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.pogonin.resp;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.exception.CorruptedFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespParserTest {
+    private final RespParser parser = new RespParser(1024);
+
+    @Test
+    void testParsesPipelinedArrayAndInlineCommands() {
+        var in = ascii("*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$5\r\nhello\r\n\r\nPING  now\r\n*2\r\n$3\r\nGET\r\n$1\r\nk");
+
+
+        var commands = new ArrayList<List<String>>();
+        RespCommand command;
+        while ((command = parser.parse(in)) != null) {
+            var args = new ArrayList<String>();
+            for (int i = 0; i < command.argCount(); i++)
+                args.add(command.arg(i));
+            commands.add(args);
+        }
+
+
+        assertEquals(List.of(List.of("SET", "k", "hello"), List.of("PING", "now")), commands);
+        assertEquals('*', in.get(in.position()), "The incomplete command must be kept");
+    }
+
+    @Test
+    void testComparesAndParsesArgumentsInPlace() {
+        var command = parser.parse(ascii("*3\r\n$6\r\nexpire\r\n$1\r\nk\r\n$3\r\n-42\r\n"));
+
+
+        boolean isExpire = command.argEqualsIgnoreCase(0, "EXPIRE".getBytes(StandardCharsets.US_ASCII));
+        long seconds = command.argLong(2);
+
+
+        assertTrue(isExpire, "Command names must match ignoring case");
+        assertEquals(-42, seconds);
+        assertThrows(NumberFormatException.class, () -> command.argLong(1));
+    }
+
+    @Test
+    void testRejectsMalformedCommands() {
+        assertThrows(CorruptedFrameException.class, () -> parser.parse(ascii("*1\r\n+OK\r\n")));
+        assertThrows(CorruptedFrameException.class, () -> parser.parse(ascii("*1\r\n$2048\r\n")),
+                "A bulk string above the limit must be rejected");
+        assertThrows(CorruptedFrameException.class, () -> parser.parse(ascii("*x\r\n")));
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,39 @@
+package org.pogonin.resp;
+
+import org.junit.jupiter.api.Test;
+import org.pogonin.Server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespWriterTest {
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private final Server server = new Server(0) {
+        @Override
+        public boolean reply(long connectionId, ByteBuffer data) {
+            while (data.hasRemaining()) written.write(data.get());
+            return true;
+        }
+    };
+
+    @Test
+    void testErrorLongerThanTheBufferIsCutToOneLine() {
+        var writer = new RespWriter();
+        writer.begin(server, 1);
+
+
+        writer.error("ERR " + "line\r\n".repeat(10_000));
+        writer.raw("+OK\r\n".getBytes(StandardCharsets.US_ASCII));
+        writer.flush();
+
+
+        var replies = written.toString(StandardCharsets.UTF_8);
+        int errorEnd = replies.indexOf("\r\n");
+        assertTrue(replies.startsWith("-ERR line  line  "), "Line ends in the message must become spaces");
+        assertTrue(errorEnd > 0 && errorEnd <= 1025, "The error must be cut, got " + errorEnd + " bytes");
+        assertEquals("+OK\r\n", replies.substring(errorEnd + 2), "Replies after the error must stay intact");
+    }
+}
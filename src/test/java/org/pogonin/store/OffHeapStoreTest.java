@@ -0,0 +1,70 @@
+package org.pogonin.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapStoreTest {
+    @Test
+    void testKeepsEveryKeyThroughGrowthAndRemovals() {
+        var store = new OffHeapStore(16 * 1024 * 1024, 4, 1024 * 1024);
+        for (int i = 0; i < 10_000; i++)
+            store.set(bytes("key" + i), bytes("value" + i));
+
+
+        for (int i = 0; i < 10_000; i += 2)
+            store.delete(ByteBuffer.wrap(bytes("key" + i)), 0, bytes("key" + i).length);
+        store.set(bytes("key1"), bytes("replaced"));
+
+
+        assertEquals(5_000, store.size(), "Removed keys must be gone");
+        assertNull(store.get(bytes("key0")));
+        assertEquals("replaced", new String(store.get(bytes("key1")), StandardCharsets.US_ASCII));
+        for (int i = 3; i < 10_000; i += 2)
+            assertEquals("value" + i, new String(store.get(bytes("key" + i)), StandardCharsets.US_ASCII),
+                    "Keys shifted back by removals must still be found");
+    }
+
+    @Test
+    void testExpiredKeysDisappear() throws Exception {
+        var store = new OffHeapStore(1024 * 1024, 1, 1024 * 1024);
+        var key = bytes("session");
+        store.set(ByteBuffer.wrap(key), 0, key.length, ByteBuffer.wrap(bytes("x")), 0, 1, System.currentTimeMillis() + 50);
+        store.set(bytes("other"), bytes("y"));
+        var other = bytes("other");
+
+
+        boolean existedBefore = store.get(key) != null;
+        store.expireAt(ByteBuffer.wrap(other), 0, other.length, 1);
+        Thread.sleep(100);
+
+
+        assertTrue(existedBefore);
+        assertNull(store.get(key), "A key must expire at its expiry time");
+        assertNull(store.get(other), "A past expiry time must remove the key");
+        assertEquals(0, store.usedMemory(), "Expired entries must release their memory");
+    }
+
+    @Test
+    void testRefusesWritesBeyondMemoryLimit() {
+        var store = new OffHeapStore(64 * 1024, 1, 64 * 1024);
+        var value = new byte[1000];
+
+
+        int stored = 0;
+        while (store.set(bytes("k" + stored), value)) stored++;
+        boolean tooLarge = store.set(bytes("big"), new byte[64 * 1024]);
+
+
+        assertEquals(64, stored, "Entries must fill the slab in their size class");
+        assertFalse(tooLarge, "An entry larger than a slab must be refused");
+        assertNotNull(store.get(bytes("k0")), "A refused write must not evict anything");
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}